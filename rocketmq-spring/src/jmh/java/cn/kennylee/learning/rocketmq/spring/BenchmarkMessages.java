@@ -0,0 +1,76 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试使用的合成消息。
+ */
+final class BenchmarkMessages {
+    static final String TOPIC = "rocketmq-learning-spring";
+    static final String GROUP = "learning-spring-consumer-benchmark";
+    /**
+     * 不会连接，消费者和生产者在基准测试中不启动
+     */
+    static final String NAMESRV_ADDR = "localhost:9876";
+
+    private BenchmarkMessages() {
+    }
+
+    static RocketmqSpringApplication.OrderInfo orderInfo(int i) {
+        return RocketmqSpringApplication.OrderInfo.builder()
+                .key("key-" + i)
+                .content("Hello World@" + i)
+                .build();
+    }
+
+    static RocketMqProducer producer(String converter) {
+        RocketMqProducer.ProducerParams params = RocketMqProducer.ProducerParams.builder()
+                .messageConverter(messageConverter(converter))
+                .build();
+        return new RocketMqProducer(GROUP, NAMESRV_ADDR, null, params);
+    }
+
+    static MessageConverter messageConverter(String name) {
+        switch (name) {
+            case "fastjson":
+                return new FastJsonMessageConverter();
+            case "jackson":
+                return new JacksonMessageConverter();
+            case "smile":
+                return new SmileMessageConverter();
+            default:
+                return new GsonMessageConverter();
+        }
+    }
+
+    static MessageExt messageExt(int i, Message message) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(TOPIC);
+        messageExt.setMsgId("msg-" + i);
+        messageExt.setQueueOffset(i);
+        messageExt.setBody(message.getBody());
+        MessageAccessor.setProperties(messageExt, message.getProperties());
+        return messageExt;
+    }
+
+    static List<MessageExt> orderMessages(RocketMqProducer producer, int count) {
+        List<MessageExt> msgs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            msgs.add(messageExt(i, producer.createMessage(TOPIC, RocketmqSpringApplication.TAGS_1, "key-" + i, orderInfo(i))));
+        }
+        return msgs;
+    }
+
+    static AbstractMessageHandler.ListenerParams params(int consumeMessageBatchMaxSize) {
+        return AbstractMessageHandler.ListenerParams.builder()
+                .topic(TOPIC)
+                .tags(RocketmqSpringApplication.TAGS_1)
+                .consumeMessageBatchMaxSize(consumeMessageBatchMaxSize)
+                .build();
+    }
+}
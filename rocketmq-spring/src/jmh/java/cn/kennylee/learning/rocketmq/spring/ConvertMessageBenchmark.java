@@ -0,0 +1,84 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.MessageExt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.lang.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RocketMqConsumer#convertMessage(MessageExt)} 在String、POJO、MessageExt三种目标类型下的吞吐。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertMessageBenchmark {
+    /**
+     * 生产者和POJO消费者使用的转换器
+     */
+    @Param({"gson", "fastjson", "jackson", "smile"})
+    public String converter;
+
+    private RocketMqConsumer<String> stringConsumer;
+    private RocketMqConsumer<RocketmqSpringApplication.OrderInfo> orderInfoConsumer;
+    private RocketMqConsumer<MessageExt> messageExtConsumer;
+    private MessageExt messageExt;
+
+    @Setup
+    public void setup() {
+        RocketMqProducer producer = BenchmarkMessages.producer(converter);
+        messageExt = BenchmarkMessages.orderMessages(producer, 1).get(0);
+
+        stringConsumer = new RocketMqConsumer<>(BenchmarkMessages.GROUP, BenchmarkMessages.NAMESRV_ADDR,
+                new AbstractMessageHandler<String>(BenchmarkMessages.params(1)) {
+                    @Override
+                    public void onMessage(@NonNull String message) {
+                        // do nothing
+                    }
+                });
+        AbstractMessageHandler.ListenerParams params = BenchmarkMessages.params(1);
+        params.setMessageConverter(BenchmarkMessages.messageConverter(converter));
+        orderInfoConsumer = new RocketMqConsumer<>(BenchmarkMessages.GROUP, BenchmarkMessages.NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(params) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        // do nothing
+                    }
+                });
+        messageExtConsumer = new RocketMqConsumer<>(BenchmarkMessages.GROUP, BenchmarkMessages.NAMESRV_ADDR,
+                new AbstractMessageHandler<MessageExt>(BenchmarkMessages.params(1)) {
+                    @Override
+                    public void onMessage(@NonNull MessageExt message) {
+                        // do nothing
+                    }
+                });
+    }
+
+    @Benchmark
+    public String toStringPayload() {
+        return stringConsumer.convertMessage(messageExt);
+    }
+
+    @Benchmark
+    public RocketmqSpringApplication.OrderInfo toOrderInfo() {
+        return orderInfoConsumer.convertMessage(messageExt);
+    }
+
+    @Benchmark
+    public MessageExt toMessageExt() {
+        return messageExtConsumer.convertMessage(messageExt);
+    }
+}
@@ -0,0 +1,65 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.lang.NonNull;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费者注册的监听器处理一批合成消息的完整路径（转换、批量回调、确认），吞吐按批次计，单条消息耗时为批次耗时除以batchSize。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+    @Param({"1", "32"})
+    public int batchSize;
+
+    private MessageListenerConcurrently listener;
+    private List<MessageExt> msgs;
+    private MessageQueue messageQueue;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        RocketMqProducer producer = new RocketMqProducer(BenchmarkMessages.GROUP, BenchmarkMessages.NAMESRV_ADDR);
+        msgs = BenchmarkMessages.orderMessages(producer, batchSize);
+        messageQueue = new MessageQueue(BenchmarkMessages.TOPIC, "broker-a", 0);
+
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(
+                BenchmarkMessages.GROUP, BenchmarkMessages.NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(BenchmarkMessages.params(batchSize)) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        ListenerDispatchBenchmark.this.blackhole.consume(message);
+                    }
+                });
+        listener = (MessageListenerConcurrently) consumer.getConsumer().getMessageListener();
+    }
+
+    @Benchmark
+    public ConsumeConcurrentlyStatus dispatch() {
+        return listener.consumeMessage(msgs, new ConsumeConcurrentlyContext(messageQueue));
+    }
+}
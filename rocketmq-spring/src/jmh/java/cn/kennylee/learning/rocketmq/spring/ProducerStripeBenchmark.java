@@ -0,0 +1,59 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.producer.SendResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多producer（stripe）同步发送的吞吐，需要运行中的RocketMQ，NameServer地址由系统属性 <code>rocketmq.namesrv</code> 指定。
+ * 线程数为CPU核数，比较吞吐随stripes的变化。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ProducerStripeBenchmark {
+    @Param({"1", "2", "4"})
+    public int stripes;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+    private RocketMqProducer producer;
+    private RocketmqSpringApplication.OrderInfo orderInfo;
+
+    @Setup
+    public void setup() throws Exception {
+        producer = new RocketMqProducer(BenchmarkMessages.GROUP,
+                System.getProperty("rocketmq.namesrv", BenchmarkMessages.NAMESRV_ADDR), null,
+                RocketMqProducer.ProducerParams.builder().stripes(stripes).build());
+        producer.start();
+        orderInfo = BenchmarkMessages.orderInfo(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        producer.destroy();
+    }
+
+    @Benchmark
+    public SendResult syncSend() throws Exception {
+        return producer.syncSend(BenchmarkMessages.TOPIC, RocketmqSpringApplication.TAGS_1,
+                "key-" + sequence.incrementAndGet(), orderInfo);
+    }
+}
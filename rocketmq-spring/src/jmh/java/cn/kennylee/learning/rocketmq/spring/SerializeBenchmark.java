@@ -0,0 +1,44 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RocketMqProducer#createMessage(String, String, String, Object)} 的吞吐，fastjson（DATE_FORMAT）为默认方式。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeBenchmark {
+    @Param({"fastjson", "gson", "jackson", "smile"})
+    public String converter;
+
+    private RocketMqProducer producer;
+    private RocketmqSpringApplication.OrderInfo orderInfo;
+
+    @Setup
+    public void setup() {
+        producer = BenchmarkMessages.producer(converter);
+        orderInfo = BenchmarkMessages.orderInfo(1);
+    }
+
+    @Benchmark
+    public Message createMessage() {
+        return producer.createMessage(BenchmarkMessages.TOPIC, RocketmqSpringApplication.TAGS_1, "key-1", orderInfo);
+    }
+}
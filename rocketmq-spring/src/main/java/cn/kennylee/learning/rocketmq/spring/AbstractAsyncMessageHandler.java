@@ -0,0 +1,83 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.springframework.lang.NonNull;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * <p> 异步的消息处理，处理远程调用等I/O密集的逻辑时一个消费线程可以同时处理一批消息 </p>
+ * <p>一个批次的消息同时开始处理，消费线程阻塞等待全部完成（最长 asyncTimeoutMillis），期间不能处理其它批次，
+ * 因此处理中的消息数量不超过 消费线程数 × consumeMessageBatchMaxSize，并发消费未指定时批次大小默认为
+ * {@value #DEFAULT_ASYNC_BATCH_SIZE}，可以在不增加消费线程的情况下保持大量消息在处理中。所有消息的 {@link CompletionStage} 完成后才确认消费，
+ * 并发消费模式下只有失败的消息会被重新投递；超时未完成的消息按失败处理，其 {@link CompletableFuture} 被取消。</p>
+ * <p>{@link ConsumeMode#ORDERLY} 下批次中的消息按顺序逐条处理，每条消息同样最多等待 asyncTimeoutMillis。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public abstract class AbstractAsyncMessageHandler<T> extends AbstractMessageHandler<T> {
+    /**
+     * {@link ConsumeMode#CONCURRENTLY} 未指定consumeMessageBatchMaxSize时的批次大小，为1时与同步处理器没有区别
+     */
+    static final int DEFAULT_ASYNC_BATCH_SIZE = 32;
+
+    public AbstractAsyncMessageHandler(ListenerParams params) {
+        super(params);
+        if (Objects.isNull(params.getConsumeMessageBatchMaxSize()) && getConsumeMode() == ConsumeMode.CONCURRENTLY) {
+            setConsumeMessageBatchMaxSize(DEFAULT_ASYNC_BATCH_SIZE);
+        }
+    }
+
+    /**
+     * <p>异步处理消息</p>
+     *
+     * @param message 消息内容
+     * @return 处理完成时完成，异常完成表示处理失败
+     */
+    @NonNull
+    public abstract CompletionStage<Void> onMessageAsync(@NonNull T message);
+
+    /**
+     * <p>处理单条消息，等待 {@link #onMessageAsync(Object)} 完成，与批量处理相同最多等待 asyncTimeoutMillis，
+     * 超时未完成时取消并按失败处理</p>
+     * <p>{@link ConsumeMode#ORDERLY} 和 {@link ConsumeMode#KEY_ORDERLY} 的各key通道都逐条调用该方法。</p>
+     */
+    @Override
+    public void onMessage(@NonNull T message) {
+        CompletableFuture<?> future;
+        try {
+            future = onMessageAsync(message).toCompletableFuture();
+        } catch (Exception e) {
+            future = failedFuture(e);
+        }
+        try {
+            awaitAll(new CompletableFuture<?>[]{future});
+        } catch (PartialConsumeException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    @Override
+    public void onMessages(@NonNull List<T> messages) {
+        if (getConsumeMode() == ConsumeMode.ORDERLY) {
+            super.onMessages(messages);
+            return;
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            try {
+                futures[i] = onMessageAsync(messages.get(i)).toCompletableFuture();
+            } catch (Exception e) {
+                futures[i] = failedFuture(e);
+            }
+        }
+        awaitAll(futures);
+    }
+}
@@ -5,10 +5,19 @@ import lombok.Data;
 import org.apache.rocketmq.client.AccessChannel;
 import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import java.util.BitSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * <p> Consumer的消息处理 </p>
@@ -18,6 +27,15 @@ import java.util.Objects;
  */
 @Data
 public abstract class AbstractMessageHandler<T> {
+    /**
+     * 开启自动调整且未指定consumeThreadMax时的线程数上限
+     */
+    private static final int DEFAULT_ADAPTIVE_CONSUME_THREAD_MAX = 64;
+    /**
+     * {@link ConsumeMode#KEY_ORDERLY} 未指定consumeMessageBatchMaxSize时的批次大小，批次内不同key的消息才能并行
+     */
+    private static final int DEFAULT_KEY_ORDERLY_BATCH_SIZE = 32;
+
     private String topic;
     private String tags;
     private MessageModel messageModel = MessageModel.CLUSTERING;
@@ -26,6 +44,69 @@ public abstract class AbstractMessageHandler<T> {
 
     private int suspendCurrentQueueTimeMillis = 1000;
     private int delayLevelWhenNextConsume = 0;
+    /**
+     * 每次回调的最大消息数量，大于1时 {@link #onMessages(List)} 会收到批量消息
+     */
+    private int consumeMessageBatchMaxSize = 1;
+    /**
+     * 消费线程池大小，默认与客户端一致
+     */
+    private int consumeThreadMin = 20;
+    private int consumeThreadMax = 20;
+    /**
+     * 每次从broker拉取的最大消息数量
+     */
+    private int pullBatchSize = 32;
+    /**
+     * 两次拉取的间隔（毫秒），0为积压消费完立即拉取
+     */
+    private long pullInterval = 0;
+    /**
+     * 是否按处理耗时和本地积压自动调整消费线程数，见 {@link ConsumeThreadPoolTuner}
+     */
+    private boolean adaptiveConsumeThreads = false;
+    /**
+     * 不为null时批次中的消息提交到该线程池并发处理，消费线程等待全部完成；
+     * {@link ConsumeMode#KEY_ORDERLY} 下为各key通道使用的线程池
+     */
+    @Nullable
+    private Executor handlerExecutor;
+    /**
+     * 并发处理时等待一个批次完成的最长时间（毫秒），超时未完成的消息视为失败
+     */
+    private long asyncTimeoutMillis = 60 * 1000;
+    /**
+     * 不为null时跳过已处理过的消息（直接确认，不调用处理器）
+     */
+    @Nullable
+    private DeduplicationCache deduplicationCache;
+    private DeduplicationKey deduplicationKey = DeduplicationKey.MSG_ID;
+    /**
+     * 不为null时按该策略本地重试、发回broker或进入死信队列
+     */
+    @Nullable
+    private RetryPolicy retryPolicy;
+    /**
+     * 不为null时调用处理器前按消息数量申请令牌，不足时消费线程等待
+     */
+    @Nullable
+    private TokenBucketRateLimiter rateLimiter;
+    /**
+     * 不为null时限制同时调用处理器的消费线程数，达到上限时消费线程等待
+     */
+    @Nullable
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    /**
+     * 关闭时等待已拉取的消息处理完成的最长时间（毫秒），0为不等待
+     */
+    private long drainTimeoutMillis = 10 * 1000;
+    /**
+     * 读取claim-check消息体的存储，需要与生产者相同
+     */
+    @Nullable
+    private BlobStore blobStore;
+    private MessageConverter messageConverter = new GsonMessageConverter();
+    private MessageConverterRegistry messageConverterRegistry = MessageConverterRegistry.getDefault();
 
     private AbstractMessageHandler() {
         // do nothing
@@ -42,6 +123,70 @@ public abstract class AbstractMessageHandler<T> {
         if (Objects.nonNull(params.getMessageModel())) {
             this.messageModel = params.getMessageModel();
         }
+        if (Objects.nonNull(params.getConsumeMode())) {
+            this.consumeMode = params.getConsumeMode();
+        }
+        if (Objects.nonNull(params.getConsumeMessageBatchMaxSize())) {
+            Assert.isTrue(params.getConsumeMessageBatchMaxSize() > 0, "consumeMessageBatchMaxSize must be positive");
+            this.consumeMessageBatchMaxSize = params.getConsumeMessageBatchMaxSize();
+        } else if (this.consumeMode == ConsumeMode.KEY_ORDERLY) {
+            this.consumeMessageBatchMaxSize = DEFAULT_KEY_ORDERLY_BATCH_SIZE;
+        }
+        if (Objects.nonNull(params.getAdaptiveConsumeThreads())) {
+            this.adaptiveConsumeThreads = params.getAdaptiveConsumeThreads();
+        }
+        if (Objects.nonNull(params.getConsumeThreadMin())) {
+            this.consumeThreadMin = params.getConsumeThreadMin();
+        } else if (this.adaptiveConsumeThreads) {
+            // 自动调整时从CPU核数开始
+            this.consumeThreadMin = Runtime.getRuntime().availableProcessors();
+        }
+        if (Objects.nonNull(params.getConsumeThreadMax())) {
+            this.consumeThreadMax = params.getConsumeThreadMax();
+            if (Objects.isNull(params.getConsumeThreadMin())) {
+                this.consumeThreadMin = Math.min(this.consumeThreadMin, this.consumeThreadMax);
+            }
+        } else if (this.adaptiveConsumeThreads) {
+            this.consumeThreadMax = Math.max(this.consumeThreadMin + 1, DEFAULT_ADAPTIVE_CONSUME_THREAD_MAX);
+        } else {
+            this.consumeThreadMax = Math.max(this.consumeThreadMin, this.consumeThreadMax);
+        }
+        Assert.isTrue(this.consumeThreadMin > 0 && this.consumeThreadMin <= this.consumeThreadMax,
+                "consumeThreadMin must be positive and not greater than consumeThreadMax");
+        if (Objects.nonNull(params.getPullBatchSize())) {
+            Assert.isTrue(params.getPullBatchSize() > 0, "pullBatchSize must be positive");
+            this.pullBatchSize = params.getPullBatchSize();
+        }
+        if (Objects.nonNull(params.getPullInterval())) {
+            Assert.isTrue(params.getPullInterval() >= 0, "pullInterval must not be negative");
+            this.pullInterval = params.getPullInterval();
+        }
+        if (Objects.nonNull(params.getHandlerExecutor())) {
+            Assert.isTrue(this.consumeMode != ConsumeMode.ORDERLY, "handlerExecutor cant be used with ORDERLY");
+            this.handlerExecutor = params.getHandlerExecutor();
+        }
+        if (Objects.nonNull(params.getAsyncTimeoutMillis())) {
+            Assert.isTrue(params.getAsyncTimeoutMillis() > 0, "asyncTimeoutMillis must be positive");
+            this.asyncTimeoutMillis = params.getAsyncTimeoutMillis();
+        }
+        this.deduplicationCache = params.getDeduplicationCache();
+        if (Objects.nonNull(params.getDeduplicationKey())) {
+            this.deduplicationKey = params.getDeduplicationKey();
+        }
+        this.retryPolicy = params.getRetryPolicy();
+        this.rateLimiter = params.getRateLimiter();
+        this.concurrencyLimiter = params.getConcurrencyLimiter();
+        this.blobStore = params.getBlobStore();
+        if (Objects.nonNull(params.getDrainTimeoutMillis())) {
+            Assert.isTrue(params.getDrainTimeoutMillis() >= 0, "drainTimeoutMillis must not be negative");
+            this.drainTimeoutMillis = params.getDrainTimeoutMillis();
+        }
+        if (Objects.nonNull(params.getMessageConverter())) {
+            this.messageConverter = params.getMessageConverter();
+        }
+        if (Objects.nonNull(params.getMessageConverterRegistry())) {
+            this.messageConverterRegistry = params.getMessageConverterRegistry();
+        }
     }
 
     /**
@@ -51,6 +196,96 @@ public abstract class AbstractMessageHandler<T> {
      */
     public abstract void onMessage(@NonNull T message);
 
+    /**
+     * <p>批量处理消息，默认逐条调用 {@link #onMessage(Object)}，可覆盖实现批量入库等操作。</p>
+     * <p>部分失败时抛出 {@link PartialConsumeException} 说明已成功的数量，只有失败的消息及其之后的消息会被重新投递；
+     * 抛出其它异常则整批重新投递。</p>
+     * <p>设置了 <code>handlerExecutor</code> 时批次中的消息提交到线程池并发处理，
+     * 并发消费模式下只有失败的消息会被重新投递。</p>
+     * <p>注意：{@link ConsumeMode#ORDERLY} 不支持部分确认，失败时整批会稍后重新消费。</p>
+     *
+     * @param messages 消息内容，数量不超过 consumeMessageBatchMaxSize
+     */
+    public void onMessages(@NonNull List<T> messages) {
+        final Executor executor = this.handlerExecutor;
+        if (Objects.nonNull(executor) && messages.size() > 1) {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[messages.size()];
+            for (int i = 0; i < messages.size(); i++) {
+                final T message = messages.get(i);
+                try {
+                    futures[i] = CompletableFuture.runAsync(() -> onMessage(message), executor);
+                } catch (Exception e) {
+                    // 线程池拒绝
+                    futures[i] = failedFuture(e);
+                }
+            }
+            awaitAll(futures);
+            return;
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            try {
+                onMessage(messages.get(i));
+            } catch (Exception e) {
+                throw new PartialConsumeException(i, e);
+            }
+        }
+    }
+
+    /**
+     * <p>等待一批并发处理的消息完成，最多等待 <code>asyncTimeoutMillis</code>，期间阻塞消费线程</p>
+     * <p>失败或超时未完成的消息通过 {@link PartialConsumeException#getFailedIndexes()} 报告。
+     * 超时未完成的 {@link CompletableFuture} 会被取消，依赖它的后续阶段不再执行；
+     * 但取消不会中断已在执行的处理，重新投递后可能与之重复执行。</p>
+     *
+     * @param futures 与消息一一对应
+     * @throws PartialConsumeException 有消息失败或超时
+     */
+    protected final void awaitAll(@NonNull CompletableFuture<?>[] futures) {
+        try {
+            CompletableFuture.allOf(futures).get(asyncTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // 下面逐条检查
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final BitSet failed = new BitSet(futures.length);
+        Throwable cause = null;
+        for (int i = 0; i < futures.length; i++) {
+            // 取消失败说明刚好完成，按完成的结果处理
+            if (!futures[i].isDone() && futures[i].cancel(true)) {
+                failed.set(i);
+                if (cause == null) {
+                    cause = new TimeoutException("message not completed in " + asyncTimeoutMillis + "ms");
+                }
+            } else if (futures[i].isCompletedExceptionally()) {
+                failed.set(i);
+                if (cause == null) {
+                    cause = causeOf(futures[i]);
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new PartialConsumeException(failed, cause);
+        }
+    }
+
+    static <R> CompletableFuture<R> failedFuture(@NonNull Throwable e) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static Throwable causeOf(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return new IllegalStateException("completed normally");
+        } catch (CompletionException e) {
+            return e.getCause() == null ? e : e.getCause();
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
     @Data
     @Builder
     public static class ListenerParams {
@@ -58,5 +293,79 @@ public abstract class AbstractMessageHandler<T> {
         private String tags;
         private MessageModel messageModel;
         private ConsumeMode consumeMode;
+        /**
+         * 未标记格式或与其格式相同的消息使用的转换器，默认 {@link GsonMessageConverter}
+         */
+        private MessageConverter messageConverter;
+        /**
+         * 按消息标记的格式选择转换器，默认 {@link MessageConverterRegistry#getDefault()}
+         */
+        private MessageConverterRegistry messageConverterRegistry;
+        /**
+         * 每次回调的最大消息数量，默认1，{@link ConsumeMode#KEY_ORDERLY} 默认32
+         */
+        private Integer consumeMessageBatchMaxSize;
+        /**
+         * 消费线程池最小线程数，默认20，开启自动调整时默认CPU核数
+         */
+        private Integer consumeThreadMin;
+        /**
+         * 消费线程池最大线程数，默认20，开启自动调整时默认64
+         */
+        private Integer consumeThreadMax;
+        /**
+         * 每次从broker拉取的最大消息数量，默认32
+         */
+        private Integer pullBatchSize;
+        /**
+         * 两次拉取的间隔（毫秒），默认0
+         */
+        private Long pullInterval;
+        /**
+         * 是否自动调整消费线程数，在 [consumeThreadMin, consumeThreadMax) 内调整，默认false
+         */
+        private Boolean adaptiveConsumeThreads;
+        /**
+         * 批次内并发处理消息的线程池，由调用方负责关闭，不支持 {@link ConsumeMode#ORDERLY}，
+         * 可以使用 {@link HandlerExecutors#virtualThreadPerTask()}。
+         * {@link ConsumeMode#KEY_ORDERLY} 下用于执行各key通道，未设置时consumer自建consumeThreadMax个线程
+         */
+        private Executor handlerExecutor;
+        /**
+         * 并发或异步处理时等待一个批次完成的最长时间（毫秒），默认60秒
+         */
+        private Long asyncTimeoutMillis;
+        /**
+         * 已处理消息的去重缓存，默认不去重。处理成功后记录，重复投递的消息直接确认
+         */
+        private DeduplicationCache deduplicationCache;
+        /**
+         * 去重使用的消息标识，默认 {@link DeduplicationKey#MSG_ID}
+         */
+        private DeduplicationKey deduplicationKey;
+        /**
+         * 失败时的重试策略，默认不在本地重试：并发消费整批（或失败的消息）按 delayLevelWhenNextConsume 重新投递，
+         * 顺序消费挂起 suspendCurrentQueueTimeMillis 后重新消费
+         */
+        private RetryPolicy retryPolicy;
+        /**
+         * 处理速度上限，默认不限制，访问同一下游的处理器可以共用一个实例。
+         * 限流时消费线程等待而不是失败，本地积压达到 pullThresholdForQueue 后客户端暂停拉取
+         */
+        private TokenBucketRateLimiter rateLimiter;
+        /**
+         * 按处理耗时自适应的并发上限，默认不限制，下游变慢时减少同时调用处理器的线程数，恢复后逐步增加。
+         * 与 rateLimiter 一样等待而不是失败
+         */
+        private AdaptiveConcurrencyLimiter concurrencyLimiter;
+        /**
+         * 关闭时停止拉取后，等待已拉取的消息处理完成的最长时间（毫秒），默认10秒，超时未处理的消息在重新分配后由其它消费者消费
+         */
+        private Long drainTimeoutMillis;
+        /**
+         * 生产者开启claim-check时读取消息体的存储，默认无，收到claim-check的消息时转换失败。
+         * 处理器声明为 {@link LazyPayload} 时，只有调用 {@link LazyPayload#get()} 才读取
+         */
+        private BlobStore blobStore;
     }
 }
@@ -0,0 +1,146 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p> 按处理耗时自适应的并发限制（AIMD），限制同时调用处理器的消费线程数 </p>
+ * <p>以近期最小的单条消息耗时作为无负载耗时，单条耗时超过其 <code>latencyTolerance</code> 倍时认为下游过载，
+ * 并发上限乘以 {@link #BACKOFF_RATIO}；同一轮并发中的调用只减小一次，即在上次减小之后开始的调用才会再次减小。
+ * 未过载且并发接近上限时，每次调用增加 1/上限，约每轮并发增加1。</p>
+ * <p>无负载耗时每 {@link #BASELINE_WINDOW} 次调用取一次窗口内的最小值，下游持续变慢时基线随之上移，上限不会一直停在最小值。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class AdaptiveConcurrencyLimiter {
+    /**
+     * 过载时上限的缩小比例
+     */
+    static final double BACKOFF_RATIO = 0.9;
+    /**
+     * 重新计算无负载耗时的调用次数
+     */
+    static final int BASELINE_WINDOW = 500;
+    private static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private long baselineNanos;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecreaseNanos;
+
+    /**
+     * <p>从 <code>minLimit</code> 开始增长，耗时超过无负载耗时2倍时缩小</p>
+     */
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit) {
+        this(minLimit, maxLimit, minLimit, DEFAULT_LATENCY_TOLERANCE);
+    }
+
+    /**
+     * @param minLimit         并发上限的最小值
+     * @param maxLimit         并发上限的最大值，大于消费线程数时没有意义
+     * @param initialLimit     初始并发上限
+     * @param latencyTolerance 单条耗时超过无负载耗时的倍数时认为过载，大于1
+     */
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, int initialLimit, double latencyTolerance) {
+        super();
+        Assert.isTrue(minLimit > 0, "minLimit must be positive");
+        Assert.isTrue(maxLimit >= minLimit, "maxLimit must not be less than minLimit");
+        Assert.isTrue(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be in [minLimit, maxLimit]");
+        Assert.isTrue(latencyTolerance > 1, "latencyTolerance must be greater than 1");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = initialLimit;
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * <p>申请调用处理器，达到并发上限时等待</p>
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <p>处理器调用完成（成功或失败）后释放，按耗时调整并发上限</p>
+     *
+     * @param startNanos   {@link #acquire()} 之后开始调用的时间
+     * @param latencyNanos 单条消息的处理耗时
+     */
+    public void release(long startNanos, long latencyNanos) {
+        release(startNanos, latencyNanos, System.nanoTime());
+    }
+
+    void release(long startNanos, long latencyNanos, long nowNanos) {
+        lock.lock();
+        try {
+            final long latency = Math.max(1, latencyNanos);
+            if (baselineNanos == 0 || latency < baselineNanos) {
+                baselineNanos = latency;
+            }
+            windowMinNanos = Math.min(windowMinNanos, latency);
+            if (++windowSamples >= BASELINE_WINDOW) {
+                baselineNanos = windowMinNanos;
+                windowMinNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+
+            if (latency > baselineNanos * latencyTolerance) {
+                if (startNanos - lastDecreaseNanos >= 0) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    lastDecreaseNanos = nowNanos;
+                }
+            } else if (inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 当前并发上限
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 正在调用处理器的数量
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+/**
+ * <p> 未完成的异步发送达到上限时的处理方式 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public enum BackpressurePolicy {
+    /**
+     * 阻塞调用线程直到有空位
+     */
+    BLOCK,
+    /**
+     * 立即失败
+     */
+    FAIL_FAST,
+    /**
+     * 阻塞等待，超时后失败
+     */
+    TIMEOUT
+}
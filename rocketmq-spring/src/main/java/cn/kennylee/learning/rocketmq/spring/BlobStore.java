@@ -0,0 +1,42 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+
+/**
+ * <p> 存放大消息体的存储（claim-check），生产者把超过阈值的消息体写入后只发送引用，消费者按引用读取 </p>
+ * <p>生产者在消息属性 {@link #PROPERTY_CLAIM_CHECK} 中标记引用，消息体也是引用；
+ * 压缩后的消息体才写入存储，压缩属性照常保留在消息上。所有订阅该topic的消费组都可能读取同一消息体，
+ * 因此消费后不删除，由存储按不短于broker消息保存时间的期限清理。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see LocalFileBlobStore
+ */
+public interface BlobStore {
+    /**
+     * 标记消息体已写入 {@link BlobStore} 的消息属性，值为引用
+     */
+    String PROPERTY_CLAIM_CHECK = "CLAIM_CHECK";
+
+    /**
+     * <p>保存消息体</p>
+     *
+     * @param topic 消息的topic，可用于分目录或前缀
+     * @param body  消息体
+     * @return 读取时使用的引用
+     * @throws IOException if the body cannot be stored.
+     */
+    @NonNull
+    String put(@NonNull String topic, @NonNull byte[] body) throws IOException;
+
+    /**
+     * <p>读取消息体</p>
+     *
+     * @param reference {@link #put(String, byte[])} 返回的引用
+     * @throws IOException if the body cannot be read or no longer exists.
+     */
+    @NonNull
+    byte[] get(@NonNull String reference) throws IOException;
+}
@@ -0,0 +1,25 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p> 消息体压缩配置，消息体达到阈值时才压缩 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompressionConfig {
+    private CompressionType type;
+    /**
+     * 压缩阈值（字节），默认4K
+     */
+    @Builder.Default
+    private int threshold = 4096;
+}
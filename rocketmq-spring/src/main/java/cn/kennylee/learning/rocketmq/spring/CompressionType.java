@@ -0,0 +1,84 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import com.github.luben.zstd.Zstd;
+import net.jpountz.lz4.LZ4Factory;
+import org.springframework.lang.NonNull;
+
+/**
+ * <p> 消息体压缩算法，生产者在消息属性 {@link #PROPERTY_COMPRESSION} 中标记，消费者据此透明解压 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public enum CompressionType {
+    /**
+     * 压缩、解压速度快，压缩率一般
+     */
+    LZ4 {
+        @Override
+        byte[] compress(@NonNull byte[] body) {
+            return LZ4_FACTORY.fastCompressor().compress(body);
+        }
+
+        @Override
+        void decompress(@NonNull byte[] body, @NonNull byte[] dest, int originalLength) {
+            // fastDecompressor信任originalLength，不检查输入是否完整，必须使用safeDecompressor
+            int size = LZ4_FACTORY.safeDecompressor().decompress(body, 0, body.length, dest, 0, originalLength);
+            checkSize(size, originalLength);
+        }
+    },
+    /**
+     * 压缩率高，适合带宽受限的场景
+     */
+    ZSTD {
+        @Override
+        byte[] compress(@NonNull byte[] body) {
+            return Zstd.compress(body, ZSTD_LEVEL);
+        }
+
+        @Override
+        void decompress(@NonNull byte[] body, @NonNull byte[] dest, int originalLength) {
+            long size = Zstd.decompressByteArray(dest, 0, originalLength, body, 0, body.length);
+            if (Zstd.isError(size)) {
+                throw new MalformedMessageException("zstd decompress failed: " + Zstd.getErrorName(size));
+            }
+            checkSize(size, originalLength);
+        }
+    };
+
+    /**
+     * 标记压缩算法的消息属性
+     */
+    public static final String PROPERTY_COMPRESSION = "COMPRESSION";
+    /**
+     * 压缩前的字节数
+     */
+    public static final String PROPERTY_UNCOMPRESSED_SIZE = "UNCOMPRESSED_SIZE";
+
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+    private static final int ZSTD_LEVEL = 3;
+
+    /**
+     * <p>压缩消息体</p>
+     */
+    abstract byte[] compress(@NonNull byte[] body);
+
+    /**
+     * <p>解压消息体到 <code>dest</code> 的开头</p>
+     *
+     * @param body           压缩后的消息体
+     * @param dest           长度不小于 <code>originalLength</code>
+     * @param originalLength 压缩前的字节数
+     * @throws MalformedMessageException 解压后的字节数与 <code>originalLength</code> 不一致
+     */
+    abstract void decompress(@NonNull byte[] body, @NonNull byte[] dest, int originalLength);
+
+    /**
+     * <p>dest按线程复用，解压的字节数不足时尾部是上一条消息的内容，不能交给转换器</p>
+     */
+    private static void checkSize(long size, int originalLength) {
+        if (size != originalLength) {
+            throw new MalformedMessageException("decompressed " + size + " bytes, but declared " + originalLength);
+        }
+    }
+}
@@ -14,5 +14,11 @@ public enum ConsumeMode {
     /**
      * 顺序访问
      */
-    ORDERLY
+    ORDERLY,
+    /**
+     * 按消息key顺序访问，同一队列中key不同的消息并行处理，key相同的消息按顺序处理，没有key的消息之间不保证顺序
+     * <p>只在一次回调的批次（consumeMessageBatchMaxSize条）内并行：批次按key分为多个通道，所有通道结束后才确认并拉取下一批，
+     * 因此一批的耗时取决于最慢的通道，某个key处理慢或失败时同一队列的其它key也要等待。并行度不超过批次大小。</p>
+     */
+    KEY_ORDERLY
 }
@@ -0,0 +1,155 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
+import org.springframework.lang.NonNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p> 按处理耗时和本地积压调整消费线程池的核心线程数 </p>
+ * <p>目标线程数 = CPU核数 × (处理总耗时 / 处理CPU耗时)：I/O等待多的处理器得到更多线程，CPU密集的处理器接近核数。
+ * 本地积压（已拉取未消费的消息）不超过当前线程数时不再增加线程。</p>
+ * <p>客户端的消费线程池使用无界队列，只有核心线程数生效，核心线程数必须小于 consumeThreadMax，
+ * 因此调整范围是 [consumeThreadMin, consumeThreadMax - 1]。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+@Slf4j
+class ConsumeThreadPoolTuner {
+    /**
+     * 调整周期（秒）
+     */
+    static final long TUNE_INTERVAL_SECONDS = 10;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final DefaultMQPushConsumer consumer;
+    private final int minThreads;
+    private final int maxThreads;
+    private final int cores;
+    private final boolean cpuTimeSupported;
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private ScheduledExecutorService scheduler;
+    private volatile int currentThreads;
+
+    /**
+     * @param consumer 已设置consumeThreadMin/Max的consumer
+     */
+    ConsumeThreadPoolTuner(@NonNull DefaultMQPushConsumer consumer) {
+        super();
+        this.consumer = consumer;
+        this.minThreads = consumer.getConsumeThreadMin();
+        this.maxThreads = Math.max(consumer.getConsumeThreadMin(), consumer.getConsumeThreadMax() - 1);
+        this.cores = Runtime.getRuntime().availableProcessors();
+        this.cpuTimeSupported = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        this.currentThreads = this.minThreads;
+        if (!this.cpuTimeSupported) {
+            log.warn("thread cpu time not supported, consume thread pool of {} will not be tuned", consumer.getConsumerGroup());
+        }
+    }
+
+    /**
+     * @return 当前线程的CPU时间（纳秒），不支持时返回0
+     */
+    long currentThreadCpuTime() {
+        return cpuTimeSupported ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * <p>记录一次处理的总耗时和CPU耗时</p>
+     */
+    void record(long wallNanos, long cpuNanos) {
+        this.wallNanos.add(wallNanos);
+        this.cpuNanos.add(cpuNanos);
+    }
+
+    int getCurrentThreads() {
+        return currentThreads;
+    }
+
+    /**
+     * <p>consumer启动后开始定期调整</p>
+     */
+    void start() {
+        if (!cpuTimeSupported || minThreads >= maxThreads) {
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ConsumeThreadPoolTuner_" + consumer.getConsumerGroup());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::tune, TUNE_INTERVAL_SECONDS, TUNE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void tune() {
+        try {
+            final int current = this.currentThreads;
+            final int target = computeTarget(current, minThreads, maxThreads, cores,
+                    wallNanos.sumThenReset(), cpuNanos.sumThenReset(), backlog());
+            if (target != current) {
+                consumer.getDefaultMQPushConsumerImpl().updateCorePoolSize(target);
+                this.currentThreads = target;
+                log.info("consume thread pool of {} resized {} -> {}", consumer.getConsumerGroup(), current, target);
+            }
+        } catch (Exception e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return 已拉取到本地还未消费完的消息数量
+     */
+    private long backlog() {
+        long backlog = 0;
+        for (ProcessQueue processQueue : consumer.getDefaultMQPushConsumerImpl().getRebalanceImpl()
+                .getProcessQueueTable().values()) {
+            if (!processQueue.isDropped()) {
+                backlog += processQueue.getMsgCount().get();
+            }
+        }
+        return backlog;
+    }
+
+    /**
+     * <p>计算下一个核心线程数，每次最多向目标移动一半，避免抖动</p>
+     *
+     * @param wallNanos 周期内处理的总耗时
+     * @param cpuNanos  周期内处理的CPU耗时
+     * @param backlog   本地积压的消息数量
+     */
+    static int computeTarget(int current, int minThreads, int maxThreads, int cores,
+                             long wallNanos, long cpuNanos, long backlog) {
+        if (wallNanos <= 0) {
+            // 周期内没有消息，保持不变
+            return current;
+        }
+        final double blockingRatio = (double) wallNanos / Math.max(cpuNanos, 1);
+        final long ideal = Math.round(Math.ceil(cores * blockingRatio));
+        int target = (int) Math.max(minThreads, Math.min(maxThreads, ideal));
+        if (target > current && backlog <= current) {
+            // 没有积压，增加线程没有意义
+            return current;
+        }
+        if (target == current) {
+            return current;
+        }
+        final int step = Math.max(1, Math.abs(target - current) / 2);
+        return target > current ? current + step : current - step;
+    }
+}
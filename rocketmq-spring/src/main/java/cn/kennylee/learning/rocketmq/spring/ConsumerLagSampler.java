@@ -0,0 +1,399 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.store.OffsetStore;
+import org.apache.rocketmq.client.consumer.store.ReadOffsetType;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
+import org.apache.rocketmq.common.ServiceState;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p> 定期采样消费组在本实例分配到的各队列的积压 </p>
+ * <p>积压 = broker上队列的最大offset - 消费者已提交（内存中待持久化）的offset，每个队列每次采样向broker查询一次最大offset。
+ * 两次采样之间offset的增长即消费速率和生产速率，按 {@link #RATE_SMOOTHING} 做指数平滑；
+ * 追上积压的时间 = 积压 / (消费速率 - 生产速率)，消费速率不大于生产速率时为正无穷。</p>
+ * <p>只包含本实例分配到的队列，多个实例时按group汇总各实例的指标即为整个消费组的积压，可以用于扩缩容和告警。
+ * 查询 {@link #getGroupLag(String)} 返回最近一次采样的结果，不访问broker。</p>
+ * <p>phase在消费者之后，消费者启动后开始采样、关闭前停止。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+@Slf4j
+public class ConsumerLagSampler implements SmartLifecycle, DisposableBean {
+    /**
+     * 速率的平滑系数，本次采样的权重
+     */
+    static final double RATE_SMOOTHING = 0.5;
+
+    private final long intervalMillis;
+    private final List<DefaultMQPushConsumer> consumers = new CopyOnWriteArrayList<>();
+    /**
+     * group -> 最近一次采样的结果
+     */
+    private final Map<String, GroupLag> groupLags = new ConcurrentHashMap<>();
+    private final Map<Meter.Id, Meter> queueMeters = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> groupMeters = new ConcurrentHashMap<>();
+    @Nullable
+    private volatile MeterRegistry meterRegistry;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running = false;
+
+    /**
+     * @param intervalMillis 采样间隔（毫秒）
+     */
+    public ConsumerLagSampler(long intervalMillis) {
+        super();
+        Assert.isTrue(intervalMillis > 0, "intervalMillis must be positive");
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * <p>添加需要采样的consumer，启动前后都可以添加</p>
+     */
+    public ConsumerLagSampler register(@NonNull Collection<DefaultMQPushConsumer> consumers) {
+        for (DefaultMQPushConsumer consumer : consumers) {
+            if (!this.consumers.contains(consumer)) {
+                this.consumers.add(consumer);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * <p>注册Micrometer指标，标签 group，按队列的指标另有 topic、broker、queue</p>
+     * <ul>
+     * <li><code>rocketmq.consumer.lag</code>: 队列的积压</li>
+     * <li><code>rocketmq.consumer.group.lag</code>: 本实例各队列的积压之和</li>
+     * <li><code>rocketmq.consumer.group.consume.rate</code>: 消费速率（条/秒）</li>
+     * <li><code>rocketmq.consumer.group.produce.rate</code>: 生产速率（条/秒）</li>
+     * <li><code>rocketmq.consumer.group.catchup</code>: 追上积压的时间（秒）</li>
+     * </ul>
+     * <p>队列的指标在第一次采样到时注册，重新分配给其它实例后移除。</p>
+     */
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+    }
+
+    /**
+     * @return 消费组在本实例的积压，尚未采样到时为null
+     */
+    @Nullable
+    public GroupLag getGroupLag(@NonNull String group) {
+        return groupLags.get(group);
+    }
+
+    /**
+     * @return group -> 积压
+     */
+    public Map<String, GroupLag> getGroupLags() {
+        return Collections.unmodifiableMap(groupLags);
+    }
+
+    /**
+     * <p>采样一次，由定时任务调用</p>
+     */
+    void sample() {
+        final Map<String, List<QueueLag>> sampled = new HashMap<>();
+        for (DefaultMQPushConsumer consumer : consumers) {
+            final DefaultMQPushConsumerImpl impl = consumer.getDefaultMQPushConsumerImpl();
+            final OffsetStore offsetStore = impl.getOffsetStore();
+            if (impl.getServiceState() != ServiceState.RUNNING || Objects.isNull(offsetStore)) {
+                continue;
+            }
+            final String group = consumer.getConsumerGroup();
+            final GroupLag previous = groupLags.get(group);
+            final List<QueueLag> queues = sampled.computeIfAbsent(group, k -> new ArrayList<>());
+            for (Map.Entry<MessageQueue, ProcessQueue> entry : impl.getRebalanceImpl().getProcessQueueTable().entrySet()) {
+                if (entry.getValue().isDropped()) {
+                    continue;
+                }
+                final MessageQueue mq = entry.getKey();
+                final long consumerOffset = offsetStore.readOffset(mq, ReadOffsetType.MEMORY_FIRST_THEN_STORE);
+                if (consumerOffset < 0) {
+                    // 还没有消费位置
+                    continue;
+                }
+                final long brokerOffset;
+                try {
+                    brokerOffset = consumer.maxOffset(mq);
+                } catch (MQClientException e) {
+                    log.debug("cannot get max offset of {}: {}", mq, e.toString());
+                    continue;
+                }
+                queues.add(QueueLag.next(Objects.isNull(previous) ? null : previous.find(mq), mq,
+                        brokerOffset, consumerOffset, System.nanoTime()));
+            }
+        }
+
+        for (Map.Entry<String, List<QueueLag>> entry : sampled.entrySet()) {
+            groupLags.put(entry.getKey(), GroupLag.of(entry.getKey(), entry.getValue()));
+        }
+        groupLags.keySet().retainAll(sampled.keySet());
+        updateMeters();
+    }
+
+    private void updateMeters() {
+        final MeterRegistry registry = this.meterRegistry;
+        if (Objects.isNull(registry)) {
+            return;
+        }
+        final Map<Meter.Id, Boolean> current = new HashMap<>();
+        for (GroupLag groupLag : groupLags.values()) {
+            final String group = groupLag.getGroup();
+            if (groupMeters.putIfAbsent(group, Boolean.TRUE) == null) {
+                final Tags tags = Tags.of("group", group);
+                Gauge.builder("rocketmq.consumer.group.lag", this, o -> o.groupValue(group, GroupLag::getLag))
+                        .description("messages behind the broker on the queues assigned to this instance")
+                        .tags(tags)
+                        .register(registry);
+                Gauge.builder("rocketmq.consumer.group.consume.rate", this,
+                        o -> o.groupValue(group, GroupLag::getConsumeRate))
+                        .description("messages consumed per second")
+                        .tags(tags)
+                        .register(registry);
+                Gauge.builder("rocketmq.consumer.group.produce.rate", this,
+                        o -> o.groupValue(group, GroupLag::getProduceRate))
+                        .description("messages produced per second")
+                        .tags(tags)
+                        .register(registry);
+                Gauge.builder("rocketmq.consumer.group.catchup", this,
+                        o -> o.groupValue(group, GroupLag::getCatchUpSeconds))
+                        .description("estimated time to consume the lag")
+                        .tags(tags)
+                        .baseUnit("seconds")
+                        .register(registry);
+            }
+            for (QueueLag queueLag : groupLag.getQueues()) {
+                final MessageQueue mq = queueLag.getQueue();
+                final Gauge gauge = Gauge.builder("rocketmq.consumer.lag", this, o -> o.queueValue(group, mq))
+                        .description("messages behind the broker on the queue")
+                        .tags("group", group, "topic", mq.getTopic(), "broker", mq.getBrokerName(),
+                                "queue", String.valueOf(mq.getQueueId()))
+                        .register(registry);
+                queueMeters.putIfAbsent(gauge.getId(), gauge);
+                current.put(gauge.getId(), Boolean.TRUE);
+            }
+        }
+        // 重新分配给其它实例的队列
+        queueMeters.entrySet().removeIf(entry -> {
+            if (current.containsKey(entry.getKey())) {
+                return false;
+            }
+            registry.remove(entry.getValue());
+            return true;
+        });
+    }
+
+    private double groupValue(String group, ToDoubleFunction<GroupLag> value) {
+        final GroupLag groupLag = groupLags.get(group);
+        return Objects.isNull(groupLag) ? Double.NaN : value.applyAsDouble(groupLag);
+    }
+
+    private double queueValue(String group, MessageQueue mq) {
+        final GroupLag groupLag = groupLags.get(group);
+        final QueueLag queueLag = Objects.isNull(groupLag) ? null : groupLag.find(mq);
+        return Objects.isNull(queueLag) ? Double.NaN : queueLag.getLag();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("ConsumerLagSampler_", true));
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sample();
+            } catch (Exception e) {
+                log.warn("sample consumer lag failed: {}", e.toString());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        this.running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        this.scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return RocketMqStarter.CONSUMER_PHASE + 1;
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+    }
+
+    /**
+     * <p> 队列的积压 </p>
+     */
+    @Getter
+    @ToString
+    public static class QueueLag {
+        private final MessageQueue queue;
+        /**
+         * broker上队列的最大offset
+         */
+        private final long brokerOffset;
+        /**
+         * 已提交的消费offset
+         */
+        private final long consumerOffset;
+        private final long lag;
+        /**
+         * 消费速率（条/秒），第一次采样时为0
+         */
+        private final double consumeRate;
+        /**
+         * 生产速率（条/秒），第一次采样时为0
+         */
+        private final double produceRate;
+        @ToString.Exclude
+        private final long sampledNanos;
+        @ToString.Exclude
+        private final boolean rated;
+
+        private QueueLag(MessageQueue queue, long brokerOffset, long consumerOffset, double consumeRate,
+                         double produceRate, long sampledNanos, boolean rated) {
+            this.queue = queue;
+            this.brokerOffset = brokerOffset;
+            this.consumerOffset = consumerOffset;
+            this.lag = Math.max(0, brokerOffset - consumerOffset);
+            this.consumeRate = consumeRate;
+            this.produceRate = produceRate;
+            this.sampledNanos = sampledNanos;
+            this.rated = rated;
+        }
+
+        /**
+         * <p>根据上一次采样计算速率</p>
+         *
+         * @param previous 同一队列上一次的采样，没有时速率为0
+         */
+        static QueueLag next(@Nullable QueueLag previous, MessageQueue queue, long brokerOffset, long consumerOffset,
+                             long nowNanos) {
+            if (Objects.isNull(previous) || nowNanos <= previous.sampledNanos) {
+                return new QueueLag(queue, brokerOffset, consumerOffset, 0, 0, nowNanos, false);
+            }
+            final double seconds = (double) (nowNanos - previous.sampledNanos) / TimeUnit.SECONDS.toNanos(1);
+            final double consumeRate = Math.max(0, consumerOffset - previous.consumerOffset) / seconds;
+            final double produceRate = Math.max(0, brokerOffset - previous.brokerOffset) / seconds;
+            if (!previous.rated) {
+                return new QueueLag(queue, brokerOffset, consumerOffset, consumeRate, produceRate, nowNanos, true);
+            }
+            return new QueueLag(queue, brokerOffset, consumerOffset,
+                    smooth(previous.consumeRate, consumeRate), smooth(previous.produceRate, produceRate), nowNanos, true);
+        }
+
+        private static double smooth(double previous, double current) {
+            return RATE_SMOOTHING * current + (1 - RATE_SMOOTHING) * previous;
+        }
+    }
+
+    /**
+     * <p> 消费组在本实例的积压 </p>
+     */
+    @Getter
+    @ToString
+    public static class GroupLag {
+        private final String group;
+        private final long lag;
+        /**
+         * 消费速率（条/秒）
+         */
+        private final double consumeRate;
+        /**
+         * 生产速率（条/秒）
+         */
+        private final double produceRate;
+        /**
+         * 按当前速率追上积压的时间（秒），没有积压时为0，消费速率不大于生产速率时为正无穷
+         */
+        private final double catchUpSeconds;
+        private final List<QueueLag> queues;
+        @ToString.Exclude
+        @Getter(AccessLevel.NONE)
+        private final Map<MessageQueue, QueueLag> byQueue = new HashMap<>();
+
+        private GroupLag(String group, long lag, double consumeRate, double produceRate, List<QueueLag> queues) {
+            this.group = group;
+            this.lag = lag;
+            this.consumeRate = consumeRate;
+            this.produceRate = produceRate;
+            this.catchUpSeconds = catchUpSeconds(lag, consumeRate, produceRate);
+            this.queues = Collections.unmodifiableList(queues);
+            for (QueueLag queue : queues) {
+                this.byQueue.put(queue.getQueue(), queue);
+            }
+        }
+
+        static GroupLag of(String group, List<QueueLag> queues) {
+            long lag = 0;
+            double consumeRate = 0;
+            double produceRate = 0;
+            for (QueueLag queue : queues) {
+                lag += queue.getLag();
+                consumeRate += queue.getConsumeRate();
+                produceRate += queue.getProduceRate();
+            }
+            return new GroupLag(group, lag, consumeRate, produceRate, queues);
+        }
+
+        static double catchUpSeconds(long lag, double consumeRate, double produceRate) {
+            if (lag == 0) {
+                return 0;
+            }
+            return consumeRate > produceRate ? lag / (consumeRate - produceRate) : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * @return 队列的积压，本实例没有分配到该队列时为null
+         */
+        @Nullable
+        public QueueLag find(@NonNull MessageQueue mq) {
+            return byQueue.get(mq);
+        }
+    }
+}
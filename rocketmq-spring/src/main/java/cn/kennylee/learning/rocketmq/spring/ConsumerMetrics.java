@@ -0,0 +1,136 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+/**
+ * <p> {@link RocketMqConsumer} 消费指标，实例与消费者（group、topic、tags）一一对应 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see MicrometerConsumerMetrics
+ */
+public interface ConsumerMetrics {
+    /**
+     * 不记录任何指标
+     */
+    ConsumerMetrics NOOP = new ConsumerMetrics() {
+        @Override
+        public void recordDeserialize(long durationNanos) {
+            // do nothing
+        }
+
+        @Override
+        public void recordHandle(long durationNanos) {
+            // do nothing
+        }
+
+        @Override
+        public void recordBatch(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordReconsumeLater(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordSuspend(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordDuplicate(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordLocalRetry(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordDeadLetter(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordThrottle(long durationNanos) {
+            // do nothing
+        }
+
+        @Override
+        public void recordDrain(long durationNanos, long abandoned) {
+            // do nothing
+        }
+    };
+
+    /**
+     * <p>记录单条消息的转换耗时</p>
+     *
+     * @param durationNanos 耗时（纳秒）
+     */
+    void recordDeserialize(long durationNanos);
+
+    /**
+     * <p>记录一次 {@link AbstractMessageHandler#onMessages(java.util.List)} 的耗时，未开启批量消费时即单条消息的处理耗时</p>
+     *
+     * @param durationNanos 耗时（纳秒）
+     */
+    void recordHandle(long durationNanos);
+
+    /**
+     * <p>记录每次回调的消息数量</p>
+     *
+     * @param size 消息数量
+     */
+    void recordBatch(int size);
+
+    /**
+     * <p>记录并发消费失败需要重新投递（RECONSUME_LATER或部分确认）</p>
+     *
+     * @param size 重新投递的消息数量
+     */
+    void recordReconsumeLater(int size);
+
+    /**
+     * <p>记录顺序消费失败挂起队列（SUSPEND_CURRENT_QUEUE_A_MOMENT）</p>
+     *
+     * @param size 挂起的消息数量
+     */
+    void recordSuspend(int size);
+
+    /**
+     * <p>记录去重跳过的消息</p>
+     *
+     * @param size 跳过的消息数量
+     */
+    void recordDuplicate(int size);
+
+    /**
+     * <p>记录按 {@link RetryPolicy} 在本地重试</p>
+     *
+     * @param size 重试的消息数量
+     */
+    void recordLocalRetry(int size);
+
+    /**
+     * <p>记录直接发回死信队列的消息</p>
+     *
+     * @param size 消息数量
+     */
+    void recordDeadLetter(int size);
+
+    /**
+     * <p>记录调用处理器前等待 {@link TokenBucketRateLimiter}、{@link AdaptiveConcurrencyLimiter} 的时间，未配置时不记录</p>
+     *
+     * @param durationNanos 耗时（纳秒）
+     */
+    void recordThrottle(long durationNanos);
+
+    /**
+     * <p>记录关闭时的排空：停止拉取到已拉取的消息处理完成或超时</p>
+     *
+     * @param durationNanos 耗时（纳秒）
+     * @param abandoned     超时时未处理完的消息数量，会重新投递
+     */
+    void recordDrain(long durationNanos, long abandoned);
+}
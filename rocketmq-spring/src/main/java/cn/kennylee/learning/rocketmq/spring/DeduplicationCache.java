@@ -0,0 +1,148 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.springframework.lang.NonNull;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * <p> 已处理消息的去重缓存，容量固定，记录在 <code>ttl</code> 后过期 </p>
+ * <p>只保存key的64位指纹和过期时间（每条12字节），按8个槽位一组开放寻址，组内按写入顺序排列，写入时先移除已过期的记录，
+ * 仍没有空位时淘汰最早写入的记录，因此内存占用在创建时确定，与经过的消息数量无关。指纹冲突概率约为 n²/2^65，可以忽略。</p>
+ * <p>按组加锁，可以被多个消费线程、多个消费者共用。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see AbstractMessageHandler.ListenerParams#getDeduplicationCache()
+ */
+public class DeduplicationCache {
+    private static final int BUCKET_SIZE = 8;
+    private static final int MAX_LOCKS = 256;
+    private static final long EMPTY = 0L;
+
+    private final long[] fingerprints;
+    private final int[] expiries;
+    private final Object[] locks;
+    private final int bucketMask;
+    private final int lockMask;
+    private final int ttlSeconds;
+    private final long startMillis;
+    private final LongSupplier clock;
+
+    /**
+     * @param capacity 最多保存的记录数，向上取整到2的幂
+     * @param ttl      记录的有效期，不小于1秒
+     * @param unit     有效期的单位
+     */
+    public DeduplicationCache(int capacity, long ttl, @NonNull TimeUnit unit) {
+        this(capacity, ttl, unit, System::currentTimeMillis);
+    }
+
+    DeduplicationCache(int capacity, long ttl, @NonNull TimeUnit unit, @NonNull LongSupplier clock) {
+        super();
+        Assert.isTrue(capacity > 0 && capacity <= 1 << 30, "capacity must be in (0, 2^30]");
+        final long seconds = unit.toSeconds(ttl);
+        Assert.isTrue(seconds >= 1 && seconds < Integer.MAX_VALUE / 2, "ttl must be at least 1 second");
+        final int needed = (capacity + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        final int buckets = needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+        this.fingerprints = new long[buckets * BUCKET_SIZE];
+        this.expiries = new int[buckets * BUCKET_SIZE];
+        this.bucketMask = buckets - 1;
+        this.locks = new Object[Math.min(buckets, MAX_LOCKS)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.lockMask = locks.length - 1;
+        this.ttlSeconds = (int) seconds;
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+    }
+
+    /**
+     * @return 记录的容量
+     */
+    public int capacity() {
+        return fingerprints.length;
+    }
+
+    /**
+     * @return key是否已记录且未过期
+     */
+    public boolean contains(@NonNull String key) {
+        final long fingerprint = fingerprint(key);
+        final int bucket = bucket(fingerprint);
+        final int now = now();
+        synchronized (locks[bucket & lockMask]) {
+            final int start = bucket * BUCKET_SIZE;
+            for (int i = start; i < start + BUCKET_SIZE; i++) {
+                if (fingerprints[i] == fingerprint) {
+                    return expiries[i] > now;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>记录key，已存在时刷新过期时间并移到组的末尾</p>
+     */
+    public void put(@NonNull String key) {
+        final long fingerprint = fingerprint(key);
+        final int bucket = bucket(fingerprint);
+        final int now = now();
+        synchronized (locks[bucket & lockMask]) {
+            final int start = bucket * BUCKET_SIZE;
+            final int end = start + BUCKET_SIZE;
+            // 组内记录按写入顺序排列在前部：去掉已过期的记录和key原有的记录后压缩，key追加在末尾
+            int size = start;
+            for (int i = start; i < end; i++) {
+                if (fingerprints[i] != EMPTY && fingerprints[i] != fingerprint && expiries[i] > now) {
+                    fingerprints[size] = fingerprints[i];
+                    expiries[size] = expiries[i];
+                    size++;
+                }
+            }
+            for (int i = size; i < end; i++) {
+                fingerprints[i] = EMPTY;
+                expiries[i] = 0;
+            }
+            if (size == end) {
+                // 没有空位时淘汰最早写入的
+                System.arraycopy(fingerprints, start + 1, fingerprints, start, BUCKET_SIZE - 1);
+                System.arraycopy(expiries, start + 1, expiries, start, BUCKET_SIZE - 1);
+                size = end - 1;
+            }
+            fingerprints[size] = fingerprint;
+            expiries[size] = now + ttlSeconds;
+        }
+    }
+
+    private int bucket(long fingerprint) {
+        return (int) (fingerprint >>> 32) & bucketMask;
+    }
+
+    /**
+     * @return 创建以来的秒数
+     */
+    private int now() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(clock.getAsLong() - startMillis);
+    }
+
+    /**
+     * <p>FNV-1a后再做一次64位混合，0保留给空槽位</p>
+     */
+    static long fingerprint(@NonNull String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1L : h;
+    }
+}
@@ -0,0 +1,42 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+/**
+ * <p> 去重使用的消息标识 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see DeduplicationCache
+ */
+public enum DeduplicationKey {
+    /**
+     * 生产者生成的消息ID（UNIQ_KEY），重试投递时不变
+     */
+    MSG_ID {
+        @Override
+        String of(@NonNull MessageExt messageExt) {
+            String uniqId = MessageClientIDSetter.getUniqID(messageExt);
+            return uniqId == null ? messageExt.getMsgId() : uniqId;
+        }
+    },
+    /**
+     * 业务key（{@link MessageExt#getKeys()}），没有key的消息不去重
+     */
+    KEYS {
+        @Override
+        String of(@NonNull MessageExt messageExt) {
+            return StringUtils.isEmpty(messageExt.getKeys()) ? null : messageExt.getKeys();
+        }
+    };
+
+    /**
+     * @return 消息的标识，为null时不去重
+     */
+    @Nullable
+    abstract String of(@NonNull MessageExt messageExt);
+}
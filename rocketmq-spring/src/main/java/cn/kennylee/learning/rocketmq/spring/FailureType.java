@@ -0,0 +1,22 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+/**
+ * <p> 处理失败的分类，决定 {@link RetryPolicy} 如何处理失败的消息 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public enum FailureType {
+    /**
+     * 暂时的失败（如下游超时），先在本地重试，仍失败时由broker延时重新投递
+     */
+    RETRYABLE,
+    /**
+     * 本地立即重试没有意义，直接由broker延时重新投递
+     */
+    NON_RETRYABLE,
+    /**
+     * 消息本身无法处理（如格式错误），不再重试，直接进入死信队列
+     */
+    POISON
+}
@@ -0,0 +1,40 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializeFilter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.springframework.lang.NonNull;
+
+import java.lang.reflect.Type;
+
+/**
+ * <p> 基于fastjson的消息体转换器，{@link RocketMqProducer} 默认的序列化方式 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class FastJsonMessageConverter implements MessageConverter {
+    private static final SerializeFilter[] NO_FILTERS = new SerializeFilter[0];
+
+    @NonNull
+    @Override
+    public String getContentType() {
+        return MessageConverterRegistry.APPLICATION_JSON;
+    }
+
+    /**
+     * 与 {@link JSON#toJSONStringWithDateFormat} 相同的输出，直接写为UTF-8字节
+     */
+    @NonNull
+    @Override
+    public byte[] toBytes(@NonNull Object payload) {
+        return JSON.toJSONBytes(RocketMqProducer.DEFAULT_CHARSET, payload, SerializeConfig.globalInstance, NO_FILTERS,
+                RocketMqProducer.DATE_FORMAT, JSON.DEFAULT_GENERATE_FEATURE, SerializerFeature.WriteDateUseDateFormat);
+    }
+
+    @Override
+    public Object fromBytes(@NonNull byte[] body, int offset, int length, @NonNull Type type) {
+        return JSON.parseObject(body, offset, length, RocketMqProducer.DEFAULT_CHARSET, type);
+    }
+}
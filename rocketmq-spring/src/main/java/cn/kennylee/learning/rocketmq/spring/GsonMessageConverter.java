@@ -0,0 +1,48 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.springframework.lang.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+
+/**
+ * <p> 基于Gson的消息体转换器（默认） </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class GsonMessageConverter implements MessageConverter {
+    private final Gson gson;
+
+    public GsonMessageConverter() {
+        // 日期格式与生产者一致
+        this(new GsonBuilder().setDateFormat(RocketMqProducer.DATE_FORMAT).create());
+    }
+
+    public GsonMessageConverter(@NonNull Gson gson) {
+        super();
+        this.gson = gson;
+    }
+
+    @NonNull
+    @Override
+    public String getContentType() {
+        return MessageConverterRegistry.APPLICATION_JSON;
+    }
+
+    @NonNull
+    @Override
+    public byte[] toBytes(@NonNull Object payload) {
+        return gson.toJson(payload).getBytes(RocketMqProducer.DEFAULT_CHARSET);
+    }
+
+    @Override
+    public Object fromBytes(@NonNull byte[] body, int offset, int length, @NonNull Type type) {
+        // 直接从字节流读取，不生成中间String
+        return gson.fromJson(new InputStreamReader(new ByteArrayInputStream(body, offset, length),
+                RocketMqProducer.DEFAULT_CHARSET), type);
+    }
+}
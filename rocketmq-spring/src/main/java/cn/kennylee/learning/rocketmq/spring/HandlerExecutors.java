@@ -0,0 +1,35 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p> 消息处理线程池 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see AbstractMessageHandler.ListenerParams#getHandlerExecutor()
+ */
+@Slf4j
+public final class HandlerExecutors {
+
+    private HandlerExecutors() {
+    }
+
+    /**
+     * <p>每条消息一个虚拟线程的线程池，需要JDK 21及以上，阻塞的处理不会占用平台线程</p>
+     *
+     * @return 当前JDK不支持虚拟线程时为空
+     */
+    public static Optional<ExecutorService> virtualThreadPerTask() {
+        try {
+            return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (ReflectiveOperationException e) {
+            log.debug("virtual threads not supported: {}", e.toString());
+            return Optional.empty();
+        }
+    }
+}
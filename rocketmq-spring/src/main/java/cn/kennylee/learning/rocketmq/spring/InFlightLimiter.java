@@ -0,0 +1,116 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.springframework.lang.NonNull;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> 限制未完成的异步发送数量，按消息条数和字节数同时计数 </p>
+ * <p>单条消息超过字节上限时按上限计数，保证大消息仍可单独发送。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class InFlightLimiter {
+    private final int maxMessages;
+    private final int maxBytes;
+    private final Semaphore messages;
+    private final Semaphore bytes;
+    private final BackpressurePolicy policy;
+    private final long timeoutNanos;
+
+    /**
+     * @param maxMessages   最大未完成消息条数
+     * @param maxBytes      最大未完成字节数
+     * @param policy        达到上限时的处理方式
+     * @param timeoutMillis {@link BackpressurePolicy#TIMEOUT} 的等待时间
+     */
+    public InFlightLimiter(int maxMessages, int maxBytes, @NonNull BackpressurePolicy policy, long timeoutMillis) {
+        super();
+        Assert.isTrue(maxMessages > 0, "maxMessages must be positive");
+        Assert.isTrue(maxBytes > 0, "maxBytes must be positive");
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.messages = new Semaphore(maxMessages);
+        this.bytes = new Semaphore(maxBytes);
+        this.policy = policy;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * <p>申请发送一条消息</p>
+     *
+     * @param size 消息字节数
+     * @return 申请成功返回true，按策略放弃时返回false
+     * @throws InterruptedException if the sending thread is interrupted.
+     */
+    public boolean tryAcquire(int size) throws InterruptedException {
+        final int permits = permits(size);
+        switch (policy) {
+            case BLOCK:
+                messages.acquire();
+                try {
+                    bytes.acquire(permits);
+                } catch (InterruptedException e) {
+                    messages.release();
+                    throw e;
+                }
+                return true;
+            case FAIL_FAST:
+                if (!messages.tryAcquire()) {
+                    return false;
+                }
+                if (!bytes.tryAcquire(permits)) {
+                    messages.release();
+                    return false;
+                }
+                return true;
+            case TIMEOUT:
+                final long deadline = System.nanoTime() + timeoutNanos;
+                if (!messages.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+                boolean acquired = false;
+                try {
+                    acquired = bytes.tryAcquire(permits, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } finally {
+                    if (!acquired) {
+                        messages.release();
+                    }
+                }
+                return acquired;
+            default:
+                throw new UnsupportedOperationException("unsupported yet!");
+        }
+    }
+
+    /**
+     * <p>发送完成（成功或失败）后释放</p>
+     *
+     * @param size 与 {@link #tryAcquire(int)} 相同的字节数
+     */
+    public void release(int size) {
+        bytes.release(permits(size));
+        messages.release();
+    }
+
+    /**
+     * @return 当前未完成的消息条数
+     */
+    public int getInFlightMessages() {
+        return maxMessages - messages.availablePermits();
+    }
+
+    /**
+     * @return 当前未完成的字节数
+     */
+    public int getInFlightBytes() {
+        return maxBytes - bytes.availablePermits();
+    }
+
+    private int permits(int size) {
+        return Math.max(1, Math.min(size, maxBytes));
+    }
+}
@@ -0,0 +1,55 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.text.SimpleDateFormat;
+
+/**
+ * <p> 基于Jackson的消息体转换器 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class JacksonMessageConverter implements MessageConverter {
+    private final ObjectMapper objectMapper;
+
+    public JacksonMessageConverter() {
+        this(configure(new ObjectMapper()));
+    }
+
+    public JacksonMessageConverter(@NonNull ObjectMapper objectMapper) {
+        super();
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * <p>与其它转换器保持一致：忽略未知字段，日期使用 {@link RocketMqProducer#DATE_FORMAT}</p>
+     */
+    static ObjectMapper configure(@NonNull ObjectMapper objectMapper) {
+        return objectMapper
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .setDateFormat(new SimpleDateFormat(RocketMqProducer.DATE_FORMAT));
+    }
+
+    @NonNull
+    @Override
+    public String getContentType() {
+        return MessageConverterRegistry.APPLICATION_JSON;
+    }
+
+    @NonNull
+    @Override
+    public byte[] toBytes(@NonNull Object payload) throws IOException {
+        return objectMapper.writeValueAsBytes(payload);
+    }
+
+    @Override
+    public Object fromBytes(@NonNull byte[] body, int offset, int length, @NonNull Type type) throws IOException {
+        // JavaType由TypeFactory内部缓存
+        return objectMapper.readValue(body, offset, length, objectMapper.constructType(type));
+    }
+}
@@ -0,0 +1,142 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * <p> 按broker发送耗时选择队列，用于不要求顺序的消息，让新的发送避开变慢的broker </p>
+ * <p>每个broker记录发送耗时的峰值敏感EWMA：耗时变大时立即采用，变小时按时间衰减平滑，发送失败按 <code>failurePenalty</code> 计；
+ * 没有新的记录时代价随时间衰减，慢broker过一段时间会重新得到试探的流量。
+ * 选择时随机取两个不同broker的队列，选 EWMA × (未完成发送数 + 1) 较小的一个（power of two choices），
+ * 避免所有发送同时涌向当前最快的broker。</p>
+ * <p>发送耗时由 {@link RocketMqProducer} 在发送完成后通过 {@link #onComplete(String, long, boolean)} 记录。
+ * 与客户端自带的 sendLatencyFaultEnable 不同，按连续的耗时而不是固定的耗时区间规避broker。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see RocketMqProducer.ProducerParams#getMessageQueueSelector()
+ */
+public class LatencyAwareMessageQueueSelector implements MessageQueueSelector {
+    /**
+     * 随机寻找第二个broker的最多尝试次数
+     */
+    private static final int MAX_PICK_ATTEMPTS = 4;
+
+    private final ConcurrentMap<String, BrokerLatency> brokers = new ConcurrentHashMap<>();
+    private final long decayNanos;
+    private final long failurePenaltyNanos;
+    private final LongSupplier clock;
+
+    /**
+     * 衰减时间10秒，失败按1秒计
+     */
+    public LatencyAwareMessageQueueSelector() {
+        this(10_000, 1_000);
+    }
+
+    /**
+     * @param decayMillis          EWMA的衰减时间常数（毫秒）
+     * @param failurePenaltyMillis 发送失败时记录的耗时（毫秒）
+     */
+    public LatencyAwareMessageQueueSelector(long decayMillis, long failurePenaltyMillis) {
+        this(decayMillis, failurePenaltyMillis, System::nanoTime);
+    }
+
+    LatencyAwareMessageQueueSelector(long decayMillis, long failurePenaltyMillis, @NonNull LongSupplier clock) {
+        super();
+        Assert.isTrue(decayMillis > 0, "decayMillis must be positive");
+        Assert.isTrue(failurePenaltyMillis > 0, "failurePenaltyMillis must be positive");
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMillis);
+        this.failurePenaltyNanos = TimeUnit.MILLISECONDS.toNanos(failurePenaltyMillis);
+        this.clock = clock;
+    }
+
+    @Override
+    public MessageQueue select(List<MessageQueue> mqs, Message msg, Object arg) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final MessageQueue first = mqs.get(random.nextInt(mqs.size()));
+        MessageQueue selected = first;
+        if (mqs.size() > 1) {
+            MessageQueue second = null;
+            for (int i = 0; i < MAX_PICK_ATTEMPTS && second == null; i++) {
+                second = otherBroker(mqs.get(random.nextInt(mqs.size())), first);
+            }
+            // 随机没有取到时顺序查找
+            final int offset = random.nextInt(mqs.size());
+            for (int i = 0; i < mqs.size() && second == null; i++) {
+                second = otherBroker(mqs.get((offset + i) % mqs.size()), first);
+            }
+            // 只有一个broker时直接使用第一个
+            if (second != null && cost(second.getBrokerName()) < cost(first.getBrokerName())) {
+                selected = second;
+            }
+        }
+        latency(selected.getBrokerName()).pending.incrementAndGet();
+        return selected;
+    }
+
+    @Nullable
+    private static MessageQueue otherBroker(MessageQueue candidate, MessageQueue first) {
+        return candidate.getBrokerName().equals(first.getBrokerName()) ? null : candidate;
+    }
+
+    /**
+     * <p>记录一次由本选择器选择的发送完成</p>
+     *
+     * @param brokerName   选择的队列所在的broker
+     * @param latencyNanos 发送耗时
+     * @param success      是否成功，失败时按 <code>failurePenalty</code> 记录
+     */
+    public void onComplete(@NonNull String brokerName, long latencyNanos, boolean success) {
+        final BrokerLatency latency = latency(brokerName);
+        latency.pending.updateAndGet(p -> Math.max(0, p - 1));
+        latency.observe(success ? latencyNanos : Math.max(latencyNanos, failurePenaltyNanos), clock.getAsLong());
+    }
+
+    /**
+     * @return broker当前的选择代价，没有记录时为0
+     */
+    double cost(@NonNull String brokerName) {
+        final BrokerLatency latency = brokers.get(brokerName);
+        if (latency == null) {
+            return 0;
+        }
+        return latency.decayed(clock.getAsLong()) * (latency.pending.get() + 1);
+    }
+
+    private BrokerLatency latency(String brokerName) {
+        return brokers.computeIfAbsent(brokerName, k -> new BrokerLatency());
+    }
+
+    private final class BrokerLatency {
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile double ewma = 0;
+        private volatile long lastNanos = clock.getAsLong();
+
+        private synchronized void observe(long sample, long now) {
+            if (sample > ewma) {
+                ewma = sample;
+            } else {
+                final double w = Math.exp(-(double) Math.max(0, now - lastNanos) / decayNanos);
+                ewma = ewma * w + sample * (1 - w);
+            }
+            lastNanos = now;
+        }
+
+        private double decayed(long now) {
+            return ewma * Math.exp(-(double) Math.max(0, now - lastNanos) / decayNanos);
+        }
+    }
+}
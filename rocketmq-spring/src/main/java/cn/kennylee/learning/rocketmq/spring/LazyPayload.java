@@ -0,0 +1,60 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.lang.NonNull;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * <p> 按需读取的消息体，处理器声明为 <code>AbstractMessageHandler&lt;LazyPayload&lt;T&gt;&gt;</code> 时传入 </p>
+ * <p>第一次调用 {@link #get()} 时才从 {@link BlobStore} 读取（claim-check的消息）、解压并转换为T，结果会被缓存；
+ * 只需要topic、tags、keys、属性等元数据的处理器不调用 {@link #get()}，不会读取存储也不做转换。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public final class LazyPayload<T> {
+    private final MessageExt message;
+    private final Function<MessageExt, T> decoder;
+    private final boolean claimCheck;
+    private volatile boolean resolved = false;
+    private T payload;
+
+    LazyPayload(@NonNull MessageExt message, @NonNull Function<MessageExt, T> decoder) {
+        super();
+        this.message = message;
+        this.decoder = decoder;
+        this.claimCheck = Objects.nonNull(message.getProperty(BlobStore.PROPERTY_CLAIM_CHECK));
+    }
+
+    /**
+     * @return 消息的元数据；claim-check的消息在 {@link #get()} 之前消息体是引用
+     */
+    @NonNull
+    public MessageExt getMessage() {
+        return message;
+    }
+
+    /**
+     * @return 消息体是否存放在 {@link BlobStore}
+     */
+    public boolean isClaimCheck() {
+        return claimCheck;
+    }
+
+    /**
+     * <p>读取并转换消息体，失败时抛出异常，按处理器失败处理</p>
+     */
+    public T get() {
+        if (!resolved) {
+            synchronized (this) {
+                if (!resolved) {
+                    payload = decoder.apply(message);
+                    resolved = true;
+                }
+            }
+        }
+        return payload;
+    }
+}
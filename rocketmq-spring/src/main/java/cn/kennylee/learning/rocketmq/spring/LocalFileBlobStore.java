@@ -0,0 +1,141 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> 使用本地文件系统的 {@link BlobStore}，每个消息体一个文件：<code>目录/topic/随机UUID</code> </p>
+ * <p>先写临时文件再改名，消费者不会读到写了一半的文件。生产者和消费者不在同一台机器时目录需要是共享存储（如NFS）。
+ * 指定保留时间时由后台线程定期调用 {@link #deleteOlderThan(long)} 删除过期的文件，{@link #close()} 后停止；
+ * 未指定时由调用方自行清理。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+@Slf4j
+public class LocalFileBlobStore implements BlobStore, Closeable {
+    private static final String TEMP_SUFFIX = ".tmp";
+    /**
+     * 清理间隔的上限
+     */
+    private static final long MAX_CLEANUP_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path directory;
+    /**
+     * 定期清理时不为null
+     */
+    @Nullable
+    private final ScheduledExecutorService cleaner;
+
+    /**
+     * <p>不清理过期的文件</p>
+     *
+     * @param directory 存放消息体的目录，不存在时创建
+     */
+    public LocalFileBlobStore(@NonNull Path directory) throws IOException {
+        this(directory, 0);
+    }
+
+    /**
+     * @param directory       存放消息体的目录，不存在时创建
+     * @param retentionMillis 文件的保留时间，应不短于broker的消息保存时间；不大于0时不清理。
+     *                        清理间隔为保留时间的1/10，最长1小时
+     */
+    public LocalFileBlobStore(@NonNull Path directory, long retentionMillis) throws IOException {
+        super();
+        this.directory = Files.createDirectories(directory).toAbsolutePath().normalize();
+        if (retentionMillis <= 0) {
+            this.cleaner = null;
+            return;
+        }
+        final long intervalMillis = Math.max(1, Math.min(retentionMillis / 10, MAX_CLEANUP_INTERVAL_MILLIS));
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("LocalFileBlobStoreCleaner_", true));
+        this.cleaner.scheduleWithFixedDelay(() -> {
+            try {
+                deleteOlderThan(retentionMillis);
+            } catch (Exception e) {
+                log.warn("cannot delete expired blobs in {}", this.directory, e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull
+    @Override
+    public String put(@NonNull String topic, @NonNull byte[] body) throws IOException {
+        final String reference = topic.replaceAll("[^A-Za-z0-9_%-]", "_") + "/" + UUID.randomUUID();
+        final Path file = resolve(reference);
+        Files.createDirectories(file.getParent());
+        final Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        Files.write(temp, body);
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return reference;
+    }
+
+    @NonNull
+    @Override
+    public byte[] get(@NonNull String reference) throws IOException {
+        return Files.readAllBytes(resolve(reference));
+    }
+
+    /**
+     * <p>删除修改时间早于 <code>maxAgeMillis</code> 之前的消息体，应不短于broker的消息保存时间</p>
+     *
+     * @return 删除的文件数量
+     */
+    public int deleteOlderThan(long maxAgeMillis) throws IOException {
+        final long before = System.currentTimeMillis() - maxAgeMillis;
+        int deleted = 0;
+        try (DirectoryStream<Path> topics = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path topic : topics) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(topic)) {
+                    for (Path file : files) {
+                        if (Files.getLastModifiedTime(file).toMillis() < before && Files.deleteIfExists(file)) {
+                            deleted++;
+                        }
+                    }
+                }
+            }
+        }
+        log.debug("deleted {} blobs older than {} ms in {}", deleted, maxAgeMillis, directory);
+        return deleted;
+    }
+
+    /**
+     * <p>停止定期清理</p>
+     */
+    @Override
+    public void close() {
+        if (Objects.nonNull(this.cleaner)) {
+            this.cleaner.shutdownNow();
+        }
+    }
+
+    /**
+     * <p>引用对应的文件，不允许引用指向目录之外</p>
+     */
+    private Path resolve(String reference) {
+        final Path file = directory.resolve(reference).normalize();
+        Assert.isTrue(file.startsWith(directory) && !file.equals(directory), "invalid reference " + reference);
+        return file;
+    }
+}
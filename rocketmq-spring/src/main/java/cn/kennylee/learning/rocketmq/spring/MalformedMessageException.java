@@ -0,0 +1,20 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+/**
+ * <p> 消息本身的格式错误（如压缩属性缺失或不合法、压缩数据损坏），重新投递也无法处理 </p>
+ * <p>{@link RetryPolicy} 默认把它归为 {@link FailureType#POISON}，直接进入死信队列。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class MalformedMessageException extends IllegalArgumentException {
+    private static final long serialVersionUID = -3161789529418265367L;
+
+    public MalformedMessageException(String message) {
+        super(message);
+    }
+
+    public MalformedMessageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
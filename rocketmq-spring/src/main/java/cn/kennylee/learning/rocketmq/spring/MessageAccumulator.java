@@ -0,0 +1,203 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> 异步发送的消息累积器，同一topic的消息在 <code>lingerMs</code> 内或累积到 <code>batchSize</code> 字节后合并为一个批量消息发送 </p>
+ * <p>每条消息的 {@link SendCallback} 仍然单独回调，回调在客户端的异步发送线程池中执行。</p>
+ * <p>{@link #close()} 之后追加的消息不再累积，直接单独发送。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+@Slf4j
+class MessageAccumulator {
+    private final DefaultMQProducer producer;
+    private final long lingerNanos;
+    private final int batchSize;
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final ProducerMetrics metrics;
+    private volatile boolean closed = false;
+
+    /**
+     * @param producer  已创建的producer
+     * @param lingerMs  消息最长等待时间（毫秒）
+     * @param batchSize 批次最大字节数，不超过producer的maxMessageSize
+     * @param metrics   记录每个批次的消息数量
+     */
+    MessageAccumulator(@NonNull DefaultMQProducer producer, long lingerMs, int batchSize, @NonNull ProducerMetrics metrics) {
+        super();
+        this.producer = producer;
+        this.metrics = metrics;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.batchSize = Math.min(batchSize, producer.getMaxMessageSize());
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MessageAccumulatorFlusher_" + producer.getProducerGroup());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMs = Math.max(1, lingerMs / 4);
+        this.flusher.scheduleWithFixedDelay(this::flushExpired, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * <p>追加消息，批次已满时立即发送；已关闭时直接发送</p>
+     */
+    void append(@NonNull Message message, @NonNull SendCallback sendCallback) {
+        int size = MessageBatchSplitter.estimateSize(message);
+        Batch batch = batches.computeIfAbsent(message.getTopic(), topic -> new Batch());
+        Pending appended = new Pending(message, sendCallback);
+        List<Pending> full;
+        synchronized (batch) {
+            // 在批次锁内检查，close()设置标记后再逐个批次发送，之后不会再有消息留在批次中
+            if (closed) {
+                full = Collections.singletonList(appended);
+            } else {
+                full = batch.bytes + size > batchSize ? batch.drain() : null;
+                batch.add(appended, size);
+                if (full == null && batch.bytes >= batchSize) {
+                    full = batch.drain();
+                }
+            }
+        }
+        send(full);
+    }
+
+    /**
+     * <p>发送所有累积的消息，并停止后台线程</p>
+     */
+    void close() {
+        this.closed = true;
+        this.flusher.shutdown();
+        for (Batch batch : batches.values()) {
+            List<Pending> pending;
+            synchronized (batch) {
+                pending = batch.drain();
+            }
+            send(pending);
+        }
+    }
+
+    private void flushExpired() {
+        final long now = System.nanoTime();
+        for (Batch batch : batches.values()) {
+            List<Pending> pending = null;
+            synchronized (batch) {
+                if (!batch.pending.isEmpty() && now - batch.createdNanos >= lingerNanos) {
+                    pending = batch.drain();
+                }
+            }
+            send(pending);
+        }
+    }
+
+    private void send(@Nullable List<Pending> pending) {
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        try {
+            producer.getDefaultMQProducerImpl().getAsyncSenderExecutor().submit(() -> doSend(pending));
+        } catch (Exception e) {
+            // 线程池已关闭等
+            pending.forEach(p -> p.sendCallback.onException(e));
+        }
+    }
+
+    private void doSend(@NonNull List<Pending> pending) {
+        metrics.recordBatch(pending.get(0).message.getTopic(), pending.size());
+        if (pending.size() == 1) {
+            Pending p = pending.get(0);
+            SendResult result;
+            try {
+                result = producer.send(p.message);
+            } catch (Exception e) {
+                p.sendCallback.onException(e);
+                return;
+            }
+            p.sendCallback.onSuccess(result);
+            return;
+        }
+
+        List<Message> messages = new ArrayList<>(pending.size());
+        pending.forEach(p -> messages.add(p.message));
+        SendResult batchResult;
+        try {
+            batchResult = producer.send(messages);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            pending.forEach(p -> p.sendCallback.onException(e));
+            return;
+        }
+
+        // 批量消息的msgId和offsetMsgId为各条消息的id以逗号拼接
+        String[] msgIds = split(batchResult.getMsgId(), pending.size());
+        String[] offsetMsgIds = split(batchResult.getOffsetMsgId(), pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            SendResult result = new SendResult(batchResult.getSendStatus(), msgIds[i], offsetMsgIds[i],
+                    batchResult.getMessageQueue(), batchResult.getQueueOffset() + i);
+            result.setRegionId(batchResult.getRegionId());
+            result.setTraceOn(batchResult.isTraceOn());
+            try {
+                pending.get(i).sendCallback.onSuccess(result);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static String[] split(@Nullable String ids, int count) {
+        String[] result = new String[count];
+        if (ids != null) {
+            String[] split = ids.split(",");
+            System.arraycopy(split, 0, result, 0, Math.min(split.length, count));
+        }
+        return result;
+    }
+
+    private static final class Pending {
+        private final Message message;
+        private final SendCallback sendCallback;
+
+        private Pending(Message message, SendCallback sendCallback) {
+            this.message = message;
+            this.sendCallback = sendCallback;
+        }
+    }
+
+    private static final class Batch {
+        private List<Pending> pending = new ArrayList<>();
+        private int bytes;
+        private long createdNanos;
+
+        private void add(Pending p, int size) {
+            if (pending.isEmpty()) {
+                createdNanos = System.nanoTime();
+            }
+            pending.add(p);
+            bytes += size;
+        }
+
+        private List<Pending> drain() {
+            List<Pending> drained = pending;
+            pending = new ArrayList<>();
+            bytes = 0;
+            return drained;
+        }
+    }
+}
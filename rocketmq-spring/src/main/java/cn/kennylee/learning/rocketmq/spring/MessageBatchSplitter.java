@@ -0,0 +1,83 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.Message;
+import org.springframework.lang.NonNull;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * <p> 把消息列表按大小拆分为多个批次，每个批次编码后不超过broker的消息大小限制 </p>
+ * <p>单条消息本身超过限制时单独成为一个批次，由发送时的校验抛出异常。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class MessageBatchSplitter implements Iterator<List<Message>> {
+    /**
+     * MessageBatch编码时每条消息的固定开销：totalSize、magicCode、bodyCRC、flag、bodyLength、propertiesLength
+     */
+    private static final int MESSAGE_OVERHEAD = 4 + 4 + 4 + 4 + 4 + 2;
+    /**
+     * 发送批量消息时客户端会为每条消息添加UNIQ_KEY属性
+     */
+    private static final int UNIQ_KEY_OVERHEAD = 64;
+
+    private final List<Message> messages;
+    private final int sizeLimit;
+    private int currIndex;
+
+    /**
+     * @param messages  同一topic的消息
+     * @param sizeLimit 每个批次的最大字节数，一般为 {@link org.apache.rocketmq.client.producer.DefaultMQProducer#getMaxMessageSize()}
+     */
+    public MessageBatchSplitter(@NonNull List<Message> messages, int sizeLimit) {
+        super();
+        this.messages = messages;
+        this.sizeLimit = sizeLimit;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return currIndex < messages.size();
+    }
+
+    @Override
+    public List<Message> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int nextIndex = currIndex;
+        int totalSize = 0;
+        for (; nextIndex < messages.size(); nextIndex++) {
+            int size = estimateSize(messages.get(nextIndex));
+            if (nextIndex > currIndex && totalSize + size > sizeLimit) {
+                break;
+            }
+            totalSize += size;
+        }
+        List<Message> subList = messages.subList(currIndex, nextIndex);
+        currIndex = nextIndex;
+        return subList;
+    }
+
+    /**
+     * <p>估算消息在MessageBatch中编码后的字节数</p>
+     */
+    static int estimateSize(@NonNull Message message) {
+        int size = MESSAGE_OVERHEAD + UNIQ_KEY_OVERHEAD;
+        if (message.getBody() != null) {
+            size += message.getBody().length;
+        }
+        Map<String, String> properties = message.getProperties();
+        if (properties != null) {
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                // name + NAME_VALUE_SEPARATOR + value + PROPERTY_SEPARATOR，按UTF-8最坏情况估算
+                size += (entry.getKey().length() + entry.getValue().length()) * 3 + 2;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,56 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.springframework.lang.NonNull;
+
+import java.lang.reflect.Type;
+
+/**
+ * <p> 消息体转换器，生产者用于序列化，消费者把 {@link org.apache.rocketmq.common.message.MessageExt#getBody()} 直接转换为泛型类型 </p>
+ * <p>实现类必须线程安全，消费者在构造时确定转换器，之后所有消息复用同一个实例。</p>
+ * <p>生产者会把 {@link #getContentType()} 写入消息属性，消费者据此在 {@link MessageConverterRegistry} 中选择转换器。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public interface MessageConverter {
+
+    /**
+     * @return 消息体格式，如 application/json
+     */
+    @NonNull
+    String getContentType();
+
+    /**
+     * <p>把对象序列化为消息体</p>
+     *
+     * @param payload 信息
+     * @return 消息体
+     * @throws Exception 序列化失败
+     */
+    @NonNull
+    byte[] toBytes(@NonNull Object payload) throws Exception;
+
+    /**
+     * <p>把消息体转换为目标类型</p>
+     *
+     * @param body 消息体
+     * @param type 目标类型
+     * @return 转换后的对象
+     * @throws Exception 转换失败
+     */
+    default Object fromBytes(@NonNull byte[] body, @NonNull Type type) throws Exception {
+        return fromBytes(body, 0, body.length, type);
+    }
+
+    /**
+     * <p>把消息体的一部分转换为目标类型，用于解压缓冲区等复用的数组，实现不能在返回后继续引用该数组</p>
+     *
+     * @param body   消息体
+     * @param offset 开始位置
+     * @param length 字节数
+     * @param type   目标类型
+     * @return 转换后的对象
+     * @throws Exception 转换失败
+     */
+    Object fromBytes(@NonNull byte[] body, int offset, int length, @NonNull Type type) throws Exception;
+}
@@ -0,0 +1,75 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.Message;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p> 按消息体格式（content-type）登记的转换器，{@link RocketMqProducer} 和 {@link RocketMqConsumer} 共用 </p>
+ * <p>生产者把格式写入消息属性 {@link #PROPERTY_CONTENT_TYPE}，消费者按该属性选择转换器，未标记的消息使用处理器自己的转换器。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class MessageConverterRegistry {
+    /**
+     * 记录消息体格式的消息属性
+     */
+    public static final String PROPERTY_CONTENT_TYPE = "CONTENT_TYPE";
+    public static final String TEXT_PLAIN = "text/plain";
+    public static final String APPLICATION_JSON = "application/json";
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+    private static final MessageConverterRegistry DEFAULT = new MessageConverterRegistry(new FastJsonMessageConverter())
+            .register(new SmileMessageConverter());
+
+    private final Map<String, MessageConverter> converters = new ConcurrentHashMap<>();
+    private final MessageConverter defaultConverter;
+
+    /**
+     * @param defaultConverter 生产者默认的序列化方式，同时登记为该格式的转换器
+     */
+    public MessageConverterRegistry(@NonNull MessageConverter defaultConverter) {
+        super();
+        this.defaultConverter = defaultConverter;
+        register(defaultConverter);
+    }
+
+    /**
+     * @return 共享的默认实例：fastjson（application/json，默认）、Smile
+     */
+    @NonNull
+    public static MessageConverterRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * <p>登记转换器，同一格式后登记的覆盖先登记的</p>
+     */
+    @NonNull
+    public MessageConverterRegistry register(@NonNull MessageConverter converter) {
+        converters.put(converter.getContentType(), converter);
+        return this;
+    }
+
+    @Nullable
+    public MessageConverter get(@NonNull String contentType) {
+        return converters.get(contentType);
+    }
+
+    @NonNull
+    public MessageConverter getDefaultConverter() {
+        return defaultConverter;
+    }
+
+    /**
+     * @return 消息的格式，未标记时为null
+     */
+    @Nullable
+    public static String getContentType(@NonNull Message message) {
+        return message.getProperty(PROPERTY_CONTENT_TYPE);
+    }
+}
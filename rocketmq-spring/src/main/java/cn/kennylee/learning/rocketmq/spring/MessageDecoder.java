@@ -0,0 +1,237 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import com.google.gson.stream.JsonReader;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+/**
+ * <p> 按目标类型转换消息体，{@link RocketMqConsumer} 和 {@link RocketMqPullConsumer} 共用 </p>
+ * <p>目标类型：MessageExt（或未定义、Object）、String、InputStream、ByteBuffer、Gson的JsonReader，
+ * 后三种直接读取消息体，不做转换；其它类型使用 {@link MessageConverter} 从消息体字节转换。</p>
+ * <p>claim-check的消息（见 {@link BlobStore}）先从存储读取消息体；目标类型为 {@link LazyPayload} 时推迟到处理器读取消息体时。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+@Slf4j
+final class MessageDecoder<T> {
+    /**
+     * 日志中消息体的最大字节数
+     */
+    private static final int LOG_BODY_LIMIT = 1024;
+
+    @Nullable
+    @Getter
+    private final Type messageType;
+    @Getter
+    private final MessageTarget messageTarget;
+    private final MessageConverter messageConverter;
+    private final String messageContentType;
+    private final MessageConverterRegistry messageConverterRegistry;
+    @Nullable
+    private final BlobStore blobStore;
+    /**
+     * {@link MessageTarget#LAZY_PAYLOAD} 时转换 {@link LazyPayload} 的泛型
+     */
+    @Nullable
+    private final MessageDecoder<?> payloadDecoder;
+
+    /**
+     * @param messageType              目标类型，null时为MessageExt
+     * @param messageConverter         未标记格式或与其格式相同的消息使用的转换器
+     * @param messageConverterRegistry 按消息标记的格式选择转换器
+     * @param blobStore                读取claim-check的消息体，null时收到这类消息转换失败
+     */
+    MessageDecoder(@Nullable Type messageType, @NonNull MessageConverter messageConverter,
+                   @NonNull MessageConverterRegistry messageConverterRegistry, @Nullable BlobStore blobStore) {
+        super();
+        this.messageType = messageType;
+        this.messageTarget = MessageTarget.of(messageType);
+        this.messageConverter = messageConverter;
+        this.messageContentType = messageConverter.getContentType();
+        this.messageConverterRegistry = messageConverterRegistry;
+        this.blobStore = blobStore;
+        this.payloadDecoder = this.messageTarget == MessageTarget.LAZY_PAYLOAD
+                ? new MessageDecoder<>(payloadTypeOf(messageType), messageConverter, messageConverterRegistry, blobStore)
+                : null;
+        log.debug("messageType {}, target {}", messageType != null ? messageType.getTypeName() : "null", messageTarget);
+    }
+
+    /**
+     * <p>把消息转换为处理器的类型，claim-check的消息先读取消息体，压缩的消息先解压</p>
+     */
+    @SuppressWarnings("unchecked")
+    T decode(@NonNull MessageExt messageExt) {
+        if (this.messageTarget == MessageTarget.LAZY_PAYLOAD) {
+            return (T) new LazyPayload<>(messageExt, this.payloadDecoder::decode);
+        }
+        resolveClaimCheck(messageExt);
+        final CompressionType compression = MessageDecompressor.getCompressionType(messageExt);
+        switch (this.messageTarget) {
+            case MESSAGE_EXT:
+                if (compression != null) {
+                    // 透明解压，处理器拿到的是原始消息体
+                    messageExt.setBody(MessageDecompressor.decompress(messageExt, compression));
+                    MessageAccessor.clearProperty(messageExt, CompressionType.PROPERTY_COMPRESSION);
+                    MessageAccessor.clearProperty(messageExt, CompressionType.PROPERTY_UNCOMPRESSED_SIZE);
+                }
+                return (T) messageExt;
+            case INPUT_STREAM:
+                return (T) new ByteArrayInputStream(bodyOf(messageExt, compression));
+            case BYTE_BUFFER:
+                return (T) ByteBuffer.wrap(bodyOf(messageExt, compression)).asReadOnlyBuffer();
+            case JSON_READER:
+                return (T) new JsonReader(new InputStreamReader(
+                        new ByteArrayInputStream(bodyOf(messageExt, compression)), RocketMqProducer.DEFAULT_CHARSET));
+            case STRING:
+                if (compression != null) {
+                    return (T) new String(MessageDecompressor.decompressToBuffer(messageExt, compression), 0,
+                            MessageDecompressor.getUncompressedSize(messageExt), RocketMqProducer.DEFAULT_CHARSET);
+                }
+                return (T) new String(messageExt.getBody(), RocketMqProducer.DEFAULT_CHARSET);
+            default:
+                byte[] body = messageExt.getBody();
+                int length = body.length;
+                if (compression != null) {
+                    length = MessageDecompressor.getUncompressedSize(messageExt);
+                    body = MessageDecompressor.decompressToBuffer(messageExt, compression);
+                }
+                // If msgType not string, use messageConverter change it.
+                try {
+                    return (T) selectConverter(messageExt).fromBytes(body, 0, length, this.messageType);
+                } catch (Exception e) {
+                    log.info("convert failed. str:{}, msgType:{}", bodyForLog(body, length), messageType);
+                    throw new RuntimeException("cannot convert message to " + messageType, e);
+                }
+        }
+    }
+
+    /**
+     * <p>claim-check的消息从 {@link BlobStore} 读取消息体，替换消息中的引用</p>
+     */
+    private void resolveClaimCheck(MessageExt messageExt) {
+        final String reference = messageExt.getProperty(BlobStore.PROPERTY_CLAIM_CHECK);
+        if (reference == null) {
+            return;
+        }
+        if (this.blobStore == null) {
+            throw new IllegalStateException("no blob store for claim-check message " + messageExt.getMsgId());
+        }
+        try {
+            messageExt.setBody(this.blobStore.get(reference));
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read claim-check " + reference + " of message " + messageExt.getMsgId(), e);
+        }
+        MessageAccessor.clearProperty(messageExt, BlobStore.PROPERTY_CLAIM_CHECK);
+    }
+
+    /**
+     * <p>{@link LazyPayload} 的泛型，未指定时为null（MessageExt）</p>
+     */
+    @Nullable
+    private static Type payloadTypeOf(@Nullable Type messageType) {
+        return messageType instanceof ParameterizedType ? ((ParameterizedType) messageType).getActualTypeArguments()[0] : null;
+    }
+
+    /**
+     * <p>流式视图使用的消息体，处理器可能在返回后继续持有，解压时不能使用线程复用的缓冲区</p>
+     */
+    private static byte[] bodyOf(MessageExt messageExt, @Nullable CompressionType compression) {
+        return compression == null ? messageExt.getBody() : MessageDecompressor.decompress(messageExt, compression);
+    }
+
+    /**
+     * <p>日志中只输出消息体的开头部分，避免大消息体在日志中再复制一份</p>
+     */
+    static String bodyForLog(byte[] body, int length) {
+        if (length <= LOG_BODY_LIMIT) {
+            return new String(body, 0, length, RocketMqProducer.DEFAULT_CHARSET);
+        }
+        return new String(body, 0, LOG_BODY_LIMIT, RocketMqProducer.DEFAULT_CHARSET) + "...(" + length + " bytes)";
+    }
+
+    /**
+     * <p>按消息标记的格式选择转换器，未标记、纯文本或与处理器转换器格式相同时使用处理器的转换器</p>
+     */
+    private MessageConverter selectConverter(MessageExt messageExt) {
+        final String contentType = MessageConverterRegistry.getContentType(messageExt);
+        if (contentType == null || contentType.equals(this.messageContentType)
+                || MessageConverterRegistry.TEXT_PLAIN.equals(contentType)) {
+            return this.messageConverter;
+        }
+        MessageConverter converter = this.messageConverterRegistry.get(contentType);
+        if (converter == null) {
+            throw new IllegalStateException("unsupported content type " + contentType);
+        }
+        return converter;
+    }
+
+    /**
+     * 消息转换的目标，构造时确定，避免每条消息做类型名比较
+     */
+    enum MessageTarget {
+        /**
+         * 未定义泛型、Object或MessageExt，直接传递MessageExt
+         */
+        MESSAGE_EXT,
+        /**
+         * 字符串
+         */
+        STRING,
+        /**
+         * 消息体的 {@link InputStream}，不复制消息体
+         */
+        INPUT_STREAM,
+        /**
+         * 消息体的只读 {@link ByteBuffer}，不复制消息体
+         */
+        BYTE_BUFFER,
+        /**
+         * 消息体的Gson {@link JsonReader}，用于按需逐个读取JSON数组等大消息体
+         */
+        JSON_READER,
+        /**
+         * {@link LazyPayload}，处理器读取时才转换为其泛型
+         */
+        LAZY_PAYLOAD,
+        /**
+         * 使用 {@link MessageConverter} 转换
+         */
+        CONVERTED;
+
+        static MessageTarget of(@Nullable Type messageType) {
+            if (messageType == null || Object.class.equals(messageType) || MessageExt.class.equals(messageType)) {
+                return MESSAGE_EXT;
+            }
+            if (String.class.equals(messageType)) {
+                return STRING;
+            }
+            if (InputStream.class.equals(messageType)) {
+                return INPUT_STREAM;
+            }
+            if (ByteBuffer.class.equals(messageType)) {
+                return BYTE_BUFFER;
+            }
+            if (JsonReader.class.equals(messageType)) {
+                return JSON_READER;
+            }
+            if (LazyPayload.class.equals(messageType) || (messageType instanceof ParameterizedType
+                    && LazyPayload.class.equals(((ParameterizedType) messageType).getRawType()))) {
+                return LAZY_PAYLOAD;
+            }
+            return CONVERTED;
+        }
+    }
+}
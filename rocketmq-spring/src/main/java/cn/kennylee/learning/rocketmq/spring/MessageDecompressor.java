@@ -0,0 +1,104 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * <p> 消费端解压，解压缓冲区按线程复用 </p>
+ * <p>转换器只在调用期间读取缓冲区，调用返回后缓冲区即可被同一线程的下一条消息复用。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+final class MessageDecompressor {
+    /**
+     * 超过该大小的缓冲区用完即丢弃，避免长期占用内存
+     */
+    private static final int MAX_RETAINED_BUFFER = 4 * 1024 * 1024;
+    /**
+     * 压缩前大小的上限：broker默认的消息大小上限4M × 压缩比64，防止错误的 {@link CompressionType#PROPERTY_UNCOMPRESSED_SIZE} 申请过大的内存
+     */
+    static final int MAX_UNCOMPRESSED_SIZE = 4 * 1024 * 1024 * 64;
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    private MessageDecompressor() {
+    }
+
+    /**
+     * @return 消息使用的压缩算法，未压缩时为null
+     */
+    @Nullable
+    static CompressionType getCompressionType(@NonNull Message message) {
+        String type = message.getProperty(CompressionType.PROPERTY_COMPRESSION);
+        if (type == null) {
+            return null;
+        }
+        try {
+            return CompressionType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            throw new MalformedMessageException("unknown compression " + type + " of message " + idOf(message), e);
+        }
+    }
+
+    /**
+     * @return 压缩前的字节数
+     * @throws MalformedMessageException 属性缺失、不是数字、不大于压缩后的大小或超过 {@link #MAX_UNCOMPRESSED_SIZE}
+     */
+    static int getUncompressedSize(@NonNull Message message) {
+        final String value = message.getProperty(CompressionType.PROPERTY_UNCOMPRESSED_SIZE);
+        final int size;
+        try {
+            size = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new MalformedMessageException("invalid uncompressed size " + value + " of message " + idOf(message), e);
+        }
+        // 生产者只在压缩后变小时才压缩
+        if (size <= message.getBody().length || size > MAX_UNCOMPRESSED_SIZE) {
+            throw new MalformedMessageException("uncompressed size " + size + " of message " + idOf(message)
+                    + " out of range (" + message.getBody().length + ", " + MAX_UNCOMPRESSED_SIZE + "]");
+        }
+        return size;
+    }
+
+    /**
+     * <p>解压到当前线程的缓冲区，内容在 [0, {@link #getUncompressedSize(Message)}) 范围内，只能在本线程的下一次调用前使用</p>
+     */
+    @NonNull
+    static byte[] decompressToBuffer(@NonNull Message message, @NonNull CompressionType type) {
+        final int size = getUncompressedSize(message);
+        byte[] buffer = BUFFER.get();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, (int) Math.min(MAX_UNCOMPRESSED_SIZE, buffer.length * 2L))];
+            if (buffer.length <= MAX_RETAINED_BUFFER) {
+                BUFFER.set(buffer);
+            }
+        }
+        decompress(message, type, buffer, size);
+        return buffer;
+    }
+
+    /**
+     * <p>解压为新的数组</p>
+     */
+    @NonNull
+    static byte[] decompress(@NonNull Message message, @NonNull CompressionType type) {
+        final int size = getUncompressedSize(message);
+        byte[] body = new byte[size];
+        decompress(message, type, body, size);
+        return body;
+    }
+
+    private static void decompress(@NonNull Message message, @NonNull CompressionType type, @NonNull byte[] dest, int size) {
+        try {
+            type.decompress(message.getBody(), dest, size);
+        } catch (RuntimeException e) {
+            throw new MalformedMessageException("cannot decompress message " + idOf(message) + " with " + type, e);
+        }
+    }
+
+    private static String idOf(@NonNull Message message) {
+        return message instanceof MessageExt ? ((MessageExt) message).getMsgId() : message.getKeys();
+    }
+}
@@ -0,0 +1,147 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> 基于Micrometer的消费指标，标签 group、topic、tags，Meter在创建时注册 </p>
+ * <ul>
+ * <li><code>rocketmq.consumer.deserialize</code>: 单条消息的转换耗时</li>
+ * <li><code>rocketmq.consumer.handle</code>: 每次回调处理器的耗时</li>
+ * <li><code>rocketmq.consumer.batch.size</code>: 每次回调的消息数量</li>
+ * <li><code>rocketmq.consumer.reconsume.later</code>: 并发消费失败重新投递的消息数量</li>
+ * <li><code>rocketmq.consumer.suspend</code>: 顺序消费失败挂起的消息数量</li>
+ * <li><code>rocketmq.consumer.duplicate</code>: 去重跳过的消息数量</li>
+ * <li><code>rocketmq.consumer.retry.local</code>: 本地重试的消息数量</li>
+ * <li><code>rocketmq.consumer.dead.letter</code>: 直接进入死信队列的消息数量</li>
+ * <li><code>rocketmq.consumer.throttle</code>: 调用处理器前等待限流的耗时</li>
+ * <li><code>rocketmq.consumer.drain</code>: 关闭时排空的耗时</li>
+ * <li><code>rocketmq.consumer.abandoned</code>: 排空超时未处理完、将重新投递的消息数量</li>
+ * </ul>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class MicrometerConsumerMetrics implements ConsumerMetrics {
+    private final Timer deserializeTimer;
+    private final Timer handleTimer;
+    private final DistributionSummary batchSize;
+    private final Counter reconsumeLater;
+    private final Counter suspend;
+    private final Counter duplicate;
+    private final Counter localRetry;
+    private final Counter deadLetter;
+    private final Timer throttleTimer;
+    private final Timer drainTimer;
+    private final Counter abandoned;
+
+    public MicrometerConsumerMetrics(@NonNull MeterRegistry registry, @NonNull String group,
+                                     @NonNull String topic, @Nullable String tags) {
+        super();
+        Tags meterTags = Tags.of("group", group, "topic", topic, "tags", tags == null ? "*" : tags);
+        this.deserializeTimer = Timer.builder("rocketmq.consumer.deserialize")
+                .description("message body conversion latency")
+                .tags(meterTags)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.handleTimer = Timer.builder("rocketmq.consumer.handle")
+                .description("message handler latency")
+                .tags(meterTags)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("rocketmq.consumer.batch.size")
+                .description("messages per handler invocation")
+                .tags(meterTags)
+                .register(registry);
+        this.reconsumeLater = Counter.builder("rocketmq.consumer.reconsume.later")
+                .description("messages sent back for redelivery")
+                .tags(meterTags)
+                .register(registry);
+        this.suspend = Counter.builder("rocketmq.consumer.suspend")
+                .description("messages suspended on an orderly queue")
+                .tags(meterTags)
+                .register(registry);
+        this.duplicate = Counter.builder("rocketmq.consumer.duplicate")
+                .description("messages skipped as already processed")
+                .tags(meterTags)
+                .register(registry);
+        this.localRetry = Counter.builder("rocketmq.consumer.retry.local")
+                .description("messages retried in process before redelivery")
+                .tags(meterTags)
+                .register(registry);
+        this.deadLetter = Counter.builder("rocketmq.consumer.dead.letter")
+                .description("poison messages sent to the dead letter queue")
+                .tags(meterTags)
+                .register(registry);
+        this.throttleTimer = Timer.builder("rocketmq.consumer.throttle")
+                .description("time waiting for the rate or concurrency limit before calling the handler")
+                .tags(meterTags)
+                .register(registry);
+        this.drainTimer = Timer.builder("rocketmq.consumer.drain")
+                .description("time to finish fetched messages on shutdown")
+                .tags(meterTags)
+                .register(registry);
+        this.abandoned = Counter.builder("rocketmq.consumer.abandoned")
+                .description("fetched messages left unprocessed when the drain timed out")
+                .tags(meterTags)
+                .register(registry);
+    }
+
+    @Override
+    public void recordDeserialize(long durationNanos) {
+        deserializeTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordHandle(long durationNanos) {
+        handleTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordBatch(int size) {
+        batchSize.record(size);
+    }
+
+    @Override
+    public void recordReconsumeLater(int size) {
+        reconsumeLater.increment(size);
+    }
+
+    @Override
+    public void recordSuspend(int size) {
+        suspend.increment(size);
+    }
+
+    @Override
+    public void recordDuplicate(int size) {
+        duplicate.increment(size);
+    }
+
+    @Override
+    public void recordLocalRetry(int size) {
+        localRetry.increment(size);
+    }
+
+    @Override
+    public void recordDeadLetter(int size) {
+        deadLetter.increment(size);
+    }
+
+    @Override
+    public void recordThrottle(long durationNanos) {
+        throttleTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordDrain(long durationNanos, long abandoned) {
+        drainTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        this.abandoned.increment(abandoned);
+    }
+}
@@ -0,0 +1,46 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.Getter;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.BitSet;
+
+/**
+ * <p> 批量消费部分失败，前 {@link #getConsumedCount()} 条消息已处理成功，其余的消息需要重新投递 </p>
+ * <p>批次中的消息并发处理时，可以用 {@link #getFailedIndexes()} 准确说明失败的消息，
+ * 并发消费模式下只有这些消息会被发回broker重新投递。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see AbstractMessageHandler#onMessages(java.util.List)
+ */
+@Getter
+public class PartialConsumeException extends RuntimeException {
+    private static final long serialVersionUID = 4120546216875382541L;
+
+    /**
+     * 从批次开头算起已处理成功的消息数量
+     */
+    private final int consumedCount;
+    /**
+     * 失败的消息在批次中的下标，为null时 {@link #getConsumedCount()} 之后的消息都视为失败
+     */
+    @Nullable
+    private final BitSet failedIndexes;
+
+    public PartialConsumeException(int consumedCount, Throwable cause) {
+        super("consumed " + consumedCount + " messages before failure: " + cause.getMessage(), cause);
+        this.consumedCount = consumedCount;
+        this.failedIndexes = null;
+    }
+
+    /**
+     * @param failedIndexes 失败的消息下标，不能为空
+     */
+    public PartialConsumeException(@NonNull BitSet failedIndexes, Throwable cause) {
+        super(failedIndexes.cardinality() + " messages failed: " + cause.getMessage(), cause);
+        this.consumedCount = failedIndexes.nextSetBit(0);
+        this.failedIndexes = failedIndexes;
+    }
+}
@@ -0,0 +1,38 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.Getter;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.springframework.lang.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p> 批量发送部分失败，前 {@link #getSentCount()} 条消息已发送，其余的消息没有发送，需要重新发送 </p>
+ * <p>批次按拆分顺序依次发送，一个批次失败后不再发送之后的批次，因此已发送的总是消息列表的前部。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see RocketMqProducer#asyncSendBatch(String, String, java.util.Collection, java.util.function.Function)
+ */
+@Getter
+public class PartialSendException extends RuntimeException {
+    private static final long serialVersionUID = -6270871527915396520L;
+
+    /**
+     * 从消息列表开头算起已发送的消息数量
+     */
+    private final int sentCount;
+    /**
+     * 已发送的批次的 {@link SendResult}，顺序与拆分顺序一致
+     */
+    @NonNull
+    private final transient List<SendResult> sentResults;
+
+    public PartialSendException(int sentCount, @NonNull List<SendResult> sentResults, Throwable cause) {
+        super("sent " + sentCount + " messages in " + sentResults.size() + " batches before failure: "
+                + cause.getMessage(), cause);
+        this.sentCount = sentCount;
+        this.sentResults = Collections.unmodifiableList(sentResults);
+    }
+}
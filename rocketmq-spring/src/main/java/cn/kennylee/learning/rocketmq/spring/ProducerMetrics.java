@@ -0,0 +1,60 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * <p> {@link RocketMqProducer} 发送指标 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see MicrometerProducerMetrics
+ */
+public interface ProducerMetrics {
+    /**
+     * 不记录任何指标
+     */
+    ProducerMetrics NOOP = new ProducerMetrics() {
+        @Override
+        public void recordSend(@NonNull String topic, @Nullable String tags, long durationNanos, @Nullable SendStatus status) {
+            // do nothing
+        }
+
+        @Override
+        public void recordBatch(@NonNull String topic, int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordDrain(long durationNanos, long abandoned) {
+            // do nothing
+        }
+    };
+
+    /**
+     * <p>记录一次发送</p>
+     *
+     * @param topic         一级分类
+     * @param tags          二级分类
+     * @param durationNanos 耗时（纳秒）
+     * @param status        发送结果，发送异常时为null
+     */
+    void recordSend(@NonNull String topic, @Nullable String tags, long durationNanos, @Nullable SendStatus status);
+
+    /**
+     * <p>记录一次批量发送的消息数量</p>
+     *
+     * @param topic 一级分类
+     * @param size  消息数量
+     */
+    void recordBatch(@NonNull String topic, int size);
+
+    /**
+     * <p>记录关闭时等待未完成的异步发送</p>
+     *
+     * @param durationNanos 耗时（纳秒）
+     * @param abandoned     超时时仍未完成的异步发送数量
+     */
+    void recordDrain(long durationNanos, long abandoned);
+}
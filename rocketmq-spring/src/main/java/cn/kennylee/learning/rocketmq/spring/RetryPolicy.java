@@ -0,0 +1,125 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * <p> 消费失败的重试策略 </p>
+ * <p>处理器抛出异常后按 <code>classifier</code> 分类：{@link FailureType#RETRYABLE} 先在消费线程中重试
+ * <code>maxLocalRetries</code> 次，间隔按指数增长并加随机抖动；仍失败或 {@link FailureType#NON_RETRYABLE} 时发回broker，
+ * 延时级别从 <code>initialDelayLevel</code> 起随消息的重新消费次数递增；{@link FailureType#POISON} 直接发回死信队列。
+ * 本地重试成功的消息不经过broker。</p>
+ * <p>本地重试占用消费线程，最长约 maxLocalRetries × maxBackoffMillis。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see AbstractMessageHandler.ListenerParams#getRetryPolicy()
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetryPolicy {
+    /**
+     * 发回broker时直接进入死信队列的延时级别
+     */
+    static final int DEAD_LETTER_LEVEL = -1;
+    /**
+     * broker默认的最大延时级别（2h）
+     */
+    private static final int MAX_BROKER_DELAY_LEVEL = 18;
+
+    /**
+     * 本地重试次数，默认2
+     */
+    @Builder.Default
+    private int maxLocalRetries = 2;
+    /**
+     * 第一次本地重试前的等待时间（毫秒），默认50
+     */
+    @Builder.Default
+    private long initialBackoffMillis = 50;
+    /**
+     * 本地重试的最长等待时间（毫秒），默认1000
+     */
+    @Builder.Default
+    private long maxBackoffMillis = 1000;
+    /**
+     * 第一次发回broker的延时级别，默认1（1s），之后每次重新消费加1
+     */
+    @Builder.Default
+    private int initialDelayLevel = 1;
+    /**
+     * 延时级别的上限，默认18（2h）
+     */
+    @Builder.Default
+    private int maxDelayLevel = MAX_BROKER_DELAY_LEVEL;
+    /**
+     * 异常的分类，默认 {@link MalformedMessageException} 为 {@link FailureType#POISON}，其它都是 {@link FailureType#RETRYABLE}，
+     * 见 {@link #byExceptionType(Map)}
+     */
+    @Builder.Default
+    private Function<Throwable, FailureType> classifier = e -> e instanceof MalformedMessageException
+            ? FailureType.POISON : FailureType.RETRYABLE;
+
+    /**
+     * <p>按异常类型分类，依次检查异常及其cause，第一个匹配的类型决定分类（子类也匹配），都不匹配时为 {@link FailureType#RETRYABLE}</p>
+     *
+     * @param types 异常类型与分类，按插入顺序匹配
+     */
+    @NonNull
+    public static Function<Throwable, FailureType> byExceptionType(
+            @NonNull Map<Class<? extends Throwable>, FailureType> types) {
+        final Map<Class<? extends Throwable>, FailureType> copy = new LinkedHashMap<>(types);
+        return e -> {
+            final List<Throwable> seen = new ArrayList<>();
+            for (Throwable t = e; Objects.nonNull(t) && !seen.contains(t); t = t.getCause()) {
+                seen.add(t);
+                for (Map.Entry<Class<? extends Throwable>, FailureType> entry : copy.entrySet()) {
+                    if (entry.getKey().isInstance(t)) {
+                        return entry.getValue();
+                    }
+                }
+            }
+            return FailureType.RETRYABLE;
+        };
+    }
+
+    @NonNull
+    FailureType classify(@NonNull Throwable e) {
+        final FailureType type = classifier.apply(e);
+        return Objects.isNull(type) ? FailureType.RETRYABLE : type;
+    }
+
+    /**
+     * <p>第attempt次（从0开始）本地重试前的等待时间：指数增长，取一半固定加一半随机，避免多个消费线程同时重试</p>
+     */
+    long backoffMillis(int attempt) {
+        long exp = Math.max(initialBackoffMillis, 1);
+        for (int i = 0; i < attempt && exp < maxBackoffMillis; i++) {
+            exp <<= 1;
+        }
+        exp = Math.min(exp, maxBackoffMillis);
+        final long half = exp / 2;
+        return half + ThreadLocalRandom.current().nextLong(exp - half + 1);
+    }
+
+    /**
+     * @param reconsumeTimes 消息已重新消费的次数
+     * @return 发回broker的延时级别
+     */
+    int delayLevel(int reconsumeTimes) {
+        return Math.max(1, Math.min(maxDelayLevel, initialDelayLevel + reconsumeTimes));
+    }
+}
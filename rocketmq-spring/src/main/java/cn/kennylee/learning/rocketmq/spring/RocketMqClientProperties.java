@@ -3,6 +3,8 @@ package cn.kennylee.learning.rocketmq.spring;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.Map;
+
 /**
  * <p> 配置信息文件 </p>
  * <p>Created on 14/2/2020.</p>
@@ -18,11 +20,70 @@ public class RocketMqClientProperties {
     public static class Rocketmq {
         private String topic;
         private String namesrvAddr;
+        /**
+         * 同时启动的客户端数量上限
+         */
+        private int startupParallelism = 8;
+        /**
+         * 消费积压的采样间隔（毫秒），见 {@link ConsumerLagSampler}
+         */
+        private long lagSampleIntervalMillis = 10 * 1000;
+        /**
+         * claim-check消息体的目录，生产者和消费者共用，不设置时不开启，见 {@link LocalFileBlobStore}
+         */
+        private String claimCheckDirectory;
+        /**
+         * claim-check消息体的保留时间（毫秒），默认3天，与broker默认的消息保存时间相同；不大于0时不清理
+         */
+        private long claimCheckRetentionMillis = 3 * 24 * 60 * 60 * 1000L;
         private Producer producer;
     }
 
     @Data
     public static class Producer {
         private String group;
+        /**
+         * 异步发送的累积时间（毫秒），大于0时开启累积发送
+         */
+        private Long lingerMs;
+        /**
+         * 累积发送时每个批次的最大字节数
+         */
+        private Integer batchSize;
+        /**
+         * 最大未完成的异步发送消息条数
+         */
+        private Integer maxInFlightMessages;
+        /**
+         * 最大未完成的异步发送字节数
+         */
+        private Integer maxInFlightBytes;
+        private BackpressurePolicy backpressurePolicy;
+        private Long backpressureTimeoutMillis;
+        /**
+         * 所有topic的消息体压缩配置
+         */
+        private CompressionConfig compression;
+        /**
+         * 按topic的消息体压缩配置
+         */
+        private Map<String, CompressionConfig> topicCompressions;
+        /**
+         * 底层producer的数量
+         */
+        private Integer stripes;
+        private StripeStrategy stripeStrategy;
+        /**
+         * 不要求顺序的发送是否按broker发送耗时选择队列
+         */
+        private boolean latencyAware;
+        /**
+         * 关闭时等待未完成的异步发送的最长时间（毫秒）
+         */
+        private Long drainTimeoutMillis;
+        /**
+         * claim-check的阈值（字节）
+         */
+        private Integer claimCheckThreshold;
     }
 }
@@ -1,100 +1,211 @@
 package cn.kennylee.learning.rocketmq.spring;
 
-import com.google.gson.Gson;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
 import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
 import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.springframework.beans.factory.DisposableBean;
-import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
 
 /**
  * <p> 消费者抽象类 </p>
+ * <p>处理器的泛型决定传入的消息，见 {@link MessageDecoder}。</p>
+ * <p>作为 {@link SmartLifecycle} 在 {@link RocketMqStarter#CONSUMER_PHASE} 启动，晚于生产者启动、早于生产者关闭。
+ * 关闭时先停止拉取，等待已拉取的消息处理完成（最长 {@link AbstractMessageHandler#getDrainTimeoutMillis()}），
+ * 持久化消费位点后再关闭客户端，避免滚动发布时正在处理的消息重新投递给其它实例。</p>
  * <p>Created on 13/2/2020.</p>
  *
  * @author kennylee
  */
 @Slf4j
-public class RocketMqConsumer<T> implements InitializingBean, DisposableBean {
+public class RocketMqConsumer<T> implements SmartLifecycle, DisposableBean {
+    /**
+     * 排空时检查剩余消息的间隔
+     */
+    private static final long DRAIN_CHECK_MILLIS = 50;
+
     @Getter
     private final DefaultMQPushConsumer consumer;
-    private Type messageType;
+    private final MessageDecoder<T> messageDecoder;
+    @Getter
+    private final AbstractMessageHandler<T> messageHandler;
+    /**
+     * 开启自动调整消费线程数时不为null
+     */
+    @Nullable
+    private final ConsumeThreadPoolTuner threadPoolTuner;
+    /**
+     * {@link ConsumeMode#KEY_ORDERLY} 执行各key通道的线程池
+     */
+    @Nullable
+    private final Executor laneExecutor;
+    /**
+     * consumer自建的 {@link #laneExecutor}，销毁时关闭
+     */
+    @Nullable
+    private final ExecutorService ownedLaneExecutor;
+    /**
+     * 由 {@link RocketMqConsumerContainer} 管理consumer时为false，不注册监听、不启动和关闭consumer
+     */
+    private final boolean ownsConsumer;
+    /**
+     * {@link ConsumeMode#KEY_ORDERLY} 各队列当前批次中已处理成功的消息，整批重新消费时跳过，批次成功后清除，
+     * 队列重平衡给其它实例后在下一批次时清除
+     */
+    private final ConcurrentMap<MessageQueue, Set<String>> completedByQueue = new ConcurrentHashMap<>();
+    /**
+     * 消费指标，需在启动前设置
+     */
+    @NonNull
+    @Getter
+    @Setter
+    private volatile ConsumerMetrics metrics = ConsumerMetrics.NOOP;
+    /**
+     * 启动的phase，默认 {@link RocketMqStarter#CONSUMER_PHASE}
+     */
+    @Setter
+    private int phase = RocketMqStarter.CONSUMER_PHASE;
+    private volatile boolean running = false;
 
     public RocketMqConsumer(@NonNull String group, @NonNull String nameSrvAddr,
                             @Nullable String instanceName,
                             @NonNull AbstractMessageHandler<T> messageHandler) {
+        this(newPushConsumer(group, nameSrvAddr, instanceName, messageHandler), messageHandler, null, true);
+        subscribe(this.consumer, messageHandler.getTopic(), messageHandler.getTags());
+    }
+
+    /**
+     * @param consumer     已按处理器设置好的consumer
+     * @param tuner        ownsConsumer为false时由调用方提供的线程数调整器，可为null
+     * @param ownsConsumer 是否由本实例注册监听、启动和关闭consumer
+     */
+    RocketMqConsumer(@NonNull DefaultMQPushConsumer consumer, @NonNull AbstractMessageHandler<T> messageHandler,
+                     @Nullable ConsumeThreadPoolTuner tuner, boolean ownsConsumer) {
         super();
-        this.messageType = getGenericType(messageHandler.getClass(), 0);
+        this.messageDecoder = new MessageDecoder<>(getGenericType(messageHandler.getClass(), 0),
+                messageHandler.getMessageConverter(), messageHandler.getMessageConverterRegistry(),
+                messageHandler.getBlobStore());
+        this.messageHandler = messageHandler;
+        this.ownsConsumer = ownsConsumer;
+        final DefaultMQPushConsumer o = consumer;
+        if (ownsConsumer) {
+            this.threadPoolTuner = messageHandler.isAdaptiveConsumeThreads() ? new ConsumeThreadPoolTuner(o) : null;
+            registerListener(o, messageHandler);
+        } else {
+            this.threadPoolTuner = tuner;
+        }
 
+        final String group = o.getConsumerGroup();
+        if (messageHandler.getConsumeMode() == ConsumeMode.KEY_ORDERLY && Objects.isNull(messageHandler.getHandlerExecutor())) {
+            this.ownedLaneExecutor = Executors.newFixedThreadPool(messageHandler.getConsumeThreadMax(),
+                    new ThreadFactoryImpl("KeyOrderlyLane_" + group + "_"));
+            this.laneExecutor = this.ownedLaneExecutor;
+        } else {
+            this.ownedLaneExecutor = null;
+            this.laneExecutor = messageHandler.getHandlerExecutor();
+        }
+        this.consumer = o;
+    }
+
+    /**
+     * <p>按处理器的设置创建consumer，不订阅、不注册监听</p>
+     */
+    static DefaultMQPushConsumer newPushConsumer(@NonNull String group, @NonNull String nameSrvAddr,
+                                                 @Nullable String instanceName,
+                                                 @NonNull AbstractMessageHandler<?> messageHandler) {
         DefaultMQPushConsumer o = new DefaultMQPushConsumer(group);
         o.setNamesrvAddr(nameSrvAddr);
         o.setInstanceName(Objects.isNull(instanceName) ? UUID.randomUUID().toString() : instanceName);
         o.setMessageModel(messageHandler.getMessageModel());
         o.setAccessChannel(messageHandler.getAccessChannel());
         o.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
+        o.setConsumeMessageBatchMaxSize(messageHandler.getConsumeMessageBatchMaxSize());
+        o.setConsumeThreadMin(messageHandler.getConsumeThreadMin());
+        o.setConsumeThreadMax(messageHandler.getConsumeThreadMax());
+        o.setPullBatchSize(messageHandler.getPullBatchSize());
+        o.setPullInterval(messageHandler.getPullInterval());
+        return o;
+    }
 
+    static void subscribe(@NonNull DefaultMQPushConsumer consumer, @NonNull String topic, @NonNull String subExpression) {
         try {
-            // 订阅
-            o.subscribe(messageHandler.getTopic(), messageHandler.getTags());
+            consumer.subscribe(topic, subExpression);
         } catch (MQClientException e) {
             log.error(e.getMessage(), e);
             throw new RuntimeException(e.getErrorMessage());
         }
+    }
 
+    private void registerListener(DefaultMQPushConsumer o, AbstractMessageHandler<T> messageHandler) {
         switch (messageHandler.getConsumeMode()) {
             case CONCURRENTLY:
                 o.registerMessageListener((MessageListenerConcurrently) (msgs, context) -> {
-
-                    for (MessageExt messageExt : msgs) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("consume {} , topic {}, tags {}, keys {}\n>>> body -> \n {} ", messageExt.getMsgId(),
-                                    messageExt.getTopic(), messageExt.getTags(),
-                                    messageExt.getKeys(),
-                                    new String(messageExt.getBody(), RocketMqProducer.DEFAULT_CHARSET));
-                        }
-
-                        try {
-                            messageHandler.onMessage(convertMessage(messageExt));
-                        } catch (Exception e) {
-                            log.error(e.getMessage(), e);
-                            context.setDelayLevelWhenNextConsume(messageHandler.getDelayLevelWhenNextConsume());
-                            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
-                        }
+                    int consumed = consumeMessages(msgs, messageHandler, context.getMessageQueue().getBrokerName(), true);
+                    if (consumed == msgs.size()) {
+                        return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
                     }
 
+                    context.setDelayLevelWhenNextConsume(delayLevel(messageHandler, msgs.get(consumed)));
+                    this.metrics.recordReconsumeLater(msgs.size() - consumed);
+                    if (consumed == 0) {
+                        return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+                    }
+                    // 只确认成功的部分，ackIndex之后的消息由客户端发回broker重新投递
+                    context.setAckIndex(consumed - 1);
                     return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
                 });
                 break;
             case ORDERLY:
                 o.registerMessageListener((MessageListenerOrderly) (msgs, context) -> {
-                    for (MessageExt messageExt : msgs) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("consume {} , topic {}, tags {}, keys {}\n>>> body -> \n {} ", messageExt.getMsgId(),
-                                    messageExt.getTopic(), messageExt.getTags(),
-                                    messageExt.getKeys(),
-                                    new String(messageExt.getBody(), RocketMqProducer.DEFAULT_CHARSET));
-                        }
-                        try {
-                            messageHandler.onMessage(convertMessage(messageExt));
-                        } catch (Exception e) {
-                            log.error(e.getMessage(), e);
-                            context.setSuspendCurrentQueueTimeMillis(messageHandler.getSuspendCurrentQueueTimeMillis());
-                            return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
-                        }
+                    if (consumeMessages(msgs, messageHandler, context.getMessageQueue().getBrokerName(), false) < msgs.size()) {
+                        // 顺序消费不支持部分确认，整批稍后重新消费
+                        context.setSuspendCurrentQueueTimeMillis(messageHandler.getSuspendCurrentQueueTimeMillis());
+                        this.metrics.recordSuspend(msgs.size());
+                        return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+                    }
+                    return ConsumeOrderlyStatus.SUCCESS;
+                });
+                break;
+            case KEY_ORDERLY:
+                o.registerMessageListener((MessageListenerOrderly) (msgs, context) -> {
+                    if (!consumeByKey(msgs, context.getMessageQueue())) {
+                        // 已成功的消息记录在completedByQueue中，重新消费时跳过
+                        context.setSuspendCurrentQueueTimeMillis(messageHandler.getSuspendCurrentQueueTimeMillis());
+                        this.metrics.recordSuspend(msgs.size());
+                        return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
                     }
                     return ConsumeOrderlyStatus.SUCCESS;
                 });
@@ -102,13 +213,10 @@ public class RocketMqConsumer<T> implements InitializingBean, DisposableBean {
             default:
                 throw new UnsupportedOperationException("unsupported yet!");
         }
-
-        this.consumer = o;
     }
 
     @Nullable
-    @SuppressWarnings("unchecked")
-    private static <T> Class<T> getGenericType(Class<?> clazz, int index) {
+    private static Type getGenericType(Class<?> clazz, int index) {
         Type parameterizedType = clazz.getGenericSuperclass();
         // CGLUB subclass target object(泛型在父类上)
         if (!(parameterizedType instanceof ParameterizedType)) {
@@ -122,30 +230,548 @@ public class RocketMqConsumer<T> implements InitializingBean, DisposableBean {
         if (actualTypeArguments == null || actualTypeArguments.length == 0) {
             return null;
         }
-        return (Class<T>) actualTypeArguments[index];
+        return actualTypeArguments[index];
     }
 
-    @SuppressWarnings("unchecked")
-    private T convertMessage(MessageExt messageExt) {
-        log.debug("messageType {}", messageType != null ? messageType.getTypeName() : "null");
-        if (this.messageType == null ||
-                StringUtils.equals(messageType.getTypeName(), Object.class.getTypeName()) ||
-                StringUtils.equals(messageType.getTypeName(), MessageExt.class.getTypeName())) {
-            return (T) messageExt;
-        } else {
-            String str = new String(messageExt.getBody(), RocketMqProducer.DEFAULT_CHARSET);
-            if (StringUtils.equals(messageType.getTypeName(), String.class.getTypeName())) {
-                return (T) str;
+    /**
+     * <p>转换并处理一批消息</p>
+     *
+     * @param brokerName 消息所在的broker，失败的消息发回该broker
+     * @param sendBack   是否可以把失败的消息单独发回broker重新投递（并发消费），其余消息照常确认
+     * @return 从批次开头算起处理成功（或已发回重新投递）的消息数量
+     */
+    private int consumeMessages(List<MessageExt> msgs, AbstractMessageHandler<T> messageHandler,
+                                @Nullable String brokerName, boolean sendBack) {
+        final RetryPolicy retryPolicy = messageHandler.getRetryPolicy();
+        final ConsumerMetrics metrics = this.metrics;
+        final DeduplicationCache deduplicationCache = messageHandler.getDeduplicationCache();
+        metrics.recordBatch(msgs.size());
+        List<T> messages = new ArrayList<>(msgs.size());
+        // 转换后的消息在msgs中的下标，去重跳过的消息不在其中
+        final int[] positions = new int[msgs.size()];
+        // 转换失败的消息之前的部分照常处理
+        int convertedCount = msgs.size();
+        int duplicates = 0;
+        for (int i = 0; i < msgs.size(); i++) {
+            final MessageExt messageExt = msgs.get(i);
+            if (log.isDebugEnabled()) {
+                log.debug("consume {} , topic {}, tags {}, keys {}\n>>> body -> \n {} ", messageExt.getMsgId(),
+                        messageExt.getTopic(), messageExt.getTags(),
+                        messageExt.getKeys(),
+                        MessageDecoder.bodyForLog(messageExt.getBody(), messageExt.getBody().length));
+            }
+            if (isDuplicate(messageExt, messageHandler)) {
+                duplicates++;
+                continue;
+            }
+            final long start = System.nanoTime();
+            try {
+                positions[messages.size()] = i;
+                messages.add(convertMessage(messageExt));
+                metrics.recordDeserialize(System.nanoTime() - start);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+                if (Objects.nonNull(retryPolicy) && retryPolicy.classify(e) == FailureType.POISON
+                        && deadLetter(messageExt, brokerName)) {
+                    continue;
+                }
+                convertedCount = i;
+                break;
+            }
+        }
+        if (duplicates > 0) {
+            metrics.recordDuplicate(duplicates);
+        }
+        if (messages.isEmpty()) {
+            return convertedCount;
+        }
+        if (Objects.nonNull(retryPolicy)) {
+            return consumeWithRetry(msgs, positions, messages, convertedCount, messageHandler, retryPolicy,
+                    brokerName, sendBack);
+        }
+
+        if (!throttle(messageHandler, messages.size())) {
+            return positions[0];
+        }
+        final ConsumeThreadPoolTuner tuner = this.threadPoolTuner;
+        final long cpuStart = tuner == null ? 0 : tuner.currentThreadCpuTime();
+        final long start = System.nanoTime();
+        try {
+            messageHandler.onMessages(messages);
+            markProcessed(msgs, positions, messages.size(), null, deduplicationCache, messageHandler);
+            return convertedCount;
+        } catch (PartialConsumeException e) {
+            log.error(e.getMessage(), e.getCause());
+            if (sendBack && Objects.nonNull(brokerName) && Objects.nonNull(e.getFailedIndexes())) {
+                final BitSet failed = new BitSet(msgs.size());
+                for (int i = e.getFailedIndexes().nextSetBit(0); i >= 0 && i < messages.size();
+                     i = e.getFailedIndexes().nextSetBit(i + 1)) {
+                    failed.set(positions[i]);
+                }
+                markProcessed(msgs, positions, messages.size(), e.getFailedIndexes(), deduplicationCache, messageHandler);
+                return sendBack(msgs, failed, convertedCount, m -> delayLevel(messageHandler, m), brokerName);
+            }
+            final int consumed = Math.min(Math.max(e.getConsumedCount(), 0), messages.size());
+            markProcessed(msgs, positions, consumed, null, deduplicationCache, messageHandler);
+            return consumed == messages.size() ? convertedCount : positions[consumed];
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return positions[0];
+        } finally {
+            final long duration = System.nanoTime() - start;
+            release(messageHandler, start, duration, messages.size());
+            metrics.recordHandle(duration);
+            if (tuner != null) {
+                tuner.record(duration, tuner.currentThreadCpuTime() - cpuStart);
+            }
+        }
+    }
+
+    /**
+     * <p>按 {@link RetryPolicy} 处理一批消息：失败的消息在本地重试，仍失败的单独发回broker（顺序消费时稍后重新消费），
+     * 能确定是哪条消息的 {@link FailureType#POISON} 进入死信队列，其余消息照常处理</p>
+     *
+     * @see #consumeMessages(List, AbstractMessageHandler, String, boolean)
+     */
+    private int consumeWithRetry(List<MessageExt> msgs, int[] positions, List<T> messages, int convertedCount,
+                                 AbstractMessageHandler<T> messageHandler, RetryPolicy retryPolicy,
+                                 @Nullable String brokerName, boolean sendBack) {
+        // 待处理的消息在messages中的下标
+        List<Integer> pending = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            pending.add(i);
+        }
+        final List<Integer> poison = new ArrayList<>();
+        int attempt = 0;
+        while (!pending.isEmpty()) {
+            final Failure failure = invoke(messageHandler, messages, pending);
+            if (Objects.isNull(failure)) {
+                markProcessed(msgs, positions, pending, messageHandler);
+                pending = Collections.emptyList();
+                break;
+            }
+            final List<Integer> succeeded = new ArrayList<>(pending);
+            succeeded.removeAll(failure.failed);
+            markProcessed(msgs, positions, succeeded, messageHandler);
+            pending = failure.failed;
+
+            final FailureType type = retryPolicy.classify(failure.cause);
+            if (type == FailureType.POISON && Objects.nonNull(failure.culprit)) {
+                log.error("poison message " + msgs.get(positions[failure.culprit]).getMsgId(), failure.cause);
+                poison.add(failure.culprit);
+                pending.remove(failure.culprit);
+            } else if (type == FailureType.RETRYABLE && attempt < retryPolicy.getMaxLocalRetries()) {
+                log.warn("retry {} messages locally, attempt {}: {}", pending.size(), attempt + 1, failure.cause.toString());
+                this.metrics.recordLocalRetry(pending.size());
+                if (!backoff(retryPolicy, attempt++)) {
+                    break;
+                }
+            } else {
+                log.error(failure.cause.getMessage(), failure.cause);
+                break;
+            }
+        }
+
+        // 未处理成功的消息在msgs中的下标
+        final BitSet failed = new BitSet(msgs.size());
+        for (Integer index : pending) {
+            failed.set(positions[index]);
+        }
+        for (Integer index : poison) {
+            if (deadLetter(msgs.get(positions[index]), brokerName)) {
+                markProcessed(msgs, positions, Collections.singletonList(index), messageHandler);
+            } else {
+                failed.set(positions[index]);
+            }
+        }
+        if (failed.isEmpty()) {
+            return convertedCount;
+        }
+        if (sendBack && Objects.nonNull(brokerName)) {
+            return sendBack(msgs, failed, convertedCount, m -> retryPolicy.delayLevel(m.getReconsumeTimes()), brokerName);
+        }
+        return failed.nextSetBit(0);
+    }
+
+    /**
+     * <p>调用一次处理器</p>
+     *
+     * @param pending 本次处理的消息在messages中的下标
+     * @return 没有失败时为null
+     */
+    @Nullable
+    private Failure invoke(AbstractMessageHandler<T> messageHandler, List<T> messages, List<Integer> pending) {
+        final List<T> batch = new ArrayList<>(pending.size());
+        for (Integer index : pending) {
+            batch.add(messages.get(index));
+        }
+        if (!throttle(messageHandler, batch.size())) {
+            return new Failure(new ArrayList<>(pending), new InterruptedException("interrupted while throttled"), null);
+        }
+        final ConsumeThreadPoolTuner tuner = this.threadPoolTuner;
+        final long cpuStart = tuner == null ? 0 : tuner.currentThreadCpuTime();
+        final long start = System.nanoTime();
+        try {
+            messageHandler.onMessages(batch);
+            return null;
+        } catch (PartialConsumeException e) {
+            final List<Integer> failed = new ArrayList<>();
+            if (Objects.nonNull(e.getFailedIndexes())) {
+                for (int i = e.getFailedIndexes().nextSetBit(0); i >= 0 && i < pending.size();
+                     i = e.getFailedIndexes().nextSetBit(i + 1)) {
+                    failed.add(pending.get(i));
+                }
+            } else {
+                failed.addAll(pending.subList(Math.min(Math.max(e.getConsumedCount(), 0), pending.size()), pending.size()));
+            }
+            if (failed.isEmpty()) {
+                return null;
+            }
+            // 按成功数量报告时第一条失败的消息就是出错的消息，其后的没有处理
+            final boolean identified = failed.size() == 1 || Objects.isNull(e.getFailedIndexes());
+            return new Failure(failed, Objects.isNull(e.getCause()) ? e : e.getCause(), identified ? failed.get(0) : null);
+        } catch (Exception e) {
+            return new Failure(new ArrayList<>(pending), e, pending.size() == 1 ? pending.get(0) : null);
+        } finally {
+            final long duration = System.nanoTime() - start;
+            release(messageHandler, start, duration, batch.size());
+            this.metrics.recordHandle(duration);
+            if (tuner != null) {
+                tuner.record(duration, tuner.currentThreadCpuTime() - cpuStart);
+            }
+        }
+    }
+
+    /**
+     * 一次处理的失败
+     */
+    private static final class Failure {
+        /**
+         * 失败的消息在messages中的下标
+         */
+        private final List<Integer> failed;
+        private final Throwable cause;
+        /**
+         * 确定导致失败的消息，无法确定时为null
+         */
+        @Nullable
+        private final Integer culprit;
+
+        private Failure(List<Integer> failed, Throwable cause, @Nullable Integer culprit) {
+            this.failed = failed;
+            this.cause = cause;
+            this.culprit = culprit;
+        }
+    }
+
+    /**
+     * @return 等待后为true，被中断时为false
+     */
+    private static boolean backoff(RetryPolicy retryPolicy, int attempt) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(retryPolicy.backoffMillis(attempt));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return 消息发回broker时的延时级别，配置了 {@link RetryPolicy} 时随重新消费次数递增
+     */
+    static int delayLevel(AbstractMessageHandler<?> messageHandler, MessageExt messageExt) {
+        final RetryPolicy retryPolicy = messageHandler.getRetryPolicy();
+        return Objects.isNull(retryPolicy) ? messageHandler.getDelayLevelWhenNextConsume()
+                : retryPolicy.delayLevel(messageExt.getReconsumeTimes());
+    }
+
+    /**
+     * <p>把消息直接发回死信队列</p>
+     *
+     * @return 是否发回成功
+     */
+    private boolean deadLetter(MessageExt messageExt, @Nullable String brokerName) {
+        if (Objects.isNull(brokerName)) {
+            return false;
+        }
+        try {
+            this.consumer.sendMessageBack(messageExt, RetryPolicy.DEAD_LETTER_LEVEL, brokerName);
+            this.metrics.recordDeadLetter(1);
+            return true;
+        } catch (Exception e) {
+            log.warn("send message to dead letter queue failed, msgId {}: {}", messageExt.getMsgId(), e.toString());
+            return false;
+        }
+    }
+
+    private void markProcessed(List<MessageExt> msgs, int[] positions, List<Integer> indexes,
+                               AbstractMessageHandler<T> messageHandler) {
+        final DeduplicationCache deduplicationCache = messageHandler.getDeduplicationCache();
+        if (Objects.isNull(deduplicationCache)) {
+            return;
+        }
+        for (Integer index : indexes) {
+            final String key = messageHandler.getDeduplicationKey().of(msgs.get(positions[index]));
+            if (Objects.nonNull(key)) {
+                deduplicationCache.put(key);
+            }
+        }
+    }
+
+    private boolean isDuplicate(MessageExt messageExt, AbstractMessageHandler<T> messageHandler) {
+        final DeduplicationCache deduplicationCache = messageHandler.getDeduplicationCache();
+        if (Objects.isNull(deduplicationCache)) {
+            return false;
+        }
+        final String key = messageHandler.getDeduplicationKey().of(messageExt);
+        return Objects.nonNull(key) && deduplicationCache.contains(key);
+    }
+
+    /**
+     * <p>在去重缓存中记录处理成功的消息</p>
+     *
+     * @param count   记录前count条转换后的消息
+     * @param exclude 不记录的转换后消息下标
+     */
+    private void markProcessed(List<MessageExt> msgs, int[] positions, int count, @Nullable BitSet exclude,
+                               @Nullable DeduplicationCache deduplicationCache, AbstractMessageHandler<T> messageHandler) {
+        if (Objects.isNull(deduplicationCache)) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (Objects.nonNull(exclude) && exclude.get(i)) {
+                continue;
+            }
+            final String key = messageHandler.getDeduplicationKey().of(msgs.get(positions[i]));
+            if (Objects.nonNull(key)) {
+                deduplicationCache.put(key);
+            }
+        }
+    }
+
+    /**
+     * <p>按key把一批消息分到不同通道，通道之间并行，通道内按顺序逐条处理，一条失败后同一通道后续的消息不再处理</p>
+     * <p>顺序消费只能整批确认，因此要等所有通道结束（不设超时，避免重新消费时与仍在执行的通道交错），
+     * 有失败时整批稍后重新消费，已成功的消息跳过。</p>
+     *
+     * @return 整批是否都已处理成功
+     */
+    boolean consumeByKey(List<MessageExt> msgs, MessageQueue messageQueue) {
+        this.metrics.recordBatch(msgs.size());
+        pruneCompleted(messageQueue);
+        final Set<String> completed = completedByQueue.computeIfAbsent(messageQueue, mq -> ConcurrentHashMap.newKeySet());
+        final Map<String, List<MessageExt>> keyedLanes = new LinkedHashMap<>();
+        final List<List<MessageExt>> lanes = new ArrayList<>();
+        for (MessageExt messageExt : msgs) {
+            if (completed.contains(messageExt.getMsgId())) {
+                continue;
+            }
+            final String keys = messageExt.getKeys();
+            if (StringUtils.isEmpty(keys)) {
+                lanes.add(Collections.singletonList(messageExt));
             } else {
-                // If msgType not string, use objectMapper change it.
+                keyedLanes.computeIfAbsent(keys, k -> new ArrayList<>()).add(messageExt);
+            }
+        }
+        lanes.addAll(keyedLanes.values());
+
+        boolean success = true;
+        if (lanes.size() == 1) {
+            // 只有一个通道时直接在消费线程中执行
+            success = consumeLane(lanes.get(0), completed, messageQueue.getBrokerName());
+        } else if (lanes.size() > 1) {
+            final List<CompletableFuture<Boolean>> futures = new ArrayList<>(lanes.size());
+            for (List<MessageExt> lane : lanes) {
                 try {
-                    return new Gson().fromJson(str, this.messageType);
+                    futures.add(CompletableFuture.supplyAsync(() -> consumeLane(lane, completed, messageQueue.getBrokerName()),
+                            this.laneExecutor));
                 } catch (Exception e) {
-                    log.info("convert failed. str:{}, msgType:{}", str, messageType);
-                    throw new RuntimeException("cannot convert message to " + messageType, e);
+                    log.error(e.getMessage(), e);
+                    success = false;
+                }
+            }
+            for (CompletableFuture<Boolean> future : futures) {
+                success &= future.join();
+            }
+        }
+        if (success) {
+            completedByQueue.remove(messageQueue);
+        }
+        return success;
+    }
+
+    /**
+     * <p>清除已不属于本实例的队列（失败中被重平衡分配给其它实例）的记录，当前队列除外</p>
+     */
+    private void pruneCompleted(MessageQueue current) {
+        if (completedByQueue.isEmpty()) {
+            return;
+        }
+        final Map<MessageQueue, ProcessQueue> processQueues =
+                this.consumer.getDefaultMQPushConsumerImpl().getRebalanceImpl().getProcessQueueTable();
+        completedByQueue.keySet().removeIf(mq -> {
+            if (mq.equals(current)) {
+                return false;
+            }
+            final ProcessQueue processQueue = processQueues.get(mq);
+            return Objects.isNull(processQueue) || processQueue.isDropped();
+        });
+    }
+
+    /**
+     * <p>按顺序处理同一key的消息</p>
+     *
+     * @return 是否全部处理成功
+     */
+    private boolean consumeLane(List<MessageExt> lane, Set<String> completed, String brokerName) {
+        final ConsumerMetrics metrics = this.metrics;
+        final DeduplicationCache deduplicationCache = this.messageHandler.getDeduplicationCache();
+        final RetryPolicy retryPolicy = this.messageHandler.getRetryPolicy();
+        for (MessageExt messageExt : lane) {
+            if (isDuplicate(messageExt, this.messageHandler)) {
+                metrics.recordDuplicate(1);
+                completed.add(messageExt.getMsgId());
+                continue;
+            }
+            final T message;
+            try {
+                final long start = System.nanoTime();
+                message = convertMessage(messageExt);
+                metrics.recordDeserialize(System.nanoTime() - start);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+                if (Objects.nonNull(retryPolicy) && retryPolicy.classify(e) == FailureType.POISON
+                        && deadLetter(messageExt, brokerName)) {
+                    completed.add(messageExt.getMsgId());
+                    continue;
+                }
+                return false;
+            }
+            if (!handleInLane(message, messageExt, brokerName, retryPolicy)) {
+                return false;
+            }
+            completed.add(messageExt.getMsgId());
+            if (Objects.nonNull(deduplicationCache)) {
+                final String key = this.messageHandler.getDeduplicationKey().of(messageExt);
+                if (Objects.nonNull(key)) {
+                    deduplicationCache.put(key);
                 }
             }
         }
+        return true;
+    }
+
+    /**
+     * <p>处理通道中的一条消息，配置了 {@link RetryPolicy} 时在本地重试，{@link FailureType#POISON} 进入死信队列</p>
+     *
+     * @return 是否已处理（含进入死信队列）
+     */
+    private boolean handleInLane(T message, MessageExt messageExt, String brokerName, @Nullable RetryPolicy retryPolicy) {
+        for (int attempt = 0; ; attempt++) {
+            if (!throttle(this.messageHandler, 1)) {
+                return false;
+            }
+            final long start = System.nanoTime();
+            try {
+                this.messageHandler.onMessage(message);
+                return true;
+            } catch (Exception e) {
+                final FailureType type = Objects.isNull(retryPolicy) ? FailureType.NON_RETRYABLE : retryPolicy.classify(e);
+                if (type == FailureType.POISON) {
+                    log.error("poison message " + messageExt.getMsgId(), e);
+                    return deadLetter(messageExt, brokerName);
+                }
+                if (type != FailureType.RETRYABLE || attempt >= retryPolicy.getMaxLocalRetries()) {
+                    log.error(e.getMessage(), e);
+                    return false;
+                }
+                log.warn("retry message {} locally, attempt {}: {}", messageExt.getMsgId(), attempt + 1, e.toString());
+                this.metrics.recordLocalRetry(1);
+                if (!backoff(retryPolicy, attempt)) {
+                    return false;
+                }
+            } finally {
+                final long duration = System.nanoTime() - start;
+                release(this.messageHandler, start, duration, 1);
+                this.metrics.recordHandle(duration);
+            }
+        }
+    }
+
+    /**
+     * <p>调用处理器前等待处理器的限速和并发上限，消费线程等待期间本地积压增长，达到阈值后客户端暂停拉取</p>
+     *
+     * @param size 本次调用的消息数量
+     * @return 可以调用处理器时返回true，等待时被中断返回false，此时不需要 {@link #release}
+     */
+    private boolean throttle(AbstractMessageHandler<T> messageHandler, int size) {
+        final TokenBucketRateLimiter rateLimiter = messageHandler.getRateLimiter();
+        final AdaptiveConcurrencyLimiter concurrencyLimiter = messageHandler.getConcurrencyLimiter();
+        if (Objects.isNull(rateLimiter) && Objects.isNull(concurrencyLimiter)) {
+            return true;
+        }
+        final long start = System.nanoTime();
+        try {
+            if (Objects.nonNull(rateLimiter)) {
+                rateLimiter.acquire(size);
+            }
+            if (Objects.nonNull(concurrencyLimiter)) {
+                concurrencyLimiter.acquire();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            log.warn("interrupted while throttled, {} messages will be consumed later", size);
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            this.metrics.recordThrottle(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * <p>处理器调用完成后释放并发名额，按单条消息的耗时调整并发上限</p>
+     */
+    private static void release(AbstractMessageHandler<?> messageHandler, long startNanos, long durationNanos, int size) {
+        final AdaptiveConcurrencyLimiter concurrencyLimiter = messageHandler.getConcurrencyLimiter();
+        if (Objects.nonNull(concurrencyLimiter)) {
+            concurrencyLimiter.release(startNanos, durationNanos / Math.max(size, 1));
+        }
+    }
+
+    /**
+     * <p>把失败的消息逐条发回broker重新投递</p>
+     *
+     * @return 发回失败时返回该消息的下标，由客户端重新投递它及之后的消息；全部发回时返回 <code>count</code>
+     */
+    private int sendBack(List<MessageExt> msgs, BitSet failedIndexes, int count,
+                         ToIntFunction<MessageExt> delayLevel, String brokerName) {
+        int sent = 0;
+        for (int i = failedIndexes.nextSetBit(0); i >= 0 && i < count; i = failedIndexes.nextSetBit(i + 1)) {
+            try {
+                this.consumer.sendMessageBack(msgs.get(i), delayLevel.applyAsInt(msgs.get(i)), brokerName);
+                sent++;
+            } catch (Exception e) {
+                log.warn("send message back failed, msgId {}: {}", msgs.get(i).getMsgId(), e.toString());
+                this.metrics.recordReconsumeLater(sent);
+                return i;
+            }
+        }
+        this.metrics.recordReconsumeLater(sent);
+        return count;
+    }
+
+    /**
+     * <p>{@link RocketMqConsumerContainer} 分发给本处理器的消息</p>
+     *
+     * @see #consumeMessages(List, AbstractMessageHandler, String, boolean)
+     */
+    int consume(List<MessageExt> msgs, @Nullable String brokerName, boolean sendBack) {
+        return consumeMessages(msgs, this.messageHandler, brokerName, sendBack);
+    }
+
+    T convertMessage(MessageExt messageExt) {
+        return this.messageDecoder.decode(messageExt);
     }
 
     public RocketMqConsumer(@NonNull String producerGroup, @NonNull String nameSrvAddr,
@@ -154,16 +780,115 @@ public class RocketMqConsumer<T> implements InitializingBean, DisposableBean {
     }
 
     @Override
-    public void destroy() {
-        if (Objects.nonNull(this.consumer)) {
-            this.consumer.shutdown();
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        if (this.ownsConsumer) {
+            try {
+                this.consumer.start();
+            } catch (MQClientException e) {
+                throw new IllegalStateException("cannot start consumer " + this.consumer.getConsumerGroup(), e);
+            }
+            if (Objects.nonNull(this.threadPoolTuner)) {
+                this.threadPoolTuner.start();
+            }
+        }
+        this.running = true;
+    }
+
+    /**
+     * <p>停止拉取，排空已拉取的消息后关闭consumer，停止后不能再次启动</p>
+     */
+    @Override
+    public synchronized void stop() {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        if (!this.ownsConsumer) {
+            return;
+        }
+        if (Objects.nonNull(this.threadPoolTuner)) {
+            this.threadPoolTuner.close();
         }
+        drain(this.consumer, this.messageHandler.getDrainTimeoutMillis(), this.metrics);
+        this.consumer.shutdown();
     }
 
+    /**
+     * <p>在单独的线程中排空，同一phase的多个消费者同时排空</p>
+     */
     @Override
-    public void afterPropertiesSet() throws Exception {
-        if (Objects.nonNull(this.consumer)) {
-            this.consumer.start();
+    public void stop(@NonNull Runnable callback) {
+        stopAsync(this::stop, callback, "RocketMqConsumer_stop_" + this.consumer.getConsumerGroup());
+    }
+
+    static void stopAsync(@NonNull Runnable stop, @NonNull Runnable callback, @NonNull String threadName) {
+        final Thread thread = new Thread(() -> {
+            try {
+                stop.run();
+            } finally {
+                callback.run();
+            }
+        }, threadName);
+        thread.start();
+    }
+
+    /**
+     * <p>停止拉取，等待本地缓存的消息（已拉取未确认，包括正在处理的）处理完成或超时，再持久化消费位点</p>
+     *
+     * @param timeoutMillis 最长等待时间
+     * @return 超时时未处理完的消息数量
+     */
+    static long drain(@NonNull DefaultMQPushConsumer consumer, long timeoutMillis, @NonNull ConsumerMetrics metrics) {
+        final long begin = System.nanoTime();
+        consumer.suspend();
+        final long deadline = begin + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long remaining = cachedMessages(consumer);
+        try {
+            while (remaining > 0 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(DRAIN_CHECK_MILLIS);
+                remaining = cachedMessages(consumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        consumer.getDefaultMQPushConsumerImpl().persistConsumerOffset();
+        metrics.recordDrain(System.nanoTime() - begin, remaining);
+        if (remaining > 0) {
+            log.warn("consumer {} shut down with {} unprocessed messages, they will be redelivered",
+                    consumer.getConsumerGroup(), remaining);
+        }
+        return remaining;
+    }
+
+    private static long cachedMessages(@NonNull DefaultMQPushConsumer consumer) {
+        long count = 0;
+        for (ProcessQueue processQueue : consumer.getDefaultMQPushConsumerImpl().getRebalanceImpl()
+                .getProcessQueueTable().values()) {
+            if (!processQueue.isDropped()) {
+                count += processQueue.getMsgCount().get();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    @Override
+    public int getPhase() {
+        return this.phase;
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+        if (Objects.nonNull(this.ownedLaneExecutor)) {
+            this.ownedLaneExecutor.shutdown();
         }
     }
 }
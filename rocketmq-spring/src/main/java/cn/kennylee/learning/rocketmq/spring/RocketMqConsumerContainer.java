@@ -0,0 +1,397 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * <p> 在共享的客户端实例上运行多个消息处理器 </p>
+ * <p>所有consumer使用同一个instanceName，共用一个客户端实例（网络连接、重平衡、心跳和拉取线程）。
+ * 同一消费组的处理器共用一个consumer，同一topic只订阅一次，各处理器的tag合并为 <code>A || B</code>，
+ * 收到消息后在本地按topic和tag分发给对应的处理器；订阅 <code>*</code> 的处理器接收没有其它处理器匹配的消息。</p>
+ * <p>同一消费组的处理器必须使用相同的 {@link ConsumeMode} 和 {@link org.apache.rocketmq.common.protocol.heartbeat.MessageModel}，
+ * 消费线程数、批量大小等consumer级别的设置取第一个注册的处理器，失败时的延时级别和暂停时间取最早失败的消息所属的处理器。
+ * 一批消息分给多个处理器时，按最早失败的消息决定重新投递的位置，之后其它处理器已成功的消息可能重复投递。</p>
+ * <p>作为 {@link SmartLifecycle} 在 {@link RocketMqStarter#CONSUMER_PHASE} 启动，各消费组的consumer并行启动；
+ * 关闭时与 {@link RocketMqConsumer} 相同，先并行排空各consumer，排空时间取消费组第一个处理器的设置。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+@Slf4j
+public class RocketMqConsumerContainer implements SmartLifecycle, DisposableBean {
+    private static final String WILDCARD = "*";
+    private static final String TAG_SEPARATOR = "||";
+    /**
+     * 默认同时启动的consumer数量上限
+     */
+    private static final int DEFAULT_STARTUP_PARALLELISM = 8;
+
+    private final String nameSrvAddr;
+    @Getter
+    private final String instanceName;
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+    private volatile boolean running = false;
+    /**
+     * 启动的phase，默认 {@link RocketMqStarter#CONSUMER_PHASE}
+     */
+    @Setter
+    private int phase = RocketMqStarter.CONSUMER_PHASE;
+    /**
+     * 同时启动的consumer数量上限，默认8
+     */
+    private int startupParallelism = DEFAULT_STARTUP_PARALLELISM;
+
+    /**
+     * @param instanceName 所有consumer共用的instanceName，可为null，会生成UUID
+     */
+    public RocketMqConsumerContainer(@NonNull String nameSrvAddr, @Nullable String instanceName) {
+        super();
+        this.nameSrvAddr = nameSrvAddr;
+        this.instanceName = Objects.isNull(instanceName) ? UUID.randomUUID().toString() : instanceName;
+    }
+
+    /**
+     * <p>注册处理器，需在启动前调用</p>
+     *
+     * @param group 消费组
+     * @return this
+     * @throws IllegalArgumentException 与同组已注册的处理器设置冲突，或同一topic的tag重复
+     */
+    @NonNull
+    public <T> RocketMqConsumerContainer register(@NonNull String group, @NonNull AbstractMessageHandler<T> messageHandler) {
+        Assert.state(!running, "container already started");
+        Assert.notNull(messageHandler.getTopic(), "Topic cant be null");
+        final Group g = groups.computeIfAbsent(group, k -> new Group(group, messageHandler));
+        Assert.isTrue(g.consumeMode == messageHandler.getConsumeMode(),
+                "handlers of group " + group + " must use the same consumeMode");
+        Assert.isTrue(g.consumer.getMessageModel() == messageHandler.getMessageModel(),
+                "handlers of group " + group + " must use the same messageModel");
+
+        final TopicRoute route = g.routes.computeIfAbsent(messageHandler.getTopic(), k -> new TopicRoute());
+        final List<String> tags = parseTags(messageHandler.getTags());
+        for (String tag : tags) {
+            Assert.isTrue(WILDCARD.equals(tag) ? Objects.isNull(route.wildcard) : !route.byTag.containsKey(tag),
+                    "duplicate handler for " + messageHandler.getTopic() + " tag " + tag);
+        }
+        final RocketMqConsumer<T> member = new RocketMqConsumer<>(g.consumer, messageHandler, g.tuner, false);
+        for (String tag : tags) {
+            if (WILDCARD.equals(tag)) {
+                route.wildcard = member;
+            } else {
+                route.byTag.put(tag, member);
+            }
+        }
+        g.members.add(member);
+        // 重复订阅同一topic时覆盖之前的订阅表达式
+        RocketMqConsumer.subscribe(g.consumer, messageHandler.getTopic(), route.subExpression());
+        return this;
+    }
+
+    /**
+     * <p>设置同时启动的consumer数量上限，与 {@link RocketMqStarter} 的设置相同，需在启动前调用</p>
+     */
+    public void setStartupParallelism(int startupParallelism) {
+        Assert.isTrue(startupParallelism > 0, "startupParallelism must be positive");
+        this.startupParallelism = startupParallelism;
+    }
+
+    /**
+     * @return 各消费组的consumer
+     */
+    @NonNull
+    public List<DefaultMQPushConsumer> getConsumers() {
+        final List<DefaultMQPushConsumer> consumers = new ArrayList<>(groups.size());
+        for (Group g : groups.values()) {
+            consumers.add(g.consumer);
+        }
+        return Collections.unmodifiableList(consumers);
+    }
+
+    /**
+     * @return 所有处理器，用于设置指标等
+     */
+    @NonNull
+    public List<RocketMqConsumer<?>> getMembers() {
+        final List<RocketMqConsumer<?>> members = new ArrayList<>();
+        for (Group g : groups.values()) {
+            members.addAll(g.members);
+        }
+        return Collections.unmodifiableList(members);
+    }
+
+    /**
+     * <p>"A || B" 拆分为各个tag，null或空为 <code>*</code></p>
+     */
+    static List<String> parseTags(@Nullable String tags) {
+        final List<String> result = new ArrayList<>();
+        if (StringUtils.isEmpty(tags) || WILDCARD.equals(tags.trim())) {
+            result.add(WILDCARD);
+            return result;
+        }
+        for (String tag : StringUtils.delimitedListToStringArray(tags, TAG_SEPARATOR)) {
+            final String trimmed = tag.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        final List<Runnable> tasks = new ArrayList<>(groups.size());
+        for (Group g : groups.values()) {
+            tasks.add(() -> {
+                try {
+                    g.consumer.start();
+                } catch (MQClientException e) {
+                    throw new IllegalStateException("cannot start consumer " + g.consumer.getConsumerGroup(), e);
+                }
+                if (Objects.nonNull(g.tuner)) {
+                    g.tuner.start();
+                }
+            });
+        }
+        try {
+            RocketMqStarter.runAll(tasks, startupParallelism, "RocketMqConsumerContainer_");
+        } catch (RuntimeException e) {
+            // 关闭已启动的consumer，未启动的shutdown不做任何事
+            for (Group g : groups.values()) {
+                g.consumer.shutdown();
+            }
+            throw e;
+        }
+        running = true;
+    }
+
+    /**
+     * <p>停止拉取，排空已拉取的消息后关闭各consumer，停止后不能再次启动</p>
+     */
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        final List<Runnable> tasks = new ArrayList<>(groups.size());
+        for (Group g : groups.values()) {
+            tasks.add(() -> {
+                if (Objects.nonNull(g.tuner)) {
+                    g.tuner.close();
+                }
+                // 排空指标记在消费组第一个处理器上
+                RocketMqConsumer.drain(g.consumer, g.firstHandler.getDrainTimeoutMillis(), g.members.get(0).getMetrics());
+                g.consumer.shutdown();
+            });
+        }
+        // 排空主要是等待，所有消费组同时进行
+        RocketMqStarter.runAll(tasks, Math.max(tasks.size(), 1), "RocketMqConsumerContainer_stop_");
+    }
+
+    @Override
+    public void stop(@NonNull Runnable callback) {
+        RocketMqConsumer.stopAsync(this::stop, callback, "RocketMqConsumerContainer_stop");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return phase;
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+        for (Group g : groups.values()) {
+            for (RocketMqConsumer<?> member : g.members) {
+                member.destroy();
+            }
+        }
+    }
+
+    /**
+     * 同一topic的处理器
+     */
+    private static final class TopicRoute {
+        private final Map<String, RocketMqConsumer<?>> byTag = new LinkedHashMap<>();
+        @Nullable
+        private RocketMqConsumer<?> wildcard;
+
+        private String subExpression() {
+            if (Objects.nonNull(wildcard)) {
+                return WILDCARD;
+            }
+            return String.join(" " + TAG_SEPARATOR + " ", byTag.keySet());
+        }
+
+        @Nullable
+        private RocketMqConsumer<?> route(@Nullable String tags) {
+            if (Objects.nonNull(tags)) {
+                final RocketMqConsumer<?> member = byTag.get(tags);
+                if (Objects.nonNull(member)) {
+                    return member;
+                }
+            }
+            return wildcard;
+        }
+    }
+
+    /**
+     * 一个消费组，共用一个consumer
+     */
+    private final class Group {
+        private final DefaultMQPushConsumer consumer;
+        private final ConsumeMode consumeMode;
+        private final AbstractMessageHandler<?> firstHandler;
+        @Nullable
+        private final ConsumeThreadPoolTuner tuner;
+        private final Map<String, TopicRoute> routes = new LinkedHashMap<>();
+        private final List<RocketMqConsumer<?>> members = new ArrayList<>();
+
+        private Group(String group, AbstractMessageHandler<?> firstHandler) {
+            this.consumer = RocketMqConsumer.newPushConsumer(group, nameSrvAddr, instanceName, firstHandler);
+            this.consumeMode = firstHandler.getConsumeMode();
+            this.firstHandler = firstHandler;
+            this.tuner = firstHandler.isAdaptiveConsumeThreads() ? new ConsumeThreadPoolTuner(this.consumer) : null;
+            registerListener();
+        }
+
+        private void registerListener() {
+            switch (consumeMode) {
+                case CONCURRENTLY:
+                    consumer.registerMessageListener((MessageListenerConcurrently) (msgs, context) -> {
+                        final String brokerName = context.getMessageQueue().getBrokerName();
+                        final Dispatched dispatched = dispatch(msgs, (member, part) -> member.consume(part, brokerName, true));
+                        final int consumed = dispatched.consumed;
+                        if (consumed == msgs.size()) {
+                            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+                        }
+
+                        // 延时级别取最早失败的消息所属的处理器
+                        context.setDelayLevelWhenNextConsume(RocketMqConsumer.delayLevel(
+                                dispatched.failedMember.getMessageHandler(), msgs.get(consumed)));
+                        dispatched.failedMember.getMetrics().recordReconsumeLater(msgs.size() - consumed);
+                        if (consumed == 0) {
+                            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+                        }
+                        context.setAckIndex(consumed - 1);
+                        return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+                    });
+                    break;
+                case ORDERLY:
+                case KEY_ORDERLY:
+                    consumer.registerMessageListener((MessageListenerOrderly) (msgs, context) -> {
+                        final Dispatched dispatched = dispatch(msgs, (member, part) -> {
+                            if (consumeMode == ConsumeMode.KEY_ORDERLY) {
+                                return member.consumeByKey(part, context.getMessageQueue()) ? part.size() : 0;
+                            }
+                            return member.consume(part, context.getMessageQueue().getBrokerName(), false);
+                        });
+                        if (dispatched.consumed < msgs.size()) {
+                            // 顺序消费整批稍后重新消费
+                            context.setSuspendCurrentQueueTimeMillis(
+                                    dispatched.failedMember.getMessageHandler().getSuspendCurrentQueueTimeMillis());
+                            dispatched.failedMember.getMetrics().recordSuspend(msgs.size());
+                            return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+                        }
+                        return ConsumeOrderlyStatus.SUCCESS;
+                    });
+                    break;
+                default:
+                    throw new UnsupportedOperationException("unsupported yet!");
+            }
+        }
+
+        /**
+         * <p>按topic和tag把一批消息分给各处理器，保持各自的相对顺序</p>
+         */
+        private Dispatched dispatch(List<MessageExt> msgs,
+                                    ToIntBiFunction<RocketMqConsumer<?>, List<MessageExt>> consume) {
+            final Map<RocketMqConsumer<?>, List<Integer>> parts = new LinkedHashMap<>();
+            for (int i = 0; i < msgs.size(); i++) {
+                final MessageExt messageExt = msgs.get(i);
+                final TopicRoute route = routes.get(messageExt.getTopic());
+                final RocketMqConsumer<?> member = Objects.isNull(route) ? null : route.route(messageExt.getTags());
+                if (Objects.isNull(member)) {
+                    // 订阅表达式之外的消息（如订阅变更前拉取的），没有处理器，直接确认
+                    log.warn("no handler for {} tags {} in group {}, msgId {}", messageExt.getTopic(),
+                            messageExt.getTags(), consumer.getConsumerGroup(), messageExt.getMsgId());
+                    continue;
+                }
+                parts.computeIfAbsent(member, k -> new ArrayList<>()).add(i);
+            }
+
+            final Dispatched dispatched = new Dispatched(msgs.size());
+            if (parts.size() == 1 && parts.values().iterator().next().size() == msgs.size()) {
+                // 整批属于同一个处理器
+                final RocketMqConsumer<?> member = parts.keySet().iterator().next();
+                dispatched.fail(consume.applyAsInt(member, msgs), member);
+                return dispatched;
+            }
+            for (Map.Entry<RocketMqConsumer<?>, List<Integer>> entry : parts.entrySet()) {
+                final List<Integer> indexes = entry.getValue();
+                final List<MessageExt> part = new ArrayList<>(indexes.size());
+                for (Integer index : indexes) {
+                    part.add(msgs.get(index));
+                }
+                final int consumed = consume.applyAsInt(entry.getKey(), part);
+                if (consumed < part.size()) {
+                    dispatched.fail(indexes.get(consumed), entry.getKey());
+                }
+            }
+            return dispatched;
+        }
+    }
+
+    /**
+     * 分发结果
+     */
+    private static final class Dispatched {
+        /**
+         * 从批次开头算起成功的消息数量，即最早失败的消息下标
+         */
+        private int consumed;
+        private RocketMqConsumer<?> failedMember;
+
+        private Dispatched(int size) {
+            this.consumed = size;
+        }
+
+        private void fail(int index, RocketMqConsumer<?> member) {
+            if (index < consumed) {
+                consumed = index;
+                failedMember = member;
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.lang.NonNull;
+
+/**
+ * <p> 存在 {@link MeterRegistry} 时，为 {@link RocketMqProducer}、{@link RocketMqConsumer}、
+ * {@link RocketMqConsumerContainer} 中的处理器和 {@link ConsumerLagSampler} 绑定Micrometer指标 </p>
+ * <p>在bean初始化时绑定，早于客户端启动（{@link org.springframework.context.SmartLifecycle#start()}）。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class RocketMqMetricsBinder implements BeanPostProcessor {
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public RocketMqMetricsBinder(@NonNull ObjectProvider<MeterRegistry> meterRegistry) {
+        super();
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(@NonNull Object bean, @NonNull String beanName) {
+        if (bean instanceof RocketMqProducer) {
+            meterRegistry.ifAvailable(registry ->
+                    ((RocketMqProducer) bean).setMetrics(new MicrometerProducerMetrics(registry)));
+        } else if (bean instanceof RocketMqConsumer) {
+            RocketMqConsumer<?> consumer = (RocketMqConsumer<?>) bean;
+            meterRegistry.ifAvailable(registry -> consumer.setMetrics(new MicrometerConsumerMetrics(registry,
+                    consumer.getConsumer().getConsumerGroup(),
+                    consumer.getMessageHandler().getTopic(),
+                    consumer.getMessageHandler().getTags())));
+        } else if (bean instanceof RocketMqConsumerContainer) {
+            meterRegistry.ifAvailable(registry -> {
+                for (RocketMqConsumer<?> member : ((RocketMqConsumerContainer) bean).getMembers()) {
+                    member.setMetrics(new MicrometerConsumerMetrics(registry,
+                            member.getConsumer().getConsumerGroup(),
+                            member.getMessageHandler().getTopic(),
+                            member.getMessageHandler().getTags()));
+                }
+            });
+        } else if (bean instanceof ConsumerLagSampler) {
+            meterRegistry.ifAvailable(((ConsumerLagSampler) bean)::bindTo);
+        }
+        return bean;
+    }
+}
@@ -1,64 +1,220 @@
 package cn.kennylee.learning.rocketmq.spring;
 
-import com.alibaba.fastjson.JSON;
+import lombok.Builder;
+import lombok.Data;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
 import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.client.producer.selector.SelectMessageQueueByHash;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.remoting.exception.RemotingException;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
 import org.springframework.beans.factory.DisposableBean;
-import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * <p> Producer工具类 </p>
+ * <p>配置 {@link ProducerParams#getStripes()} 大于1时管理多个底层producer，各自使用不同的instanceName，
+ * 即各自独立的客户端实例和网络连接，发送按 {@link StripeStrategy} 分配到其中一个。</p>
+ * <p>作为 {@link SmartLifecycle} 在 {@link RocketMqStarter#PRODUCER_PHASE} 启动，早于消费者；
+ * 启动时获取 {@link ProducerParams#getWarmupTopics()} 的路由并连接broker，首次发送不必等待路由查询。
+ * 关闭时先发送累积的消息，等待未完成的异步发送（最长 {@link ProducerParams#getDrainTimeoutMillis()}）后再关闭客户端。</p>
  * <p>Created on 13/2/2020.</p>
  *
  * @author kennylee
  */
 @Slf4j
-public class RocketMqProducer implements InitializingBean, DisposableBean {
-    public static final String DATE_FORMAT = "YYYY-MM-dd HH:mm:ss";
+public class RocketMqProducer implements SmartLifecycle, DisposableBean {
+    public static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    /**
+     * 累积发送时默认的批次大小
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256 * 1024;
+    /**
+     * 关闭时默认等待异步发送完成的时间（毫秒）
+     */
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 10 * 1000;
+    /**
+     * 开启claim-check时默认的阈值（字节）
+     */
+    public static final int DEFAULT_CLAIM_CHECK_THRESHOLD = 256 * 1024;
+    /**
+     * 关闭时检查未完成发送的间隔
+     */
+    private static final long DRAIN_CHECK_MILLIS = 20;
 
+    /**
+     * 第一个底层producer，未开启多producer时即唯一的producer
+     */
     @Getter
     private final DefaultMQProducer producer;
     static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
 
+    private final DefaultMQProducer[] producers;
+    private final StripeStrategy stripeStrategy;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    /**
+     * 未完成的异步发送数量，含累积中的消息，关闭时等待归零
+     */
+    private final AtomicInteger pendingSends = new AtomicInteger();
+    /**
+     * 顺序发送默认的队列选择器，按hashKey的哈希选择队列
+     */
+    private static final MessageQueueSelector HASH_SELECTOR = new SelectMessageQueueByHash();
+
+    private final ProducerParams params;
+    private final MessageConverter messageConverter;
+    /**
+     * 开启累积发送时不为null
+     */
+    @Nullable
+    private volatile MessageAccumulator[] accumulators;
+    /**
+     * 限制 {@link #sendAsync(String, String, String, String)} 未完成的数量，未配置时为null
+     */
+    @Nullable
+    @Getter
+    private final InFlightLimiter inFlightLimiter;
+    /**
+     * 发送指标，需在启动前设置
+     */
+    @NonNull
+    @Getter
+    @Setter
+    private ProducerMetrics metrics = ProducerMetrics.NOOP;
+    /**
+     * 启动的phase，默认 {@link RocketMqStarter#PRODUCER_PHASE}
+     */
+    @Setter
+    private int phase = RocketMqStarter.PRODUCER_PHASE;
+    private volatile boolean running = false;
+
     /**
      * @param producerGroup 生产者组名
      * @param nameSrvAddr   mq服务发现服务器地址
      * @param instanceName  可为null，会生成UUID作为instanceNaME
      */
     public RocketMqProducer(@NonNull String producerGroup, @NonNull String nameSrvAddr, @Nullable String instanceName) {
+        this(producerGroup, nameSrvAddr, instanceName, ProducerParams.builder().build());
+    }
+
+    /**
+     * @param producerGroup 生产者组名
+     * @param nameSrvAddr   mq服务发现服务器地址
+     * @param instanceName  可为null，会生成UUID作为instanceNaME
+     * @param params        可选的发送参数
+     */
+    public RocketMqProducer(@NonNull String producerGroup, @NonNull String nameSrvAddr, @Nullable String instanceName,
+                            @NonNull ProducerParams params) {
         super();
+        this.params = params;
+        this.messageConverter = Objects.isNull(params.getMessageConverter())
+                ? MessageConverterRegistry.getDefault().getDefaultConverter() : params.getMessageConverter();
+        this.inFlightLimiter = Objects.isNull(params.getMaxInFlightMessages()) && Objects.isNull(params.getMaxInFlightBytes())
+                ? null
+                : new InFlightLimiter(
+                Objects.isNull(params.getMaxInFlightMessages()) ? Integer.MAX_VALUE : params.getMaxInFlightMessages(),
+                Objects.isNull(params.getMaxInFlightBytes()) ? Integer.MAX_VALUE : params.getMaxInFlightBytes(),
+                Objects.isNull(params.getBackpressurePolicy()) ? BackpressurePolicy.BLOCK : params.getBackpressurePolicy(),
+                Objects.isNull(params.getBackpressureTimeoutMillis()) ? 3000 : params.getBackpressureTimeoutMillis());
+
+        final int stripes = Objects.isNull(params.getStripes()) ? 1 : params.getStripes();
+        Assert.isTrue(stripes > 0, "stripes must be positive");
+        this.stripeStrategy = Objects.isNull(params.getStripeStrategy()) ? StripeStrategy.KEY_HASH : params.getStripeStrategy();
+        final String baseInstanceName = Objects.isNull(instanceName) ? UUID.randomUUID().toString() : instanceName;
+        this.producers = new DefaultMQProducer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            // instanceName不同才会创建不同的客户端实例
+            this.producers[i] = newProducer(producerGroup, nameSrvAddr,
+                    stripes == 1 ? baseInstanceName : baseInstanceName + "_" + i, params);
+        }
+        this.producer = this.producers[0];
+    }
 
+    private static DefaultMQProducer newProducer(@NonNull String producerGroup, @NonNull String nameSrvAddr,
+                                                 @NonNull String instanceName, @NonNull ProducerParams params) {
         DefaultMQProducer o = new DefaultMQProducer(producerGroup);
-        o.setInstanceName(Objects.isNull(instanceName) ? UUID.randomUUID().toString() : instanceName);
+        o.setInstanceName(instanceName);
         o.setNamesrvAddr(nameSrvAddr);
 
         o.setRetryTimesWhenSendFailed(2);
         o.setRetryTimesWhenSendAsyncFailed(2);
         // 信息发送默认超时
         o.setSendMsgTimeout(3000);
-
-        this.producer = o;
+        if (Objects.nonNull(params.getCompression())
+                || (Objects.nonNull(params.getTopicCompressions()) && !params.getTopicCompressions().isEmpty())) {
+            // 由CompressionConfig决定压缩，关闭客户端自带的zlib压缩，避免重复压缩
+            o.setCompressMsgBodyOverHowmuch(Integer.MAX_VALUE);
+        }
+        return o;
     }
 
     public RocketMqProducer(@NonNull String producerGroup, @NonNull String nameSrvAddr) {
         this(producerGroup, nameSrvAddr, null);
     }
 
+    /**
+     * @return 所有底层producer
+     */
+    @NonNull
+    public List<DefaultMQProducer> getProducers() {
+        return Collections.unmodifiableList(Arrays.asList(this.producers));
+    }
+
+    /**
+     * <p>选择发送消息的producer</p>
+     *
+     * @param keys 消息key，{@link StripeStrategy#KEY_HASH} 时决定producer
+     */
+    int selectStripe(@Nullable final String keys) {
+        final int stripes = this.producers.length;
+        if (stripes == 1) {
+            return 0;
+        }
+        if (this.stripeStrategy == StripeStrategy.KEY_HASH && !StringUtils.isEmpty(keys)) {
+            return Math.floorMod(keys.hashCode(), stripes);
+        }
+        return Math.floorMod(nextStripe.getAndIncrement(), stripes);
+    }
+
+    /**
+     * <p>顺序发送的producer，不论 {@link StripeStrategy}，同一hashKey总是由同一个producer发送</p>
+     */
+    private DefaultMQProducer orderlyProducer(@NonNull final Object hashKey) {
+        return this.producers[Math.floorMod(hashKey.hashCode(), this.producers.length)];
+    }
+
     /**
      * <p>同步发送消息</p>
      *
@@ -77,15 +233,14 @@ public class RocketMqProducer implements InitializingBean, DisposableBean {
     public SendResult syncSend(@NonNull final String topic, @NonNull final String tags, @NonNull final String keys,
                                @NonNull final String payload)
             throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
-        final Message message = new Message(topic, tags, keys, payload.getBytes(DEFAULT_CHARSET));
-        return this.getProducer().send(message);
+        return send(createMessage(topic, tags, keys, payload));
     }
 
     @NonNull
     public <T> SendResult syncSend(@NonNull final String topic, @NonNull final String tags, @NonNull final String keys,
                                    @NonNull final T payload)
             throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
-        return this.syncSend(topic, tags, keys, toJson(payload));
+        return send(createMessage(topic, tags, keys, payload));
     }
 
     /**
@@ -102,22 +257,169 @@ public class RocketMqProducer implements InitializingBean, DisposableBean {
     public void sendOneWay(@NonNull final String topic, @NonNull final String tags,
                            @NonNull final String keys, @NonNull final String payload)
             throws InterruptedException, RemotingException, MQClientException {
-        final Message message = new Message(topic, tags, keys, payload.getBytes(DEFAULT_CHARSET));
-        this.getProducer().sendOneway(message);
+        this.producers[selectStripe(keys)].sendOneway(createMessage(topic, tags, keys, payload));
     }
 
     public <T> void sendOneWay(@NonNull final String topic, @NonNull final String tags,
                                @NonNull final String keys, @NonNull final T payload)
             throws InterruptedException, RemotingException, MQClientException {
-        this.sendOneWay(topic, tags, keys, toJson(payload));
+        this.producers[selectStripe(keys)].sendOneway(createMessage(topic, tags, keys, payload));
+    }
+
+    /**
+     * <p>同步顺序发送消息，hashKey相同的消息发送到同一个队列，配合 {@link ConsumeMode#ORDERLY} 按hashKey顺序消费</p>
+     * <p>按指定队列发送时客户端不重试，发送失败由调用方处理，重试前不要发送同一hashKey的后续消息。</p>
+     *
+     * @param topic   一级分类
+     * @param tags    二级分类
+     * @param keys    主键
+     * @param payload 信息，String直接发送，其它类型使用 {@link ProducerParams#getMessageConverter()} 序列化
+     * @param hashKey 选择队列的依据，如订单号
+     * @return {@link SendResult}
+     * @throws MQClientException    if there is any client error.
+     * @throws RemotingException    if there is any network-tier error.
+     * @throws MQBrokerException    if there is any error with broker.
+     * @throws InterruptedException if the sending thread is interrupted.
+     */
+    @NonNull
+    public <T> SendResult syncSendOrderly(@NonNull final String topic, @NonNull final String tags, @NonNull final String keys,
+                                          @NonNull final T payload, @NonNull final Object hashKey)
+            throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
+        return syncSendOrderly(topic, tags, keys, payload, hashKey, HASH_SELECTOR);
+    }
+
+    /**
+     * <p>同步顺序发送消息，使用指定的队列选择器</p>
+     *
+     * @param selector 按hashKey选择队列，同一hashKey必须总是选择同一个队列
+     * @see #syncSendOrderly(String, String, String, Object, Object)
+     */
+    @NonNull
+    public <T> SendResult syncSendOrderly(@NonNull final String topic, @NonNull final String tags, @NonNull final String keys,
+                                          @NonNull final T payload, @NonNull final Object hashKey,
+                                          @NonNull final MessageQueueSelector selector)
+            throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
+        final Message message = createMessage(topic, tags, keys, payload);
+        final long start = System.nanoTime();
+        SendResult result = null;
+        try {
+            result = orderlyProducer(hashKey).send(message, selector, hashKey);
+            return result;
+        } finally {
+            this.metrics.recordSend(topic, tags, System.nanoTime() - start,
+                    Objects.isNull(result) ? null : result.getSendStatus());
+        }
+    }
+
+    /**
+     * <p>异步顺序发送消息，hashKey相同的消息发送到同一个队列</p>
+     * <p>同一hashKey的多条消息同时异步发送时，到达broker的顺序不能保证，需要严格顺序时在回调中发送下一条或使用同步发送。
+     * 不经过累积发送。</p>
+     *
+     * @param hashKey      选择队列的依据，如订单号
+     * @param sendCallback 异步回调事件
+     * @see #syncSendOrderly(String, String, String, Object, Object)
+     */
+    public <T> void asyncSendOrderly(@NonNull final String topic, @NonNull final String tags, @NonNull final String keys,
+                                     @NonNull final T payload, @NonNull final Object hashKey,
+                                     @NonNull final SendCallback sendCallback)
+            throws RemotingException, MQClientException, InterruptedException {
+        asyncSendOrderly(topic, tags, keys, payload, hashKey, HASH_SELECTOR, sendCallback);
+    }
+
+    /**
+     * <p>异步顺序发送消息，使用指定的队列选择器</p>
+     *
+     * @see #asyncSendOrderly(String, String, String, Object, Object, SendCallback)
+     */
+    public <T> void asyncSendOrderly(@NonNull final String topic, @NonNull final String tags, @NonNull final String keys,
+                                     @NonNull final T payload, @NonNull final Object hashKey,
+                                     @NonNull final MessageQueueSelector selector, @NonNull final SendCallback sendCallback)
+            throws RemotingException, MQClientException, InterruptedException {
+        final Message message = createMessage(topic, tags, keys, payload);
+        final PendingSendCallback callback = new PendingSendCallback(this.metrics == ProducerMetrics.NOOP ? sendCallback
+                : new MetricsSendCallback(message, sendCallback, System.nanoTime()));
+        try {
+            orderlyProducer(hashKey).send(message, selector, hashKey, callback);
+        } catch (Exception e) {
+            callback.done();
+            throw e;
+        }
+    }
+
+    /**
+     * <p>创建消息并标记消息体格式：String按UTF-8发送（text/plain），其它类型使用 {@link ProducerParams#getMessageConverter()} 序列化</p>
+     */
+    @NonNull
+    Message createMessage(@NonNull final String topic, @NonNull final String tags, @Nullable final String keys,
+                          @NonNull final Object payload) {
+        final byte[] body;
+        final String contentType;
+        if (payload instanceof String) {
+            body = ((String) payload).getBytes(DEFAULT_CHARSET);
+            contentType = MessageConverterRegistry.TEXT_PLAIN;
+        } else {
+            try {
+                body = this.messageConverter.toBytes(payload);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("cannot convert payload " + payload.getClass().getName(), e);
+            }
+            contentType = this.messageConverter.getContentType();
+        }
+        final Message message = new Message(topic, tags, keys, body);
+        message.putUserProperty(MessageConverterRegistry.PROPERTY_CONTENT_TYPE, contentType);
+        compress(message);
+        checkIn(message);
+        return message;
+    }
+
+    /**
+     * <p>开启claim-check时，把（压缩后）超过阈值的消息体写入 {@link BlobStore}，消息只携带引用</p>
+     */
+    private void checkIn(@NonNull final Message message) {
+        final BlobStore blobStore = params.getBlobStore();
+        final int threshold = Objects.isNull(params.getClaimCheckThreshold())
+                ? DEFAULT_CLAIM_CHECK_THRESHOLD : params.getClaimCheckThreshold();
+        if (Objects.isNull(blobStore) || message.getBody().length < threshold) {
+            return;
+        }
+        final String reference;
+        try {
+            reference = blobStore.put(message.getTopic(), message.getBody());
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot store message body of topic " + message.getTopic(), e);
+        }
+        message.setBody(reference.getBytes(DEFAULT_CHARSET));
+        message.putUserProperty(BlobStore.PROPERTY_CLAIM_CHECK, reference);
     }
 
-    private <T> String toJson(@NonNull T payload) {
-        return JSON.toJSONStringWithDateFormat(payload, DATE_FORMAT);
+    /**
+     * <p>按topic的压缩配置压缩消息体，压缩后没有变小则保留原消息体</p>
+     */
+    private void compress(@NonNull final Message message) {
+        CompressionConfig config = null;
+        if (Objects.nonNull(params.getTopicCompressions())) {
+            config = params.getTopicCompressions().get(message.getTopic());
+        }
+        if (Objects.isNull(config)) {
+            config = params.getCompression();
+        }
+        if (Objects.isNull(config) || Objects.isNull(config.getType()) || message.getBody().length < config.getThreshold()) {
+            return;
+        }
+        final byte[] body = message.getBody();
+        final byte[] compressed = config.getType().compress(body);
+        if (compressed.length >= body.length) {
+            return;
+        }
+        message.setBody(compressed);
+        message.putUserProperty(CompressionType.PROPERTY_COMPRESSION, config.getType().name());
+        message.putUserProperty(CompressionType.PROPERTY_UNCOMPRESSED_SIZE, String.valueOf(body.length));
     }
 
     /**
      * <p>异步发送消息</p>
+     * <p>开启累积发送（{@link ProducerParams#getLingerMs()}）时，消息先进入缓冲区，与同一topic的其它消息合并发送。</p>
      *
      * @param topic        一级分类
      * @param tags         二级分类
@@ -132,28 +434,558 @@ public class RocketMqProducer implements InitializingBean, DisposableBean {
                           @NonNull final String keys, @NonNull final String payload,
                           @NonNull SendCallback sendCallback)
             throws RemotingException, MQClientException, InterruptedException {
-        final Message message = new Message(topic, tags, keys, payload.getBytes(DEFAULT_CHARSET));
-        this.getProducer().send(message, sendCallback);
+        doAsyncSend(createMessage(topic, tags, keys, payload), sendCallback);
     }
 
     public <T> void asyncSend(@NonNull final String topic, @NonNull final String tags,
                               @NonNull final String keys, @NonNull final T payload,
                               @NonNull SendCallback sendCallback)
             throws RemotingException, MQClientException, InterruptedException {
-        this.asyncSend(topic, tags, keys, toJson(payload), sendCallback);
+        doAsyncSend(createMessage(topic, tags, keys, payload), sendCallback);
+    }
+
+    /**
+     * <p>异步发送消息，返回 {@link CompletableFuture}</p>
+     * <p>配置了未完成发送上限（{@link ProducerParams#getMaxInFlightMessages()}、{@link ProducerParams#getMaxInFlightBytes()}）时，
+     * 达到上限后按 {@link ProducerParams#getBackpressurePolicy()} 阻塞或以 {@link RejectedExecutionException} 失败。</p>
+     *
+     * @param topic   一级分类
+     * @param tags    二级分类
+     * @param keys    主键
+     * @param payload 信息
+     * @return 发送结果
+     */
+    @NonNull
+    public CompletableFuture<SendResult> sendAsync(@NonNull final String topic, @NonNull final String tags,
+                                                   @NonNull final String keys, @NonNull final String payload) {
+        return sendAsync(createMessage(topic, tags, keys, payload));
+    }
+
+    @NonNull
+    public <T> CompletableFuture<SendResult> sendAsync(@NonNull final String topic, @NonNull final String tags,
+                                                       @NonNull final String keys, @NonNull final T payload) {
+        return sendAsync(createMessage(topic, tags, keys, payload));
+    }
+
+    @NonNull
+    private CompletableFuture<SendResult> sendAsync(@NonNull final Message message) {
+        final CompletableFuture<SendResult> future = new CompletableFuture<>();
+        final InFlightLimiter limiter = this.inFlightLimiter;
+        final int size = message.getBody().length;
+        try {
+            if (Objects.nonNull(limiter) && !limiter.tryAcquire(size)) {
+                future.completeExceptionally(new RejectedExecutionException("too many in-flight messages, topic " + message.getTopic()));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        try {
+            doAsyncSend(message, new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    release(limiter, size);
+                    future.complete(sendResult);
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                    release(limiter, size);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (Exception e) {
+            release(limiter, size);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static void release(@Nullable InFlightLimiter limiter, int size) {
+        if (Objects.nonNull(limiter)) {
+            limiter.release(size);
+        }
+    }
+
+    private void doAsyncSend(@NonNull final Message message, @NonNull final SendCallback sendCallback)
+            throws RemotingException, MQClientException, InterruptedException {
+        final PendingSendCallback callback = new PendingSendCallback(this.metrics == ProducerMetrics.NOOP ? sendCallback
+                : new MetricsSendCallback(message, sendCallback, System.nanoTime()));
+        try {
+            dispatchAsync(message, callback);
+        } catch (Exception e) {
+            callback.done();
+            throw e;
+        }
+    }
+
+    private void dispatchAsync(@NonNull final Message message, @NonNull final PendingSendCallback callback)
+            throws RemotingException, MQClientException, InterruptedException {
+        // 已计入pendingSends后再检查，检查通过的发送都会被stop()等待
+        checkRunning();
+        final int stripe = selectStripe(message.getKeys());
+        final MessageQueueSelector selector = params.getMessageQueueSelector();
+        if (Objects.nonNull(this.accumulators)) {
+            this.accumulators[stripe].append(message, callback);
+        } else if (Objects.isNull(selector)) {
+            this.producers[stripe].send(message, callback);
+        } else if (selector instanceof LatencyAwareMessageQueueSelector) {
+            final LatencyTracker tracker = new LatencyTracker((LatencyAwareMessageQueueSelector) selector);
+            this.producers[stripe].send(message, tracker, null, new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    tracker.complete(true);
+                    callback.onSuccess(sendResult);
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                    tracker.complete(false);
+                    callback.onException(e);
+                }
+            });
+        } else {
+            this.producers[stripe].send(message, selector, null, callback);
+        }
+    }
+
+    private void checkRunning() {
+        if (!this.running) {
+            throw new IllegalStateException("producer " + this.producer.getProducerGroup() + " is not running");
+        }
+    }
+
+    /**
+     * <p>计入 {@link #pendingSends}，完成（回调或发送时抛出异常）后减去，只减一次</p>
+     */
+    private final class PendingSendCallback implements SendCallback {
+        private final SendCallback delegate;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        private PendingSendCallback(SendCallback delegate) {
+            this.delegate = delegate;
+            pendingSends.incrementAndGet();
+        }
+
+        @Override
+        public void onSuccess(SendResult sendResult) {
+            try {
+                delegate.onSuccess(sendResult);
+            } finally {
+                done();
+            }
+        }
+
+        @Override
+        public void onException(Throwable e) {
+            try {
+                delegate.onException(e);
+            } finally {
+                done();
+            }
+        }
+
+        private void done() {
+            if (done.compareAndSet(false, true)) {
+                pendingSends.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * <p>记录一次发送选择的broker和耗时，反馈给 {@link LatencyAwareMessageQueueSelector}</p>
+     */
+    private static final class LatencyTracker implements MessageQueueSelector {
+        private final LatencyAwareMessageQueueSelector selector;
+        @Nullable
+        private volatile MessageQueue selected;
+        private volatile long start;
+
+        private LatencyTracker(LatencyAwareMessageQueueSelector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public MessageQueue select(List<MessageQueue> mqs, Message msg, Object arg) {
+            final MessageQueue mq = selector.select(mqs, msg, arg);
+            this.start = System.nanoTime();
+            this.selected = mq;
+            return mq;
+        }
+
+        /**
+         * 未选择队列（如没有路由）时不记录
+         */
+        private void complete(boolean success) {
+            final MessageQueue mq = this.selected;
+            if (Objects.nonNull(mq)) {
+                selector.onComplete(mq.getBrokerName(), System.nanoTime() - start, success);
+            }
+        }
+    }
+
+    private SendResult send(@NonNull final Message message)
+            throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
+        final long start = System.nanoTime();
+        SendResult result = null;
+        try {
+            final DefaultMQProducer producer = this.producers[selectStripe(message.getKeys())];
+            final MessageQueueSelector selector = params.getMessageQueueSelector();
+            if (Objects.isNull(selector)) {
+                result = producer.send(message);
+            } else if (selector instanceof LatencyAwareMessageQueueSelector) {
+                final LatencyTracker tracker = new LatencyTracker((LatencyAwareMessageQueueSelector) selector);
+                try {
+                    result = producer.send(message, tracker, null);
+                } finally {
+                    tracker.complete(Objects.nonNull(result));
+                }
+            } else {
+                result = producer.send(message, selector, null);
+            }
+            return result;
+        } finally {
+            this.metrics.recordSend(message.getTopic(), message.getTags(), System.nanoTime() - start,
+                    Objects.isNull(result) ? null : result.getSendStatus());
+        }
+    }
+
+    private SendResult sendBatch(@NonNull final DefaultMQProducer producer, @NonNull final String topic,
+                                 @NonNull final String tags, @NonNull final List<Message> messages)
+            throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
+        final long start = System.nanoTime();
+        SendResult result = null;
+        try {
+            result = producer.send(messages);
+            return result;
+        } finally {
+            this.metrics.recordSend(topic, tags, System.nanoTime() - start,
+                    Objects.isNull(result) ? null : result.getSendStatus());
+            this.metrics.recordBatch(topic, messages.size());
+        }
+    }
+
+    /**
+     * 记录异步发送耗时（含累积等待时间）
+     */
+    private final class MetricsSendCallback implements SendCallback {
+        private final Message message;
+        private final SendCallback delegate;
+        private final long start;
+
+        private MetricsSendCallback(Message message, SendCallback delegate, long start) {
+            this.message = message;
+            this.delegate = delegate;
+            this.start = start;
+        }
+
+        @Override
+        public void onSuccess(SendResult sendResult) {
+            metrics.recordSend(message.getTopic(), message.getTags(), System.nanoTime() - start, sendResult.getSendStatus());
+            delegate.onSuccess(sendResult);
+        }
+
+        @Override
+        public void onException(Throwable e) {
+            metrics.recordSend(message.getTopic(), message.getTags(), System.nanoTime() - start, null);
+            delegate.onException(e);
+        }
+    }
+
+    /**
+     * <p>同步批量发送消息，按broker的消息大小限制自动拆分为多个批次</p>
+     * <p>批量消息不支持延时消息，且同一批次的消息必须为同一topic。</p>
+     *
+     * @param topic      一级分类
+     * @param tags       二级分类
+     * @param payloads   信息，String直接发送，其它类型使用 {@link ProducerParams#getMessageConverter()} 序列化
+     * @param keysMapper 从信息中获取主键，可为null
+     * @return 每个批次的 {@link SendResult}，顺序与拆分顺序一致
+     * @throws MQClientException    if there is any client error.
+     * @throws RemotingException    if there is any network-tier error.
+     * @throws MQBrokerException    if there is any error with broker.
+     * @throws InterruptedException if the sending thread is interrupted.
+     */
+    @NonNull
+    public <T> List<SendResult> syncSendBatch(@NonNull final String topic, @NonNull final String tags,
+                                              @NonNull final Collection<T> payloads,
+                                              @Nullable final Function<? super T, String> keysMapper)
+            throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
+        if (payloads.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SendResult> results = new ArrayList<>();
+        final DefaultMQProducer batchProducer = this.producers[selectStripe(null)];
+        MessageBatchSplitter splitter = new MessageBatchSplitter(toMessages(topic, tags, payloads, keysMapper),
+                batchProducer.getMaxMessageSize());
+        while (splitter.hasNext()) {
+            results.add(sendBatch(batchProducer, topic, tags, splitter.next()));
+        }
+        return results;
+    }
+
+    @NonNull
+    public <T> List<SendResult> syncSendBatch(@NonNull final String topic, @NonNull final String tags,
+                                              @NonNull final Collection<T> payloads)
+            throws InterruptedException, RemotingException, MQClientException, MQBrokerException {
+        return this.syncSendBatch(topic, tags, payloads, null);
+    }
+
+    /**
+     * <p>异步批量发送消息，按broker的消息大小限制自动拆分为多个批次，批次之间按拆分顺序依次发送</p>
+     * <p>一个批次失败后不再发送之后的批次，以 {@link PartialSendException} 失败，
+     * 前 {@link PartialSendException#getSentCount()} 条消息已发送，其余的消息需要重新发送。</p>
+     *
+     * @param topic      一级分类
+     * @param tags       二级分类
+     * @param payloads   信息，String直接发送，其它类型使用 {@link ProducerParams#getMessageConverter()} 序列化
+     * @param keysMapper 从信息中获取主键，可为null
+     * @return 全部批次发送完成时完成，为每个批次的 {@link SendResult}，顺序与拆分顺序一致
+     */
+    @NonNull
+    public <T> CompletableFuture<List<SendResult>> asyncSendBatch(@NonNull final String topic, @NonNull final String tags,
+                                                                  @NonNull final Collection<T> payloads,
+                                                                  @Nullable final Function<? super T, String> keysMapper) {
+        final CompletableFuture<List<SendResult>> future = new CompletableFuture<>();
+        if (payloads.isEmpty()) {
+            future.complete(Collections.emptyList());
+            return future;
+        }
+        final List<SendResult> results = new ArrayList<>();
+        final List<Message> messages;
+        try {
+            messages = toMessages(topic, tags, payloads, keysMapper);
+        } catch (Exception e) {
+            future.completeExceptionally(new PartialSendException(0, results, e));
+            return future;
+        }
+        final DefaultMQProducer batchProducer = this.producers[selectStripe(null)];
+        // rocketmq-client未提供异步批量发送，使用客户端的异步发送线程池
+        pendingSends.incrementAndGet();
+        try {
+            checkRunning();
+            batchProducer.getDefaultMQProducerImpl().getAsyncSenderExecutor().submit(() -> {
+                int sent = 0;
+                try {
+                    MessageBatchSplitter splitter = new MessageBatchSplitter(messages, batchProducer.getMaxMessageSize());
+                    while (splitter.hasNext()) {
+                        final List<Message> batch = splitter.next();
+                        results.add(sendBatch(batchProducer, topic, tags, batch));
+                        sent += batch.size();
+                    }
+                    future.complete(results);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(new PartialSendException(sent, results, e));
+                } catch (Exception e) {
+                    future.completeExceptionally(new PartialSendException(sent, results, e));
+                } finally {
+                    pendingSends.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingSends.decrementAndGet();
+            future.completeExceptionally(new PartialSendException(0, results, e));
+        }
+        return future;
+    }
+
+    @NonNull
+    public <T> CompletableFuture<List<SendResult>> asyncSendBatch(@NonNull final String topic, @NonNull final String tags,
+                                                                  @NonNull final Collection<T> payloads) {
+        return this.asyncSendBatch(topic, tags, payloads, null);
+    }
+
+    private <T> List<Message> toMessages(@NonNull final String topic, @NonNull final String tags,
+                                         @NonNull final Collection<T> payloads,
+                                         @Nullable final Function<? super T, String> keysMapper) {
+        List<Message> messages = new ArrayList<>(payloads.size());
+        for (T payload : payloads) {
+            final String keys = Objects.isNull(keysMapper) ? null : keysMapper.apply(payload);
+            messages.add(createMessage(topic, tags, keys, payload));
+        }
+        return messages;
+    }
+
+    /**
+     * <p>发送累积的消息，等待未完成的异步发送后关闭producer，停止后不能再次启动</p>
+     * <p>未启动或停止后的异步发送抛出 {@link IllegalStateException}，{@link #sendAsync(String, String, String, String)} 则以该异常失败。</p>
+     */
+    @Override
+    public synchronized void stop() {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        final long begin = System.nanoTime();
+        if (Objects.nonNull(this.accumulators)) {
+            for (MessageAccumulator accumulator : this.accumulators) {
+                accumulator.close();
+            }
+        }
+        final long timeoutMillis = Objects.isNull(params.getDrainTimeoutMillis())
+                ? DEFAULT_DRAIN_TIMEOUT_MILLIS : params.getDrainTimeoutMillis();
+        final long deadline = begin + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (this.pendingSends.get() > 0 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(DRAIN_CHECK_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final int abandoned = this.pendingSends.get();
+        this.metrics.recordDrain(System.nanoTime() - begin, abandoned);
+        if (abandoned > 0) {
+            log.warn("producer {} shut down with {} pending async sends", this.producer.getProducerGroup(), abandoned);
+        }
+        for (DefaultMQProducer o : this.producers) {
+            o.shutdown();
+        }
     }
 
     @Override
     public void destroy() {
-        if (Objects.nonNull(this.producer)) {
-            this.producer.shutdown();
-        }
+        stop();
     }
 
     @Override
-    public void afterPropertiesSet() throws Exception {
-        if (Objects.nonNull(this.producer)) {
-            this.producer.start();
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        try {
+            for (DefaultMQProducer o : this.producers) {
+                o.start();
+            }
+        } catch (MQClientException e) {
+            for (DefaultMQProducer o : this.producers) {
+                o.shutdown();
+            }
+            throw new IllegalStateException("cannot start producer " + this.producer.getProducerGroup(), e);
+        }
+        if (Objects.nonNull(params.getLingerMs()) && params.getLingerMs() > 0) {
+            MessageAccumulator[] created = new MessageAccumulator[this.producers.length];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new MessageAccumulator(this.producers[i], params.getLingerMs(),
+                        Objects.isNull(params.getBatchSize()) ? DEFAULT_BATCH_SIZE : params.getBatchSize(), this.metrics);
+            }
+            this.accumulators = created;
         }
+        warmUp();
+        this.running = true;
+    }
+
+    /**
+     * <p>获取预热topic的路由，再向路由中的broker发送心跳建立连接；topic不存在时只记录日志</p>
+     */
+    private void warmUp() {
+        if (CollectionUtils.isEmpty(params.getWarmupTopics())) {
+            return;
+        }
+        for (DefaultMQProducer o : this.producers) {
+            final MQClientInstance client = o.getDefaultMQProducerImpl().getmQClientFactory();
+            for (String topic : params.getWarmupTopics()) {
+                if (!client.updateTopicRouteInfoFromNameServer(topic)) {
+                    log.warn("no route of topic {} for producer {}", topic, o.getInstanceName());
+                }
+            }
+            client.sendHeartbeatToAllBrokerWithLock();
+        }
+    }
+
+    /**
+     * @return 是否已有topic的路由，即发送时不需要查询NameServer
+     */
+    boolean hasRoute(@NonNull String topic) {
+        for (DefaultMQProducer o : this.producers) {
+            if (!o.getDefaultMQProducerImpl().getTopicPublishInfoTable().containsKey(topic)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    @Override
+    public int getPhase() {
+        return this.phase;
+    }
+
+    @Data
+    @Builder
+    public static class ProducerParams {
+        /**
+         * 非String信息的序列化方式，默认 {@link MessageConverterRegistry#getDefault()} 的默认转换器（fastjson）
+         */
+        private MessageConverter messageConverter;
+        /**
+         * 异步发送的累积时间（毫秒），大于0时开启累积发送，默认不开启
+         */
+        private Long lingerMs;
+        /**
+         * 累积发送时每个批次的最大字节数，默认 {@link #DEFAULT_BATCH_SIZE}
+         */
+        private Integer batchSize;
+        /**
+         * {@link #sendAsync(String, String, String, String)} 最大未完成消息条数，默认不限制
+         */
+        private Integer maxInFlightMessages;
+        /**
+         * {@link #sendAsync(String, String, String, String)} 最大未完成字节数，默认不限制
+         */
+        private Integer maxInFlightBytes;
+        /**
+         * 达到上限时的处理方式，默认 {@link BackpressurePolicy#BLOCK}
+         */
+        private BackpressurePolicy backpressurePolicy;
+        /**
+         * {@link BackpressurePolicy#TIMEOUT} 的等待时间（毫秒），默认3000
+         */
+        private Long backpressureTimeoutMillis;
+        /**
+         * 所有topic的消息体压缩配置，默认不压缩。配置压缩后客户端自带的zlib压缩（compressMsgBodyOverHowmuch）会关闭
+         */
+        private CompressionConfig compression;
+        /**
+         * 按topic的消息体压缩配置，优先于 {@link #compression}
+         */
+        private Map<String, CompressionConfig> topicCompressions;
+        /**
+         * 底层producer的数量，默认1。多个producer使用各自的客户端实例和网络连接，适合单个客户端成为瓶颈的多核发送端
+         */
+        private Integer stripes;
+        /**
+         * 多个producer之间分配消息的方式，默认 {@link StripeStrategy#KEY_HASH}
+         */
+        private StripeStrategy stripeStrategy;
+        /**
+         * 不指定顺序的单条发送使用的队列选择器，如 {@link LatencyAwareMessageQueueSelector}，默认由客户端轮流选择。
+         * 设置后客户端不再重试发送，不影响累积发送和批量发送
+         */
+        private MessageQueueSelector messageQueueSelector;
+        /**
+         * 启动时获取路由的topic，默认不预热
+         */
+        private List<String> warmupTopics;
+        /**
+         * 关闭时等待未完成的异步发送的最长时间（毫秒），默认 {@link #DEFAULT_DRAIN_TIMEOUT_MILLIS}
+         */
+        private Long drainTimeoutMillis;
+        /**
+         * 开启claim-check：超过 {@link #claimCheckThreshold} 的消息体写入该存储，只发送引用，默认不开启。
+         * 消费者需要配置相同的存储
+         */
+        private BlobStore blobStore;
+        /**
+         * claim-check的阈值（压缩后的字节数），默认 {@link #DEFAULT_CLAIM_CHECK_THRESHOLD}
+         */
+        private Integer claimCheckThreshold;
     }
 }
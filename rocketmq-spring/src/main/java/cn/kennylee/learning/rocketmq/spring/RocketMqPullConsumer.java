@@ -0,0 +1,503 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.client.consumer.MessageQueueListener;
+import org.apache.rocketmq.client.consumer.store.OffsetStore;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.MQClientManager;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.common.protocol.route.BrokerData;
+import org.apache.rocketmq.common.protocol.route.TopicRouteData;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p> 拉模式消费者，以Reactive Streams {@link Publisher} 的方式提供消息，由下游的request驱动拉取 </p>
+ * <p>没有下游需求时不再poll，客户端本地缓存的消息不超过 <code>prefetch</code> 条，拉取随之停止，背压一直传递到broker。
+ * 关闭了自动提交：与push消费的 {@link org.apache.rocketmq.client.impl.consumer.ProcessQueue} 相同，
+ * 每个队列只提交到最早一条未 {@link Delivery#ack()} 的消息，之前的消息都已确认；确认可以乱序、异步进行。
+ * 未确认的消息及其之后的消息在消费者重启或队列重平衡后重新消费（至少一次）。
+ * 重平衡后只提交仍分配给本实例的队列，已分配给其它实例的队列的迟到确认不再提交，已拉取未发出的消息也不再发出。</p>
+ * <p>同一时间只支持一个订阅者，取消订阅后可以重新订阅，已拉取未发出的消息会发给新的订阅者。
+ * 消息转换失败（如格式错误）时记录日志并跳过该消息，视为已确认，不会阻塞之后的消息。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see MessageDecoder
+ */
+@Slf4j
+public class RocketMqPullConsumer<T> implements Publisher<RocketMqPullConsumer.Delivery<T>>, InitializingBean, DisposableBean {
+    /**
+     * 没有需求时检查取消、提交的间隔
+     */
+    private static final long IDLE_WAIT_MILLIS = 100;
+
+    @Getter
+    private final DefaultLitePullConsumer consumer;
+    private final MessageDecoder<T> messageDecoder;
+    private final long pollTimeoutMillis;
+    private final AtomicReference<PullSubscription> subscription = new AtomicReference<>();
+    private final Object signal = new Object();
+    /**
+     * 已拉取还未发给订阅者的消息，只在拉取线程中访问
+     */
+    private final Deque<MessageExt> buffered = new ArrayDeque<>();
+    /**
+     * 已发出还未确认的消息数量
+     */
+    private final AtomicInteger unacked = new AtomicInteger();
+    /**
+     * 分配给本实例的各队列已拉取未确认的位点，修改时持有它的锁
+     */
+    private final ConcurrentMap<MessageQueue, QueueProgress> progress = new ConcurrentHashMap<>();
+    /**
+     * 当前分配给本实例的队列，重平衡时替换
+     */
+    private volatile Set<MessageQueue> assigned = Collections.emptySet();
+    /**
+     * broker地址 -> brokerName，只在拉取线程中访问
+     */
+    private final Map<String, String> brokerNames = new HashMap<>();
+    private volatile boolean running = false;
+    private Thread pollThread;
+    private MQClientInstance clientInstance;
+
+    /**
+     * @param messageType 消息的目标类型，null时为 {@link MessageExt}，支持的类型见 {@link MessageDecoder}
+     */
+    public RocketMqPullConsumer(@NonNull String group, @NonNull String nameSrvAddr, @Nullable String instanceName,
+                                @NonNull PullParams params, @Nullable Type messageType) {
+        super();
+        Assert.notNull(params.getTopic(), "Topic cant be null");
+        this.messageDecoder = new MessageDecoder<>(messageType,
+                Objects.isNull(params.getMessageConverter()) ? new GsonMessageConverter() : params.getMessageConverter(),
+                Objects.isNull(params.getMessageConverterRegistry())
+                        ? MessageConverterRegistry.getDefault() : params.getMessageConverterRegistry(),
+                params.getBlobStore());
+        this.pollTimeoutMillis = Objects.isNull(params.getPollTimeoutMillis()) ? 1000 : params.getPollTimeoutMillis();
+
+        DefaultLitePullConsumer o = new DefaultLitePullConsumer(group);
+        o.setNamesrvAddr(nameSrvAddr);
+        o.setInstanceName(Objects.isNull(instanceName) ? UUID.randomUUID().toString() : instanceName);
+        o.setMessageModel(Objects.isNull(params.getMessageModel()) ? MessageModel.CLUSTERING : params.getMessageModel());
+        o.setAutoCommit(false);
+        final int pullBatchSize = Objects.isNull(params.getPullBatchSize()) ? 32 : params.getPullBatchSize();
+        Assert.isTrue(pullBatchSize > 0, "pullBatchSize must be positive");
+        o.setPullBatchSize(pullBatchSize);
+        final int prefetch = Objects.isNull(params.getPrefetch()) ? pullBatchSize * 4 : params.getPrefetch();
+        Assert.isTrue(prefetch >= pullBatchSize, "prefetch must not be less than pullBatchSize");
+        // 限制本地缓存，没有需求时拉取很快停止
+        o.setPullThresholdForQueue(prefetch);
+        o.setPullThresholdForAll(prefetch);
+        o.setPollTimeoutMillis(this.pollTimeoutMillis);
+
+        try {
+            o.subscribe(params.getTopic(), Objects.isNull(params.getTags()) ? "*" : params.getTags());
+        } catch (MQClientException e) {
+            log.error(e.getMessage(), e);
+            throw new RuntimeException(e.getErrorMessage());
+        }
+        // subscribe时设置了更新拉取任务的监听器，先更新提交的范围再交给它
+        final MessageQueueListener rebalanceListener = o.getMessageQueueListener();
+        o.setMessageQueueListener((topic, mqAll, mqDivided) -> {
+            reassigned(mqDivided);
+            rebalanceListener.messageQueueChanged(topic, mqAll, mqDivided);
+        });
+        this.consumer = o;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Delivery<T>> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        final PullSubscription s = new PullSubscription(subscriber);
+        if (!this.subscription.compareAndSet(null, s)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    // do nothing
+                }
+
+                @Override
+                public void cancel() {
+                    // do nothing
+                }
+            });
+            subscriber.onError(new IllegalStateException("RocketMqPullConsumer allows only a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(s);
+        s.ready = true;
+        wakeUp();
+    }
+
+    /**
+     * @return 已发出还未确认的消息数量
+     */
+    public int getUnackedCount() {
+        return unacked.get();
+    }
+
+    private void wakeUp() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private void idle() throws InterruptedException {
+        synchronized (signal) {
+            signal.wait(IDLE_WAIT_MILLIS);
+        }
+    }
+
+    private void pollLoop() {
+        while (running) {
+            final PullSubscription s = this.subscription.get();
+            try {
+                commitAcked();
+                if (s != null && s.error != null) {
+                    if (this.subscription.compareAndSet(s, null)) {
+                        s.subscriber.onError(s.error);
+                    }
+                    continue;
+                }
+                if (s == null || !s.ready || s.cancelled || s.demand.get() == 0) {
+                    if (s != null && s.cancelled) {
+                        this.subscription.compareAndSet(s, null);
+                    }
+                    idle();
+                    continue;
+                }
+                if (buffered.isEmpty()) {
+                    final List<MessageExt> msgs = consumer.poll(pollTimeoutMillis);
+                    polled(msgs);
+                    buffered.addAll(msgs);
+                    continue;
+                }
+                emit(s);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+                if (s != null && this.subscription.compareAndSet(s, null)) {
+                    s.subscriber.onError(e);
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT_MILLIS));
+            }
+        }
+    }
+
+    private void emit(PullSubscription s) {
+        while (!buffered.isEmpty() && !s.cancelled && s.error == null && s.demand.get() > 0) {
+            final MessageExt messageExt = buffered.poll();
+            final MessageQueue mq = queueOf(messageExt);
+            final QueueProgress queueProgress = mq == null ? null : progress.get(mq);
+            if (mq != null && (queueProgress == null || !queueProgress.isPending(messageExt.getQueueOffset()))) {
+                // 拉取后队列已重新分配，由当前的消费者重新消费
+                log.debug("skip message {} of reassigned queue {}", messageExt.getMsgId(), mq);
+                continue;
+            }
+            final T payload;
+            try {
+                payload = messageDecoder.decode(messageExt);
+            } catch (Exception e) {
+                // 重新拉取也无法转换，跳过并确认，避免阻塞之后的消息
+                log.error("skip message {} of {} that cannot be converted", messageExt.getMsgId(), messageExt.getTopic(), e);
+                if (queueProgress != null) {
+                    queueProgress.acked(messageExt.getQueueOffset());
+                }
+                continue;
+            }
+            unacked.incrementAndGet();
+            if (s.demand.get() != Long.MAX_VALUE) {
+                s.demand.decrementAndGet();
+            }
+            s.subscriber.onNext(new Delivery<>(payload, messageExt, this, queueProgress));
+        }
+    }
+
+    /**
+     * <p>记录拉取到的消息，确认前其所在队列的提交位点不会超过它</p>
+     */
+    private void polled(List<MessageExt> msgs) {
+        synchronized (progress) {
+            for (MessageExt messageExt : msgs) {
+                final MessageQueue mq = queueOf(messageExt);
+                if (mq == null) {
+                    log.warn("no route of broker {} for message {}, its offset will not be committed",
+                            messageExt.getStoreHost(), messageExt.getMsgId());
+                } else if (assigned.contains(mq)) {
+                    progress.computeIfAbsent(mq, k -> new QueueProgress()).polled(messageExt.getQueueOffset());
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>重平衡后丢弃不再分配给本实例的队列，之后它们的确认不会再提交</p>
+     * <p>重平衡在通知前已经移除了这些队列的位点，这里再移除一次，覆盖期间提交写回的位点。</p>
+     */
+    private void reassigned(Set<MessageQueue> mqDivided) {
+        synchronized (progress) {
+            this.assigned = new HashSet<>(mqDivided);
+            final Iterator<MessageQueue> it = progress.keySet().iterator();
+            while (it.hasNext()) {
+                final MessageQueue mq = it.next();
+                if (!mqDivided.contains(mq)) {
+                    it.remove();
+                    consumer.getOffsetStore().removeOffset(mq);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>消息所在的队列，4.6.0的MessageExt没有brokerName，按存储消息的broker地址在topic路由中查找</p>
+     */
+    @Nullable
+    private MessageQueue queueOf(MessageExt messageExt) {
+        final String address = RemotingHelper.parseSocketAddressAddr(messageExt.getStoreHost());
+        String brokerName = brokerNames.get(address);
+        if (brokerName == null) {
+            final TopicRouteData route = clientInstance.getTopicRouteTable().get(messageExt.getTopic());
+            if (route != null) {
+                for (BrokerData brokerData : route.getBrokerDatas()) {
+                    for (String brokerAddress : brokerData.getBrokerAddrs().values()) {
+                        brokerNames.put(brokerAddress, brokerData.getBrokerName());
+                    }
+                }
+            }
+            brokerName = brokerNames.get(address);
+        }
+        return brokerName == null ? null : new MessageQueue(messageExt.getTopic(), brokerName, messageExt.getQueueId());
+    }
+
+    /**
+     * <p>提交各队列连续确认的位点，只在拉取线程中、或拉取线程结束后调用</p>
+     * <p>持有锁，与重平衡互斥，不会提交已分配给其它实例的队列。
+     * 集群模式立即提交到broker；广播模式由客户端定期持久化到本地文件。</p>
+     */
+    private void commitAcked() {
+        final OffsetStore offsetStore = consumer.getOffsetStore();
+        synchronized (progress) {
+            for (Map.Entry<MessageQueue, QueueProgress> entry : progress.entrySet()) {
+                final QueueProgress queueProgress = entry.getValue();
+                final long offset = queueProgress.committable();
+                if (offset > queueProgress.committed) {
+                    offsetStore.updateOffset(entry.getKey(), offset, false);
+                    offsetStore.persist(entry.getKey());
+                    queueProgress.committed = offset;
+                }
+            }
+        }
+    }
+
+    private void ack(@Nullable QueueProgress queueProgress, long queueOffset) {
+        if (queueProgress != null) {
+            queueProgress.acked(queueOffset);
+        }
+        if (unacked.decrementAndGet() == 0) {
+            wakeUp();
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        this.consumer.start();
+        this.clientInstance = MQClientManager.getInstance().getOrCreateMQClientInstance(this.consumer);
+        this.running = true;
+        this.pollThread = new Thread(this::pollLoop, "RocketMqPullConsumer_" + consumer.getConsumerGroup());
+        this.pollThread.setDaemon(true);
+        this.pollThread.start();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.running = false;
+        if (Objects.nonNull(this.pollThread)) {
+            wakeUp();
+            this.pollThread.join(TimeUnit.SECONDS.toMillis(5) + pollTimeoutMillis);
+            if (this.pollThread.isAlive()) {
+                log.warn("poll thread of {} is still running, acked offsets are not committed", consumer.getConsumerGroup());
+            } else {
+                commitAcked();
+            }
+        }
+        final PullSubscription s = this.subscription.getAndSet(null);
+        if (s != null && !s.cancelled) {
+            s.subscriber.onComplete();
+        }
+        this.consumer.shutdown();
+    }
+
+    /**
+     * <p>发给订阅者的消息，处理完成后调用 {@link #ack()}</p>
+     */
+    public static final class Delivery<T> {
+        @Getter
+        private final T payload;
+        @Getter
+        private final MessageExt messageExt;
+        private final RocketMqPullConsumer<T> owner;
+        @Nullable
+        private final QueueProgress queueProgress;
+        private final AtomicBoolean acked = new AtomicBoolean(false);
+
+        Delivery(T payload, MessageExt messageExt, RocketMqPullConsumer<T> owner, @Nullable QueueProgress queueProgress) {
+            this.payload = payload;
+            this.messageExt = messageExt;
+            this.owner = owner;
+            this.queueProgress = queueProgress;
+        }
+
+        /**
+         * <p>确认消息已处理，重复调用无效，可以在任意线程调用</p>
+         */
+        public void ack() {
+            if (acked.compareAndSet(false, true)) {
+                owner.ack(queueProgress, messageExt.getQueueOffset());
+            }
+        }
+    }
+
+    /**
+     * <p>一个队列已拉取未确认的位点，可提交的位点为其中最小的，都已确认时为已拉取的最大位点+1</p>
+     */
+    private static final class QueueProgress {
+        private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+        /**
+         * 已拉取的最大位点+1，只在拉取线程中修改
+         */
+        private volatile long next = -1;
+        /**
+         * 已提交的位点，只在持有progress的锁时访问
+         */
+        private long committed = -1;
+
+        private void polled(long queueOffset) {
+            pending.add(queueOffset);
+            next = Math.max(next, queueOffset + 1);
+        }
+
+        private void acked(long queueOffset) {
+            pending.remove(queueOffset);
+        }
+
+        private boolean isPending(long queueOffset) {
+            return pending.contains(queueOffset);
+        }
+
+        /**
+         * <p>只在持有progress的锁时调用，此时pending只会被确认减少，为空时已拉取的消息都已确认</p>
+         */
+        private long committable() {
+            try {
+                return pending.first();
+            } catch (NoSuchElementException e) {
+                return next;
+            }
+        }
+    }
+
+    private final class PullSubscription implements Subscription {
+        private final Subscriber<? super Delivery<T>> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean ready = false;
+        private volatile boolean cancelled = false;
+        /**
+         * 由拉取线程发出，保证与onNext串行
+         */
+        @Nullable
+        private volatile Throwable error;
+
+        PullSubscription(Subscriber<? super Delivery<T>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("request must be positive, rule 3.9");
+                wakeUp();
+                return;
+            }
+            demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            wakeUp();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            wakeUp();
+        }
+    }
+
+    @Data
+    @Builder
+    public static class PullParams {
+        private String topic;
+        private String tags;
+        private MessageModel messageModel;
+        /**
+         * 未标记格式或与其格式相同的消息使用的转换器，默认 {@link GsonMessageConverter}
+         */
+        private MessageConverter messageConverter;
+        /**
+         * 按消息标记的格式选择转换器，默认 {@link MessageConverterRegistry#getDefault()}
+         */
+        private MessageConverterRegistry messageConverterRegistry;
+        /**
+         * 每次poll的最大消息数量，默认32
+         */
+        private Integer pullBatchSize;
+        /**
+         * 客户端本地最多缓存的消息数量，默认 pullBatchSize * 4
+         */
+        private Integer prefetch;
+        /**
+         * 每次poll的最长等待时间（毫秒），默认1000
+         */
+        private Long pollTimeoutMillis;
+        /**
+         * 读取claim-check消息体的存储，默认无
+         */
+        private BlobStore blobStore;
+    }
+}
@@ -0,0 +1,138 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.NonNull;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> 并行启动容器中的RocketMQ客户端 </p>
+ * <p>Spring按phase从小到大启动 {@link SmartLifecycle}，同一phase内逐个调用 <code>start()</code>，
+ * 客户端多时启动要依次等待各自的NameServer、broker请求。本类的phase在所有客户端之前，
+ * 按phase分组，组内并行启动 {@link RocketMqProducer}、{@link RocketMqConsumer}、{@link RocketMqConsumerContainer}，
+ * 一组全部启动后再启动下一组，即生产者（{@link #PRODUCER_PHASE}）先于消费者（{@link #CONSUMER_PHASE}）；
+ * 轮到这些客户端时已在运行，Spring不会重复启动。没有本类时客户端仍按phase逐个启动。</p>
+ * <p>关闭仍由各客户端按phase完成，消费者先于生产者关闭。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+@Slf4j
+public class RocketMqStarter implements SmartLifecycle {
+    /**
+     * 生产者的phase，早于消费者启动、晚于消费者关闭，消费时可以发送消息
+     */
+    public static final int PRODUCER_PHASE = Integer.MAX_VALUE - 2048;
+    /**
+     * 消费者的phase
+     */
+    public static final int CONSUMER_PHASE = Integer.MAX_VALUE - 1024;
+
+    private final ListableBeanFactory beanFactory;
+    private final int parallelism;
+    private volatile boolean running = false;
+
+    /**
+     * @param parallelism 同时启动的客户端数量上限
+     */
+    public RocketMqStarter(@NonNull ListableBeanFactory beanFactory, int parallelism) {
+        super();
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        this.beanFactory = beanFactory;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void start() {
+        final Map<Integer, List<SmartLifecycle>> phases = new TreeMap<>();
+        final List<SmartLifecycle> clients = new ArrayList<>();
+        clients.addAll(beanFactory.getBeansOfType(RocketMqProducer.class).values());
+        clients.addAll(beanFactory.getBeansOfType(RocketMqConsumer.class).values());
+        clients.addAll(beanFactory.getBeansOfType(RocketMqConsumerContainer.class).values());
+        for (SmartLifecycle client : clients) {
+            if (client.isAutoStartup() && !client.isRunning()) {
+                phases.computeIfAbsent(client.getPhase(), k -> new ArrayList<>()).add(client);
+            }
+        }
+
+        final long begin = System.nanoTime();
+        int started = 0;
+        for (List<SmartLifecycle> phase : phases.values()) {
+            final List<Runnable> tasks = new ArrayList<>(phase.size());
+            for (SmartLifecycle client : phase) {
+                tasks.add(client::start);
+            }
+            runAll(tasks, parallelism, "RocketMqStarter_");
+            started += tasks.size();
+        }
+        running = true;
+        log.info("started {} rocketmq clients in {} ms", started,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+
+    /**
+     * <p>并行执行，全部完成后返回，任一失败时抛出第一个失败</p>
+     *
+     * @param threadPrefix 临时线程的名称前缀
+     */
+    static void runAll(@NonNull List<Runnable> tasks, int parallelism, @NonNull String threadPrefix) {
+        if (tasks.size() <= 1) {
+            tasks.forEach(Runnable::run);
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(tasks.size(), parallelism),
+                new ThreadFactoryImpl(threadPrefix, true));
+        try {
+            final List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            RuntimeException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while starting rocketmq clients", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PRODUCER_PHASE - 1;
+    }
+}
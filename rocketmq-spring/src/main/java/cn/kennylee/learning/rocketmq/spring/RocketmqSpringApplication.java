@@ -1,5 +1,6 @@
 package cn.kennylee.learning.rocketmq.spring;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -10,16 +11,25 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
-import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -45,99 +55,175 @@ public class RocketmqSpringApplication {
 
     @Resource
     private RocketMqClientProperties rocketMqClientProperties;
+    private BlobStore blobStore;
 
     public static void main(String[] args) {
         SpringApplication.run(RocketmqSpringApplication.class, args);
     }
 
+    /**
+     * 存在MeterRegistry时自动绑定生产者、消费者的指标
+     */
+    @Bean
+    public static RocketMqMetricsBinder rocketMqMetricsBinder(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new RocketMqMetricsBinder(meterRegistry);
+    }
+
+    /**
+     * 并行启动生产者和消费者
+     */
+    @Bean
+    public RocketMqStarter rocketMqStarter(ListableBeanFactory beanFactory) {
+        return new RocketMqStarter(beanFactory, rocketMqClientProperties.getRocketmq().getStartupParallelism());
+    }
+
     @Bean
     @ConditionalOnMissingBean(RocketMqProducer.class)
     public RocketMqProducer rocketMqProducer() {
-        final String groupName = rocketMqClientProperties.getRocketmq().getProducer().getGroup();
+        final RocketMqClientProperties.Producer producer = rocketMqClientProperties.getRocketmq().getProducer();
         final String namesrvAddr = rocketMqClientProperties.getRocketmq().getNamesrvAddr();
-        return new RocketMqProducer(groupName, namesrvAddr);
+        final RocketMqProducer.ProducerParams params = RocketMqProducer.ProducerParams.builder()
+                .lingerMs(producer.getLingerMs())
+                .batchSize(producer.getBatchSize())
+                .maxInFlightMessages(producer.getMaxInFlightMessages())
+                .maxInFlightBytes(producer.getMaxInFlightBytes())
+                .backpressurePolicy(producer.getBackpressurePolicy())
+                .backpressureTimeoutMillis(producer.getBackpressureTimeoutMillis())
+                .compression(producer.getCompression())
+                .topicCompressions(producer.getTopicCompressions())
+                .stripes(producer.getStripes())
+                .stripeStrategy(producer.getStripeStrategy())
+                .messageQueueSelector(producer.isLatencyAware() ? new LatencyAwareMessageQueueSelector() : null)
+                .drainTimeoutMillis(producer.getDrainTimeoutMillis())
+                .warmupTopics(Collections.singletonList(rocketMqClientProperties.getRocketmq().getTopic()))
+                .blobStore(blobStore())
+                .claimCheckThreshold(producer.getClaimCheckThreshold())
+                .build();
+        return new RocketMqProducer(producer.getGroup(), namesrvAddr, null, params);
     }
 
     /**
-     * 接收实体类型<code>cn.kennylee.learning.rocketmq.spring.RocketmqSpringApplication.OrderInfo</code>的消费者
+     * <p>四个消费者共用一个客户端实例</p>
      */
     @Bean
-    public RocketMqConsumer<OrderInfo> rocketMqConsumer1() {
+    public RocketMqConsumerContainer rocketMqConsumerContainer() {
+        final RocketMqConsumerContainer container = new RocketMqConsumerContainer(
+                rocketMqClientProperties.getRocketmq().getNamesrvAddr(), null);
+        container.setStartupParallelism(rocketMqClientProperties.getRocketmq().getStartupParallelism());
+        container.register(CONSUMER_GROUP_NAME_1, orderInfoHandler());
+        container.register(CONSUMER_GROUP_NAME_2, stringHandler());
+        container.register(CONSUMER_GROUP_NAME_3, messageExtHandler());
+        container.register(CONSUMER_GROUP_NAME_4, objectHandler());
+        return container;
+    }
+
+    /**
+     * 采样容器中各消费组的积压
+     */
+    @Bean
+    public ConsumerLagSampler consumerLagSampler(RocketMqConsumerContainer rocketMqConsumerContainer) {
+        return new ConsumerLagSampler(rocketMqClientProperties.getRocketmq().getLagSampleIntervalMillis())
+                .register(rocketMqConsumerContainer.getConsumers());
+    }
+
+    /**
+     * <p>配置了claimCheckDirectory时生产者和消费者共用的claim-check存储，否则为null；按claimCheckRetentionMillis定期清理</p>
+     */
+    @Nullable
+    private synchronized BlobStore blobStore() {
+        final String directory = rocketMqClientProperties.getRocketmq().getClaimCheckDirectory();
+        if (Objects.isNull(blobStore) && StringUtils.hasText(directory)) {
+            try {
+                blobStore = new LocalFileBlobStore(Paths.get(directory),
+                        rocketMqClientProperties.getRocketmq().getClaimCheckRetentionMillis());
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot create claim-check directory " + directory, e);
+            }
+        }
+        return blobStore;
+    }
+
+    /**
+     * <p>停止claim-check存储的定期清理</p>
+     */
+    @PreDestroy
+    public synchronized void closeBlobStore() throws IOException {
+        if (blobStore instanceof Closeable) {
+            ((Closeable) blobStore).close();
+        }
+    }
+
+    /**
+     * 接收实体类型<code>cn.kennylee.learning.rocketmq.spring.RocketmqSpringApplication.OrderInfo</code>的处理器
+     */
+    private AbstractMessageHandler<OrderInfo> orderInfoHandler() {
         AbstractMessageHandler.ListenerParams params = AbstractMessageHandler.ListenerParams.builder()
                 .topic(rocketMqClientProperties.getRocketmq().getTopic())
                 .tags(TAGS_1)
+                .blobStore(blobStore())
                 .build();
-        ;
-        return generateRocketMqConsumer(new AbstractMessageHandler<OrderInfo>(params) {
+        return new AbstractMessageHandler<OrderInfo>(params) {
             @Override
             public void onMessage(OrderInfo message) {
                 MESSAGE_1.add(message);
                 log.info("rocketMqConsumer1: {} ", message.toString());
             }
-        }, CONSUMER_GROUP_NAME_1);
+        };
     }
 
     /**
-     * 接收字符串类型的消费者
+     * 接收字符串类型的处理器
      */
-    @Bean
-    public RocketMqConsumer<String> rocketMqConsumer2() {
+    private AbstractMessageHandler<String> stringHandler() {
         AbstractMessageHandler.ListenerParams params = AbstractMessageHandler.ListenerParams.builder()
                 .topic(rocketMqClientProperties.getRocketmq().getTopic())
                 .tags(TAGS_2)
+                .blobStore(blobStore())
                 .build();
-        ;
-        return generateRocketMqConsumer(new AbstractMessageHandler<String>(params) {
+        return new AbstractMessageHandler<String>(params) {
             @Override
             public void onMessage(String message) {
                 MESSAGE_2.add(message);
                 log.info("rocketMqConsumer2: {} ", message.toString());
             }
-        }, CONSUMER_GROUP_NAME_2);
+        };
     }
 
     /**
-     * 接收未定义返回数据类型的消费者（实际上默认类型就是MessageExt）
+     * 接收未定义返回数据类型的处理器（实际上默认类型就是MessageExt），返回时声明为MessageExt
      */
-    @Bean
-    public RocketMqConsumer rocketMqConsumer3() {
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private AbstractMessageHandler<MessageExt> messageExtHandler() {
         AbstractMessageHandler.ListenerParams params = AbstractMessageHandler.ListenerParams.builder()
                 .topic(rocketMqClientProperties.getRocketmq().getTopic())
                 .tags(TAGS_3)
+                .blobStore(blobStore())
                 .build();
-        ;
-        return generateRocketMqConsumer(new AbstractMessageHandler(params) {
+        return new AbstractMessageHandler(params) {
             @Override
             public void onMessage(Object message) {
                 MESSAGE_3.add((MessageExt) message);
                 log.info("rocketMqConsumer3: {} ", message.toString());
             }
-        }, CONSUMER_GROUP_NAME_3);
+        };
     }
 
     /**
-     * 接收Object数据类型的消费者（实际上也就是MessageExt）
+     * 接收Object数据类型的处理器（实际上也就是MessageExt）
      */
-    @Bean
-    public RocketMqConsumer<Object> rocketMqConsumer4() {
+    private AbstractMessageHandler<Object> objectHandler() {
         AbstractMessageHandler.ListenerParams params = AbstractMessageHandler.ListenerParams.builder()
                 .topic(rocketMqClientProperties.getRocketmq().getTopic())
                 .tags(TAGS_4)
+                .blobStore(blobStore())
                 .build();
-        ;
-        return generateRocketMqConsumer(new AbstractMessageHandler<Object>(params) {
+        return new AbstractMessageHandler<Object>(params) {
             @Override
             public void onMessage(Object message) {
                 MESSAGE_4.add((MessageExt) message);
                 log.info("rocketMqConsumer4: {} ", message.toString());
             }
-        }, CONSUMER_GROUP_NAME_4);
-    }
-
-    private <E, T extends AbstractMessageHandler<E>> RocketMqConsumer<E> generateRocketMqConsumer(
-            @NonNull T messageHandler, @NonNull String groupName) {
-        final String namesrvAddr = rocketMqClientProperties.getRocketmq().getNamesrvAddr();
-        return new RocketMqConsumer<>(groupName, namesrvAddr, null, messageHandler);
+        };
     }
 
     @Data
@@ -0,0 +1,28 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.lang.NonNull;
+
+/**
+ * <p> 基于Jackson Smile（二进制JSON）的消息体转换器，字段名和短字符串会被去重引用，消息体比文本JSON小，解析也更快 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class SmileMessageConverter extends JacksonMessageConverter {
+
+    public SmileMessageConverter() {
+        super(configure(new ObjectMapper(new SmileFactory())));
+    }
+
+    public SmileMessageConverter(@NonNull ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @NonNull
+    @Override
+    public String getContentType() {
+        return MessageConverterRegistry.APPLICATION_SMILE;
+    }
+}
@@ -0,0 +1,19 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+/**
+ * <p> 多个底层producer（stripe）之间分配消息的方式 </p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ * @see RocketMqProducer.ProducerParams#getStripes()
+ */
+public enum StripeStrategy {
+    /**
+     * 依次轮流
+     */
+    ROUND_ROBIN,
+    /**
+     * 按消息key的哈希选择，同一key总是由同一个producer发送，保持客户端的发送顺序；没有key的消息轮流
+     */
+    KEY_HASH
+}
@@ -0,0 +1,82 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p> 令牌桶限速，限制每秒处理的消息数量 </p>
+ * <p>令牌按固定速率生成，最多积累 <code>burst</code> 个，空闲后允许短时间内处理 <code>burst</code> 条。
+ * 令牌不足时预支，由调用线程等待到令牌补足，后来的调用排在预支之后，因此超过 <code>burst</code> 的批次也能通过。</p>
+ * <p>多个处理器访问同一个下游时可以共用一个实例。</p>
+ * <p>Created on 18/10/2026.</p>
+ *
+ * @author kennylee
+ */
+public class TokenBucketRateLimiter {
+    private final double permitsPerNano;
+    private final double burst;
+    /**
+     * 当前可用的令牌，为负数时表示已预支的数量
+     */
+    private double permits;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond 每秒生成的令牌数
+     */
+    public TokenBucketRateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, (int) Math.max(1, Math.ceil(permitsPerSecond)));
+    }
+
+    /**
+     * @param permitsPerSecond 每秒生成的令牌数
+     * @param burst            最多积累的令牌数
+     */
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        super();
+        Assert.isTrue(permitsPerSecond > 0, "permitsPerSecond must be positive");
+        Assert.isTrue(burst > 0, "burst must be positive");
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.permits = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * <p>申请令牌，不足时等待</p>
+     *
+     * @param count 令牌数，即消息数量
+     * @return 等待的时间（纳秒）
+     * @throws InterruptedException if the current thread is interrupted while waiting, the reserved permits are not returned.
+     */
+    public long acquire(int count) throws InterruptedException {
+        final long waitNanos = reserve(count, System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    /**
+     * <p>扣除令牌</p>
+     *
+     * @return 需要等待的时间（纳秒）
+     */
+    synchronized long reserve(int count, long nowNanos) {
+        Assert.isTrue(count > 0, "count must be positive");
+        if (nowNanos > lastRefillNanos) {
+            permits = Math.min(burst, permits + (nowNanos - lastRefillNanos) * permitsPerNano);
+            lastRefillNanos = nowNanos;
+        }
+        permits -= count;
+        return permits >= 0 ? 0 : (long) Math.ceil(-permits / permitsPerNano);
+    }
+
+    /**
+     * @return 每秒生成的令牌数
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+}
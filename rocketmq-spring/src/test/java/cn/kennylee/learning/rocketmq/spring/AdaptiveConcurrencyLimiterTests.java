@@ -0,0 +1,87 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应并发限制的测试。
+ */
+class AdaptiveConcurrencyLimiterTests {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 测试耗时正常时增长到上限，耗时升高时缩小，恢复后重新增长。
+     */
+    @Test
+    public void testAimd() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 20);
+        Assertions.assertEquals(2, limiter.getLimit());
+        grow(limiter, 20);
+        Assertions.assertEquals(20, limiter.getLimit());
+
+        // 每轮并发只减小一次
+        long now = System.nanoTime();
+        for (int round = 1; round <= 5; round++) {
+            final long start = now;
+            now += 100 * MILLIS;
+            for (int i = 0; i < 10; i++) {
+                limiter.acquire();
+                limiter.release(start, 10 * MILLIS, now);
+            }
+            Assertions.assertEquals((int) (20 * Math.pow(AdaptiveConcurrencyLimiter.BACKOFF_RATIO, round)),
+                    limiter.getLimit(), "round " + round);
+        }
+        for (int i = 0; i < 100; i++) {
+            now += 100 * MILLIS;
+            limiter.acquire();
+            limiter.release(now - 50 * MILLIS, 10 * MILLIS, now);
+        }
+        Assertions.assertEquals(2, limiter.getLimit());
+
+        grow(limiter, 20);
+        Assertions.assertEquals(20, limiter.getLimit());
+        Assertions.assertEquals(0, limiter.getInFlight());
+    }
+
+    /**
+     * 测试达到上限时等待，释放后继续。
+     */
+    @Test
+    public void testAcquireBlocks() throws InterruptedException {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1);
+        limiter.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        Assertions.assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limiter.release(System.nanoTime(), MILLIS);
+        Assertions.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, limiter.getInFlight());
+        waiter.join();
+    }
+
+    /**
+     * 并发用满时以1毫秒的耗时调用，直到上限不再增长
+     */
+    private static void grow(AdaptiveConcurrencyLimiter limiter, int max) throws InterruptedException {
+        for (int i = 0; i < 1000 && limiter.getLimit() < max; i++) {
+            final int limit = limiter.getLimit();
+            for (int j = 0; j < limit; j++) {
+                limiter.acquire();
+            }
+            for (int j = 0; j < limit; j++) {
+                limiter.release(System.nanoTime(), MILLIS);
+            }
+        }
+    }
+}
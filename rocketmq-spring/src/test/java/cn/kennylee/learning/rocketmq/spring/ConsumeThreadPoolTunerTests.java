@@ -0,0 +1,45 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费线程数调整测试，不依赖RocketMQ服务。
+ */
+class ConsumeThreadPoolTunerTests {
+    private static final int CORES = 4;
+    private static final long WALL = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * 测试I/O密集的处理器在有积压时增加线程，每次最多向目标移动一半。
+     */
+    @Test
+    public void testComputeTarget_ioBound() {
+        // CPU耗时只占10%，目标 4 * 10 = 40
+        Assertions.assertEquals(22, ConsumeThreadPoolTuner.computeTarget(4, 4, 63, CORES, WALL, WALL / 10, 1000));
+        Assertions.assertEquals(31, ConsumeThreadPoolTuner.computeTarget(22, 4, 63, CORES, WALL, WALL / 10, 1000));
+        // 不超过上限
+        Assertions.assertEquals(33, ConsumeThreadPoolTuner.computeTarget(4, 4, 63, CORES, WALL, WALL / 100, 1000));
+    }
+
+    /**
+     * 测试没有积压时不增加线程。
+     */
+    @Test
+    public void testComputeTarget_noBacklog() {
+        Assertions.assertEquals(4, ConsumeThreadPoolTuner.computeTarget(4, 4, 63, CORES, WALL, WALL / 10, 2));
+    }
+
+    /**
+     * 测试CPU密集的处理器减少到核数附近。
+     */
+    @Test
+    public void testComputeTarget_cpuBound() {
+        Assertions.assertEquals(18, ConsumeThreadPoolTuner.computeTarget(32, 2, 63, CORES, WALL, WALL, 1000));
+        Assertions.assertEquals(4, ConsumeThreadPoolTuner.computeTarget(5, 2, 63, CORES, WALL, WALL, 1000));
+        // 没有样本时保持不变
+        Assertions.assertEquals(32, ConsumeThreadPoolTuner.computeTarget(32, 2, 63, CORES, 0, 0, 1000));
+    }
+}
@@ -0,0 +1,150 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.NonNull;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 消费积压采样的测试，使用进程内RocketMQ。
+ */
+class ConsumerLagSamplerTests {
+    private static final String GROUP = "learning-spring-lag";
+    private static final String TOPIC = "lag-sampler";
+    private static final int MESSAGES = 10;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static EmbeddedRocketMq rocketMq;
+
+    @BeforeAll
+    static void startRocketMq() throws Exception {
+        rocketMq = EmbeddedRocketMq.start();
+    }
+
+    @AfterAll
+    static void stopRocketMq() {
+        if (rocketMq != null) {
+            rocketMq.close();
+        }
+    }
+
+    /**
+     * 测试速率按offset的增长计算并平滑，追上积压的时间按净消费速率计算。
+     */
+    @Test
+    public void testRates() {
+        final MessageQueue mq = new MessageQueue(TOPIC, "broker-a", 0);
+        final ConsumerLagSampler.QueueLag first = ConsumerLagSampler.QueueLag.next(null, mq, 100, 40, 0);
+        Assertions.assertEquals(60, first.getLag());
+        Assertions.assertEquals(0, first.getConsumeRate());
+
+        final ConsumerLagSampler.QueueLag second = ConsumerLagSampler.QueueLag.next(first, mq, 110, 60, 2 * SECOND);
+        Assertions.assertEquals(50, second.getLag());
+        Assertions.assertEquals(10, second.getConsumeRate(), 0.001);
+        Assertions.assertEquals(5, second.getProduceRate(), 0.001);
+
+        final ConsumerLagSampler.QueueLag third = ConsumerLagSampler.QueueLag.next(second, mq, 110, 90, 3 * SECOND);
+        Assertions.assertEquals(20, third.getConsumeRate(), 0.001);
+        Assertions.assertEquals(2.5, third.getProduceRate(), 0.001);
+
+        final ConsumerLagSampler.GroupLag groupLag = ConsumerLagSampler.GroupLag.of(GROUP, Collections.singletonList(third));
+        Assertions.assertEquals(20, groupLag.getLag());
+        Assertions.assertEquals(20 / 17.5, groupLag.getCatchUpSeconds(), 0.001);
+        Assertions.assertSame(third, groupLag.find(mq));
+        Assertions.assertEquals(Double.POSITIVE_INFINITY, ConsumerLagSampler.GroupLag.catchUpSeconds(10, 1, 2));
+        Assertions.assertEquals(0, ConsumerLagSampler.GroupLag.catchUpSeconds(0, 0, 2));
+    }
+
+    /**
+     * 测试处理器阻塞时积压等于未处理的消息数量，恢复后积压归零。
+     */
+    @Test
+    public void testSample() throws Exception {
+        rocketMq.createTopic(TOPIC, 2);
+        final AtomicInteger handled = new AtomicInteger();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final RocketMqConsumer<String> consumer = new RocketMqConsumer<>(GROUP, rocketMq.getNamesrvAddr(),
+                new AbstractMessageHandler<String>(AbstractMessageHandler.ListenerParams.builder()
+                        .topic(TOPIC)
+                        .build()) {
+                    @Override
+                    public void onMessage(@NonNull String message) {
+                        if (message.startsWith("blocked")) {
+                            try {
+                                blocked.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        handled.incrementAndGet();
+                    }
+                });
+        consumer.getConsumer().setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
+        final RocketMqProducer producer = new RocketMqProducer(GROUP, rocketMq.getNamesrvAddr(), null);
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final ConsumerLagSampler sampler = new ConsumerLagSampler(60_000)
+                .register(Collections.singletonList(consumer.getConsumer()));
+        sampler.bindTo(registry);
+        try {
+            producer.start();
+            consumer.start();
+            send(producer, "message");
+            await(() -> handled.get() == MESSAGES);
+            await(() -> {
+                sampler.sample();
+                final ConsumerLagSampler.GroupLag groupLag = sampler.getGroupLag(GROUP);
+                return groupLag != null && groupLag.getLag() == 0;
+            });
+
+            send(producer, "blocked");
+            await(() -> {
+                sampler.sample();
+                return sampler.getGroupLag(GROUP).getLag() == MESSAGES;
+            });
+            Assertions.assertEquals(MESSAGES, registry.get("rocketmq.consumer.group.lag").tag("group", GROUP)
+                    .gauge().value());
+            Assertions.assertEquals(MESSAGES, registry.get("rocketmq.consumer.lag").tag("group", GROUP)
+                    .gauges().stream().mapToDouble(o -> o.value()).sum());
+            Assertions.assertTrue(sampler.getGroupLag(GROUP).getProduceRate() > 0);
+
+            blocked.countDown();
+            await(() -> {
+                sampler.sample();
+                return sampler.getGroupLag(GROUP).getLag() == 0;
+            });
+            Assertions.assertTrue(sampler.getGroupLag(GROUP).getConsumeRate() > 0);
+            Assertions.assertEquals(0, sampler.getGroupLag(GROUP).getCatchUpSeconds());
+        } finally {
+            blocked.countDown();
+            consumer.stop();
+            consumer.destroy();
+            producer.stop();
+        }
+    }
+
+    private static void send(RocketMqProducer producer, String prefix) throws Exception {
+        for (int i = 0; i < MESSAGES; i++) {
+            Assertions.assertEquals(SendStatus.SEND_OK,
+                    producer.syncSend(TOPIC, "lag", "key-" + i, prefix + "-" + i).getSendStatus());
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + 30 * SECOND;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "timed out");
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+}
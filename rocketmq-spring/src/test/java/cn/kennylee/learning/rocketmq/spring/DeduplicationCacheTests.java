@@ -0,0 +1,87 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 去重缓存测试。
+ */
+class DeduplicationCacheTests {
+
+    @Test
+    public void testPutAndContains() {
+        DeduplicationCache cache = new DeduplicationCache(1000, 10, TimeUnit.MINUTES);
+        Assertions.assertEquals(1024, cache.capacity());
+        Assertions.assertFalse(cache.contains("msg-1"));
+        cache.put("msg-1");
+        Assertions.assertTrue(cache.contains("msg-1"));
+        Assertions.assertFalse(cache.contains("msg-2"));
+    }
+
+    /**
+     * 测试记录过期。
+     */
+    @Test
+    public void testTtl() {
+        final AtomicLong now = new AtomicLong(1_000_000L);
+        DeduplicationCache cache = new DeduplicationCache(64, 10, TimeUnit.SECONDS, now::get);
+        cache.put("msg-1");
+        now.addAndGet(9_000L);
+        Assertions.assertTrue(cache.contains("msg-1"));
+        now.addAndGet(1_000L);
+        Assertions.assertFalse(cache.contains("msg-1"));
+    }
+
+    /**
+     * 测试写入远超容量的记录后，内存不变，最近写入的记录仍然可以查到。
+     */
+    @Test
+    public void testBoundedCapacity() {
+        DeduplicationCache cache = new DeduplicationCache(1024, 10, TimeUnit.MINUTES);
+        for (int i = 0; i < 100_000; i++) {
+            cache.put("msg-" + i);
+        }
+        Assertions.assertEquals(1024, cache.capacity());
+        int hits = 0;
+        for (int i = 100_000 - 256; i < 100_000; i++) {
+            if (cache.contains("msg-" + i)) {
+                hits++;
+            }
+        }
+        // 同一组内最早写入的记录先被淘汰，最近写入的绝大部分仍在
+        Assertions.assertTrue(hits > 200, "hits " + hits);
+    }
+
+    /**
+     * 测试组内有过期记录时刷新key，key移到组的末尾且只保留一份，之后淘汰的是最早写入的记录而不是刷新的key。
+     */
+    @Test
+    public void testRefreshAfterExpiry() {
+        final AtomicLong now = new AtomicLong(1_000_000L);
+        // 只有一组，所有key都在同一组
+        DeduplicationCache cache = new DeduplicationCache(8, 10, TimeUnit.SECONDS, now::get);
+        cache.put("expired");
+        now.addAndGet(5_000L);
+        cache.put("refreshed");
+        for (int i = 0; i < 6; i++) {
+            cache.put("old-" + i);
+        }
+        now.addAndGet(6_000L);
+        Assertions.assertFalse(cache.contains("expired"));
+        cache.put("refreshed");
+
+        cache.put("new-0");
+        cache.put("new-1");
+        Assertions.assertTrue(cache.contains("refreshed"));
+        Assertions.assertFalse(cache.contains("old-0"));
+        Assertions.assertTrue(cache.contains("old-1"));
+        Assertions.assertTrue(cache.contains("new-1"));
+
+        // 刷新后的过期时间生效
+        now.addAndGet(9_000L);
+        Assertions.assertTrue(cache.contains("refreshed"));
+    }
+}
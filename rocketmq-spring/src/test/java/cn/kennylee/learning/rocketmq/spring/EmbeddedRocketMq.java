@@ -0,0 +1,164 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.MQVersion;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.constant.PermName;
+import org.apache.rocketmq.common.namesrv.NamesrvConfig;
+import org.apache.rocketmq.namesrv.NamesrvController;
+import org.apache.rocketmq.remoting.netty.NettyClientConfig;
+import org.apache.rocketmq.remoting.netty.NettyServerConfig;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 进程内的NameServer和单个broker，数据写入临时目录，关闭时删除，测试不需要docker中的RocketMQ。
+ * <p>
+ * 存储文件的大小调小了很多，只适合测试。
+ */
+@Slf4j
+final class EmbeddedRocketMq implements AutoCloseable {
+    private static final String BROKER_NAME = "embedded-broker";
+    private static final String CLUSTER_NAME = "embedded-cluster";
+
+    private final File storeDir;
+    private final NamesrvController namesrvController;
+    private final BrokerController brokerController;
+    private final String namesrvAddr;
+
+    private EmbeddedRocketMq() throws Exception {
+        // 与BrokerStartup相同，版本号为0时NameServer按旧协议注册，忽略broker上报的topic
+        System.setProperty(RemotingCommand.REMOTING_VERSION_KEY, Integer.toString(MQVersion.CURRENT_VERSION));
+        this.storeDir = Files.createTempDirectory("embedded-rocketmq").toFile();
+
+        final NamesrvConfig namesrvConfig = new NamesrvConfig();
+        namesrvConfig.setKvConfigPath(new File(storeDir, "namesrv/kvConfig.json").getPath());
+        namesrvConfig.setConfigStorePath(new File(storeDir, "namesrv/namesrv.properties").getPath());
+        final NettyServerConfig namesrvServerConfig = new NettyServerConfig();
+        namesrvServerConfig.setListenPort(freePort(0));
+        this.namesrvController = new NamesrvController(namesrvConfig, namesrvServerConfig);
+        this.namesrvAddr = "127.0.0.1:" + namesrvServerConfig.getListenPort();
+
+        final BrokerConfig brokerConfig = new BrokerConfig();
+        brokerConfig.setBrokerName(BROKER_NAME);
+        brokerConfig.setBrokerClusterName(CLUSTER_NAME);
+        brokerConfig.setBrokerIP1("127.0.0.1");
+        brokerConfig.setNamesrvAddr(namesrvAddr);
+        brokerConfig.setAutoCreateTopicEnable(true);
+        // 压测时发送请求排队较久，默认200毫秒会返回broker busy
+        brokerConfig.setWaitTimeMillsInSendQueue(1000);
+        // broker同时监听 listenPort - 2（VIP通道）和 listenPort + 1（HA）
+        final NettyServerConfig brokerServerConfig = new NettyServerConfig();
+        brokerServerConfig.setListenPort(freePort(2));
+        final MessageStoreConfig storeConfig = new MessageStoreConfig();
+        storeConfig.setStorePathRootDir(new File(storeDir, "store").getPath());
+        storeConfig.setStorePathCommitLog(new File(storeDir, "store/commitlog").getPath());
+        storeConfig.setHaListenPort(brokerServerConfig.getListenPort() + 1);
+        storeConfig.setMappedFileSizeCommitLog(16 * 1024 * 1024);
+        storeConfig.setMappedFileSizeConsumeQueue(30_000 * 20);
+        storeConfig.setMaxHashSlotNum(10_000);
+        storeConfig.setMaxIndexNum(40_000);
+        storeConfig.setDiskMaxUsedSpaceRatio(95);
+        this.brokerController = new BrokerController(brokerConfig, brokerServerConfig, new NettyClientConfig(), storeConfig);
+    }
+
+    /**
+     * 启动NameServer和broker
+     */
+    static EmbeddedRocketMq start() throws Exception {
+        final EmbeddedRocketMq o = new EmbeddedRocketMq();
+        if (!o.namesrvController.initialize()) {
+            o.close();
+            throw new IllegalStateException("cannot initialize embedded namesrv");
+        }
+        o.namesrvController.start();
+        if (!o.brokerController.initialize()) {
+            o.close();
+            throw new IllegalStateException("cannot initialize embedded broker");
+        }
+        o.brokerController.start();
+        log.info("embedded rocketmq started, namesrv {}", o.namesrvAddr);
+        return o;
+    }
+
+    String getNamesrvAddr() {
+        return namesrvAddr;
+    }
+
+    /**
+     * 创建topic并立即注册路由，消费者不必等待生产者自动创建
+     */
+    void createTopic(String topic, int queues) {
+        final TopicConfig topicConfig = new TopicConfig(topic, queues, queues, PermName.PERM_READ | PermName.PERM_WRITE);
+        brokerController.getTopicConfigManager().updateTopicConfig(topicConfig);
+        brokerController.registerBrokerAll(true, false, true);
+    }
+
+    @Override
+    public void close() {
+        brokerController.shutdown();
+        namesrvController.shutdown();
+        FileSystemUtils.deleteRecursively(storeDir);
+    }
+
+    /**
+     * @param below 还需要空闲的更小端口数
+     */
+    private static int freePort(int below) throws IOException {
+        for (int i = 0; i < 100; i++) {
+            final int port = ThreadLocalRandom.current().nextInt(20_000, 60_000);
+            if (isFree(port) && isFree(port + 1) && (below == 0 || isFree(port - below))) {
+                return port;
+            }
+        }
+        throw new IOException("no free port");
+    }
+
+    private static boolean isFree(int port) {
+        try (ServerSocket ignored = new ServerSocket(port)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 为Spring测试启动共享的RocketMQ，覆盖 <code>app.rocketmq.namesrvAddr</code>，在JVM退出时关闭
+     */
+    static class Initializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        private static EmbeddedRocketMq shared;
+
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            final EmbeddedRocketMq rocketMq = shared(context.getEnvironment().getProperty("app.rocketmq.topic"));
+            TestPropertyValues.of("app.rocketmq.namesrvAddr=" + rocketMq.getNamesrvAddr()).applyTo(context);
+        }
+
+        private static synchronized EmbeddedRocketMq shared(String topic) {
+            if (shared == null) {
+                try {
+                    shared = start();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                Runtime.getRuntime().addShutdownHook(new Thread(shared::close, "EmbeddedRocketMq_shutdown"));
+            }
+            if (topic != null) {
+                shared.createTopic(topic, 4);
+            }
+            return shared;
+        }
+    }
+}
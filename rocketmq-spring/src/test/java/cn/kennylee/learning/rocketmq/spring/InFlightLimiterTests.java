@@ -0,0 +1,46 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 未完成发送限制测试，不依赖RocketMQ服务。
+ */
+class InFlightLimiterTests {
+
+    @Test
+    public void testFailFast_messages() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(2, Integer.MAX_VALUE, BackpressurePolicy.FAIL_FAST, 0);
+        Assertions.assertTrue(limiter.tryAcquire(10));
+        Assertions.assertTrue(limiter.tryAcquire(10));
+        Assertions.assertFalse(limiter.tryAcquire(10));
+        Assertions.assertEquals(2, limiter.getInFlightMessages());
+
+        limiter.release(10);
+        Assertions.assertTrue(limiter.tryAcquire(10));
+    }
+
+    @Test
+    public void testFailFast_bytes() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(100, 1024, BackpressurePolicy.FAIL_FAST, 0);
+        Assertions.assertTrue(limiter.tryAcquire(1000));
+        Assertions.assertFalse(limiter.tryAcquire(100));
+        // 失败时不占用消息条数
+        Assertions.assertEquals(1, limiter.getInFlightMessages());
+        Assertions.assertEquals(1000, limiter.getInFlightBytes());
+
+        limiter.release(1000);
+        // 超过上限的单条消息按上限计数
+        Assertions.assertTrue(limiter.tryAcquire(4096));
+        Assertions.assertEquals(1024, limiter.getInFlightBytes());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(1, Integer.MAX_VALUE, BackpressurePolicy.TIMEOUT, 50);
+        Assertions.assertTrue(limiter.tryAcquire(10));
+        long start = System.currentTimeMillis();
+        Assertions.assertFalse(limiter.tryAcquire(10));
+        Assertions.assertTrue(System.currentTimeMillis() - start >= 40);
+    }
+}
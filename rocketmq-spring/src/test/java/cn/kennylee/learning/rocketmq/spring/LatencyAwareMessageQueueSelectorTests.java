@@ -0,0 +1,87 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按broker发送耗时选择队列测试，使用模拟时钟。
+ */
+class LatencyAwareMessageQueueSelectorTests {
+    private static final String TOPIC = "rocketmq-learning-spring";
+
+    private final AtomicLong now = new AtomicLong();
+    private final LatencyAwareMessageQueueSelector selector = new LatencyAwareMessageQueueSelector(1_000, 500, now::get);
+    private final Message message = new Message(TOPIC, "tags", "keys", new byte[0]);
+
+    private static List<MessageQueue> queues(String... brokerNames) {
+        List<MessageQueue> mqs = new ArrayList<>();
+        for (String brokerName : brokerNames) {
+            for (int i = 0; i < 4; i++) {
+                mqs.add(new MessageQueue(TOPIC, brokerName, i));
+            }
+        }
+        return mqs;
+    }
+
+    private int countSelected(List<MessageQueue> mqs, String brokerName, int times) {
+        int count = 0;
+        for (int i = 0; i < times; i++) {
+            final MessageQueue mq = selector.select(mqs, message, null);
+            if (mq.getBrokerName().equals(brokerName)) {
+                count++;
+            }
+            selector.onComplete(mq.getBrokerName(), mq.getBrokerName().equals("broker-b")
+                    ? TimeUnit.MILLISECONDS.toNanos(200) : TimeUnit.MILLISECONDS.toNanos(2), true);
+        }
+        return count;
+    }
+
+    @Test
+    public void testAvoidSlowBroker() throws Exception {
+        final List<MessageQueue> mqs = queues("broker-a", "broker-b");
+        selector.onComplete("broker-a", TimeUnit.MILLISECONDS.toNanos(2), true);
+        selector.onComplete("broker-b", TimeUnit.MILLISECONDS.toNanos(200), true);
+
+        // 两个broker都有记录时总是选择较快的broker
+        Assertions.assertEquals(0, countSelected(mqs, "broker-b", 100));
+    }
+
+    @Test
+    public void testFailurePenalty() throws Exception {
+        selector.onComplete("broker-a", TimeUnit.MILLISECONDS.toNanos(2), true);
+        selector.onComplete("broker-b", TimeUnit.MILLISECONDS.toNanos(1), false);
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(500), selector.cost("broker-b"), 1);
+        Assertions.assertTrue(selector.cost("broker-b") > selector.cost("broker-a"));
+    }
+
+    @Test
+    public void testDecay() throws Exception {
+        final List<MessageQueue> mqs = queues("broker-a", "broker-b");
+        selector.onComplete("broker-a", TimeUnit.MILLISECONDS.toNanos(2), true);
+        selector.onComplete("broker-b", TimeUnit.MILLISECONDS.toNanos(200), true);
+        Assertions.assertEquals(0, countSelected(mqs, "broker-b", 10));
+
+        // 慢broker的代价随时间衰减，一段时间后重新得到试探的流量
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        Assertions.assertTrue(countSelected(mqs, "broker-b", 10) > 0);
+    }
+
+    @Test
+    public void testPending() throws Exception {
+        selector.onComplete("broker-a", TimeUnit.MILLISECONDS.toNanos(2), true);
+        final double idle = selector.cost("broker-a");
+        final MessageQueue mq = selector.select(queues("broker-a"), message, null);
+        Assertions.assertEquals("broker-a", mq.getBrokerName());
+        // 未完成的发送增加代价
+        Assertions.assertEquals(idle * 2, selector.cost("broker-a"), 1);
+        selector.onComplete("broker-a", TimeUnit.MILLISECONDS.toNanos(2), true);
+        Assertions.assertEquals(idle, selector.cost("broker-a"), 1);
+    }
+}
@@ -0,0 +1,64 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地文件claim-check存储的测试。
+ */
+class LocalFileBlobStoreTests {
+
+    /**
+     * 测试按topic分目录保存，引用不能指向目录之外。
+     */
+    @Test
+    public void testPutAndGet(@TempDir Path directory) throws Exception {
+        final LocalFileBlobStore store = new LocalFileBlobStore(directory.resolve("blobs"));
+        final byte[] body = "Hello World".getBytes(RocketMqProducer.DEFAULT_CHARSET);
+        final String reference = store.put("%RETRY%group/../topic", body);
+        Assertions.assertTrue(reference.startsWith("%RETRY%group____topic/"));
+        Assertions.assertArrayEquals(body, store.get(reference));
+        Assertions.assertNotEquals(reference, store.put("topic", body));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.get("../outside"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.get("."));
+    }
+
+    /**
+     * 测试只删除过期的消息体。
+     */
+    @Test
+    public void testDeleteOlderThan(@TempDir Path directory) throws Exception {
+        final LocalFileBlobStore store = new LocalFileBlobStore(directory);
+        final byte[] body = new byte[16];
+        final String expired = store.put("topic", body);
+        final String current = store.put("topic", body);
+        Files.setLastModifiedTime(directory.resolve(expired),
+                FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(4)));
+
+        Assertions.assertEquals(1, store.deleteOlderThan(TimeUnit.DAYS.toMillis(3)));
+        Assertions.assertFalse(Files.exists(directory.resolve(expired)));
+        Assertions.assertArrayEquals(body, store.get(current));
+    }
+
+    /**
+     * 测试指定保留时间时后台定期删除过期的消息体，关闭后停止。
+     */
+    @Test
+    public void testScheduledCleanup(@TempDir Path directory) throws Exception {
+        try (LocalFileBlobStore store = new LocalFileBlobStore(directory, 200)) {
+            final String reference = store.put("topic", new byte[16]);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (Files.exists(directory.resolve(reference)) && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+            Assertions.assertFalse(Files.exists(directory.resolve(reference)));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息累积器的测试，使用不连接broker的producer记录每次发送的批次。
+ */
+class MessageAccumulatorTests {
+    private static final String TOPIC = "accumulator_test_topic";
+
+    private final RecordingProducer producer = new RecordingProducer();
+
+    @AfterEach
+    public void tearDown() {
+        producer.getDefaultMQProducerImpl().getAsyncSenderExecutor().shutdownNow();
+    }
+
+    /**
+     * 测试未达到批次大小时，等待lingerMs后发送。
+     */
+    @Test
+    public void testFlushOnLinger() throws Exception {
+        final MessageAccumulator accumulator = new MessageAccumulator(producer, 100, 1024 * 1024, ProducerMetrics.NOOP);
+        try {
+            final long start = System.nanoTime();
+            final CompletableFuture<SendResult> first = append(accumulator, "a");
+            final CompletableFuture<SendResult> second = append(accumulator, "b");
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+            Assertions.assertEquals(Collections.singletonList(2), producer.batches);
+        } finally {
+            accumulator.close();
+        }
+    }
+
+    /**
+     * 测试累积到batchSize字节后立即发送，不等待lingerMs。
+     */
+    @Test
+    public void testFlushOnBatchSize() throws Exception {
+        final Message message = message("a");
+        final int size = MessageBatchSplitter.estimateSize(message);
+        final MessageAccumulator accumulator = new MessageAccumulator(producer, 60_000, size * 3, ProducerMetrics.NOOP);
+        try {
+            final List<CompletableFuture<SendResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(append(accumulator, "a"));
+            }
+            for (CompletableFuture<SendResult> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            Assertions.assertEquals(Collections.singletonList(3), producer.batches);
+
+            // 超过batchSize的消息先发送已累积的批次
+            final CompletableFuture<SendResult> pending = append(accumulator, "b");
+            final CompletableFuture<SendResult> large = append(accumulator, new String(new char[size * 3], 0, size * 3));
+            pending.get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(Arrays.asList(3, 1), producer.batches);
+            Assertions.assertFalse(large.isDone());
+            accumulator.close();
+            large.get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(Arrays.asList(3, 1, 1), producer.batches);
+        } finally {
+            accumulator.close();
+        }
+    }
+
+    /**
+     * 测试批量发送的结果拆分为每条消息各自的msgId、offsetMsgId和队列位点。
+     */
+    @Test
+    public void testSplitBatchResult() throws Exception {
+        final MessageAccumulator accumulator = new MessageAccumulator(producer, 60_000, 1024 * 1024, ProducerMetrics.NOOP);
+        final List<CompletableFuture<SendResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(append(accumulator, "m" + i));
+        }
+        accumulator.close();
+        for (int i = 0; i < 3; i++) {
+            final SendResult result = futures.get(i).get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(SendStatus.SEND_OK, result.getSendStatus());
+            Assertions.assertEquals("id-" + i, result.getMsgId());
+            Assertions.assertEquals("offset-" + i, result.getOffsetMsgId());
+            Assertions.assertEquals(RecordingProducer.QUEUE_OFFSET + i, result.getQueueOffset());
+            Assertions.assertEquals(RecordingProducer.QUEUE, result.getMessageQueue());
+        }
+        Assertions.assertEquals(Collections.singletonList(3), producer.batches);
+    }
+
+    /**
+     * 测试关闭后追加的消息直接发送，回调不会丢失。
+     */
+    @Test
+    public void testAppendAfterClose() throws Exception {
+        final MessageAccumulator accumulator = new MessageAccumulator(producer, 60_000, 1024 * 1024, ProducerMetrics.NOOP);
+        final CompletableFuture<SendResult> before = append(accumulator, "a");
+        accumulator.close();
+        before.get(5, TimeUnit.SECONDS);
+
+        final CompletableFuture<SendResult> after = append(accumulator, "b");
+        Assertions.assertEquals(SendStatus.SEND_OK, after.get(5, TimeUnit.SECONDS).getSendStatus());
+        Assertions.assertEquals(Arrays.asList(1, 1), producer.batches);
+    }
+
+    private static CompletableFuture<SendResult> append(MessageAccumulator accumulator, String body) {
+        final CompletableFuture<SendResult> future = new CompletableFuture<>();
+        accumulator.append(message(body), new SendCallback() {
+            @Override
+            public void onSuccess(SendResult sendResult) {
+                future.complete(sendResult);
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static Message message(String body) {
+        return new Message(TOPIC, "test", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 记录每次发送的消息数量，批量发送的msgId按broker的格式以逗号拼接
+     */
+    private static final class RecordingProducer extends DefaultMQProducer {
+        private static final MessageQueue QUEUE = new MessageQueue(TOPIC, "broker-a", 0);
+        private static final long QUEUE_OFFSET = 100;
+
+        private final List<Integer> batches = new CopyOnWriteArrayList<>();
+
+        private RecordingProducer() {
+            super("accumulator_test_group");
+        }
+
+        @Override
+        public SendResult send(Message msg) {
+            batches.add(1);
+            return new SendResult(SendStatus.SEND_OK, "id-0", "offset-0", QUEUE, QUEUE_OFFSET);
+        }
+
+        @Override
+        public SendResult send(Collection<Message> msgs) {
+            batches.add(msgs.size());
+            final List<String> msgIds = new ArrayList<>();
+            final List<String> offsetMsgIds = new ArrayList<>();
+            for (int i = 0; i < msgs.size(); i++) {
+                msgIds.add("id-" + i);
+                offsetMsgIds.add("offset-" + i);
+            }
+            return new SendResult(SendStatus.SEND_OK, String.join(",", msgIds), String.join(",", offsetMsgIds),
+                    QUEUE, QUEUE_OFFSET);
+        }
+    }
+}
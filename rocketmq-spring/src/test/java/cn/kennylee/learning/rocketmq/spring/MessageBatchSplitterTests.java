@@ -0,0 +1,57 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.common.message.Message;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量消息拆分测试，不依赖RocketMQ服务。
+ */
+class MessageBatchSplitterTests {
+    private static final int SIZE_LIMIT = 4 * 1024 * 1024;
+
+    @Test
+    public void testSplit_underLimit() {
+        List<Message> messages = messages(100, 1024);
+        MessageBatchSplitter splitter = new MessageBatchSplitter(messages, SIZE_LIMIT);
+        Assertions.assertTrue(splitter.hasNext());
+        Assertions.assertEquals(100, splitter.next().size());
+        Assertions.assertFalse(splitter.hasNext());
+    }
+
+    @Test
+    public void testSplit_overLimit() {
+        List<Message> messages = messages(100, 100 * 1024);
+        MessageBatchSplitter splitter = new MessageBatchSplitter(messages, SIZE_LIMIT);
+        int total = 0;
+        while (splitter.hasNext()) {
+            List<Message> batch = splitter.next();
+            Assertions.assertTrue(batch.stream().mapToInt(MessageBatchSplitter::estimateSize).sum() <= SIZE_LIMIT);
+            total += batch.size();
+        }
+        Assertions.assertEquals(100, total);
+    }
+
+    @Test
+    public void testSplit_singleOversizedMessage() {
+        List<Message> messages = messages(3, SIZE_LIMIT);
+        MessageBatchSplitter splitter = new MessageBatchSplitter(messages, SIZE_LIMIT);
+        int batches = 0;
+        while (splitter.hasNext()) {
+            Assertions.assertEquals(1, splitter.next().size());
+            batches++;
+        }
+        Assertions.assertEquals(3, batches);
+    }
+
+    private static List<Message> messages(int count, int bodySize) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(new Message("rocketmq-learning-spring", RocketmqSpringApplication.TAGS_1, "key-" + i, new byte[bodySize]));
+        }
+        return messages;
+    }
+}
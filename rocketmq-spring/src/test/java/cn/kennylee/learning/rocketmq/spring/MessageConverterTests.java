@@ -0,0 +1,91 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import com.alibaba.fastjson.JSON;
+import org.apache.rocketmq.common.message.Message;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 消息体转换器测试，不依赖RocketMQ服务。
+ */
+class MessageConverterTests {
+    private static final List<MessageConverter> CONVERTERS = Arrays.asList(
+            new GsonMessageConverter(), new FastJsonMessageConverter(), new JacksonMessageConverter());
+
+    @Test
+    public void testFromBytes_bean() throws Exception {
+        final RocketmqSpringApplication.OrderInfo payload = RocketmqSpringApplication.OrderInfo.builder()
+                .key("key-1")
+                .content("Hello World@中文")
+                .build();
+        final byte[] body = JSON.toJSONString(payload).getBytes(RocketMqProducer.DEFAULT_CHARSET);
+
+        for (MessageConverter converter : CONVERTERS) {
+            Object result = converter.fromBytes(body, RocketmqSpringApplication.OrderInfo.class);
+            Assertions.assertTrue(result instanceof RocketmqSpringApplication.OrderInfo, converter.getClass().getName());
+            Assertions.assertEquals(payload.getContent(), ((RocketmqSpringApplication.OrderInfo) result).getContent());
+        }
+    }
+
+    /**
+     * 测试各转换器序列化后，由同一格式的其它转换器反序列化。
+     */
+    @Test
+    public void testToBytes_roundTrip() throws Exception {
+        final RocketmqSpringApplication.OrderInfo payload = RocketmqSpringApplication.OrderInfo.builder()
+                .key("key-1")
+                .content("Hello World@中文")
+                .build();
+        List<MessageConverter> converters = new ArrayList<>(CONVERTERS);
+        converters.add(new SmileMessageConverter());
+
+        for (MessageConverter encoder : converters) {
+            byte[] body = encoder.toBytes(payload);
+            for (MessageConverter decoder : converters) {
+                if (!encoder.getContentType().equals(decoder.getContentType())) {
+                    continue;
+                }
+                Object result = decoder.fromBytes(body, RocketmqSpringApplication.OrderInfo.class);
+                Assertions.assertEquals(payload.getContent(), ((RocketmqSpringApplication.OrderInfo) result).getContent(),
+                        encoder.getClass().getName() + " -> " + decoder.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * 测试生产者标记格式后，消费者按格式选择转换器。
+     */
+    @Test
+    public void testRegistry_contentType() throws Exception {
+        RocketMqProducer producer = new RocketMqProducer("producer-group", "localhost:9876", null,
+                RocketMqProducer.ProducerParams.builder().messageConverter(new SmileMessageConverter()).build());
+        final RocketmqSpringApplication.OrderInfo payload = RocketmqSpringApplication.OrderInfo.builder()
+                .key("key-1")
+                .content("Hello World")
+                .build();
+        Message message = producer.createMessage("rocketmq-learning-spring", RocketmqSpringApplication.TAGS_1, "key-1", payload);
+        Assertions.assertEquals(MessageConverterRegistry.APPLICATION_SMILE, MessageConverterRegistry.getContentType(message));
+
+        MessageConverter converter = MessageConverterRegistry.getDefault().get(MessageConverterRegistry.getContentType(message));
+        Assertions.assertNotNull(converter);
+        Object result = converter.fromBytes(message.getBody(), RocketmqSpringApplication.OrderInfo.class);
+        Assertions.assertEquals(payload.getContent(), ((RocketmqSpringApplication.OrderInfo) result).getContent());
+
+        Message text = producer.createMessage("rocketmq-learning-spring", RocketmqSpringApplication.TAGS_2, "key-2", "Hello World");
+        Assertions.assertEquals(MessageConverterRegistry.TEXT_PLAIN, MessageConverterRegistry.getContentType(text));
+    }
+
+    @Test
+    public void testFromBytes_invalid() {
+        final byte[] body = "{not json".getBytes(RocketMqProducer.DEFAULT_CHARSET);
+        for (MessageConverter converter : CONVERTERS) {
+            Assertions.assertThrows(Exception.class,
+                    () -> converter.fromBytes(body, RocketmqSpringApplication.OrderInfo.class),
+                    converter.getClass().getName());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 重试策略的测试。
+ */
+class RetryPolicyTests {
+
+    /**
+     * 测试本地重试的等待时间按指数增长，在 [一半, 全部] 之间抖动，不超过上限。
+     */
+    @Test
+    public void testBackoff() {
+        final RetryPolicy policy = RetryPolicy.builder()
+                .initialBackoffMillis(100)
+                .maxBackoffMillis(1000)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, policy.backoffMillis(0));
+            assertBetween(100, 200, policy.backoffMillis(1));
+            assertBetween(500, 1000, policy.backoffMillis(10));
+            assertBetween(500, 1000, policy.backoffMillis(Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * 测试延时级别随重新消费次数递增，不超过上限。
+     */
+    @Test
+    public void testDelayLevel() {
+        final RetryPolicy policy = RetryPolicy.builder()
+                .initialDelayLevel(3)
+                .maxDelayLevel(5)
+                .build();
+        Assertions.assertEquals(3, policy.delayLevel(0));
+        Assertions.assertEquals(4, policy.delayLevel(1));
+        Assertions.assertEquals(5, policy.delayLevel(16));
+    }
+
+    /**
+     * 测试按异常类型分类时检查cause，先匹配到的类型优先。
+     */
+    @Test
+    public void testByExceptionType() {
+        final Map<Class<? extends Throwable>, FailureType> types = new LinkedHashMap<>();
+        types.put(IllegalArgumentException.class, FailureType.POISON);
+        types.put(IOException.class, FailureType.NON_RETRYABLE);
+        final RetryPolicy policy = RetryPolicy.builder()
+                .classifier(RetryPolicy.byExceptionType(types))
+                .build();
+        Assertions.assertEquals(FailureType.POISON, policy.classify(new NumberFormatException()));
+        Assertions.assertEquals(FailureType.NON_RETRYABLE,
+                policy.classify(new UncheckedIOException(new IOException("connection reset"))));
+        Assertions.assertEquals(FailureType.RETRYABLE, policy.classify(new IllegalStateException()));
+        Assertions.assertEquals(FailureType.RETRYABLE, RetryPolicy.builder().build().classify(new IOException()));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        Assertions.assertTrue(actual >= min && actual <= max, actual + " not in [" + min + ", " + max + "]");
+    }
+}
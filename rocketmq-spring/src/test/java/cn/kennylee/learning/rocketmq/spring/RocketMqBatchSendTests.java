@@ -0,0 +1,107 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用进程内RocketMQ测试异步批量发送。
+ */
+class RocketMqBatchSendTests {
+    private static final String GROUP = "learning-spring-batch-send";
+    private static final int MB = 1024 * 1024;
+
+    private static EmbeddedRocketMq rocketMq;
+
+    @BeforeAll
+    static void startRocketMq() throws Exception {
+        rocketMq = EmbeddedRocketMq.start();
+    }
+
+    @AfterAll
+    static void stopRocketMq() {
+        if (rocketMq != null) {
+            rocketMq.close();
+        }
+    }
+
+    /**
+     * 测试全部批次发送完成后返回每个批次的结果。
+     */
+    @Test
+    public void testAsyncSendBatch() throws Exception {
+        rocketMq.createTopic("batch-send", 1);
+        final RocketMqProducer producer = new RocketMqProducer(GROUP, rocketMq.getNamesrvAddr(), null);
+        try {
+            producer.start();
+            final List<String> payloads = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                payloads.add("message-" + i);
+            }
+            final List<SendResult> results = producer.asyncSendBatch("batch-send", "batch", payloads)
+                    .get(30, TimeUnit.SECONDS);
+            Assertions.assertEquals(1, results.size());
+            Assertions.assertEquals(SendStatus.SEND_OK, results.get(0).getSendStatus());
+        } finally {
+            producer.stop();
+        }
+    }
+
+    /**
+     * 测试一个批次失败后不再发送之后的批次，异常说明已发送的消息数量和批次结果。
+     */
+    @Test
+    public void testAsyncSendBatch_stopAfterFailure() throws Exception {
+        rocketMq.createTopic("batch-send-failure", 1);
+        final RocketMqProducer producer = new RocketMqProducer(GROUP, rocketMq.getNamesrvAddr(), null);
+        // 客户端按8M拆分，broker只接受不超过4M的消息：第一个批次2M，第二个批次中7M的消息被拒绝
+        for (DefaultMQProducer o : producer.getProducers()) {
+            o.setMaxMessageSize(8 * MB);
+        }
+        try {
+            producer.start();
+            final CompletableFuture<List<SendResult>> future = producer.asyncSendBatch("batch-send-failure", "batch",
+                    Arrays.asList(body(MB), body(MB), body(7 * MB), body(1024)));
+            final ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> future.get(30, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause() instanceof PartialSendException, e.getCause().toString());
+            final PartialSendException partial = (PartialSendException) e.getCause();
+            Assertions.assertEquals(2, partial.getSentCount());
+            Assertions.assertEquals(1, partial.getSentResults().size());
+            Assertions.assertEquals(SendStatus.SEND_OK, partial.getSentResults().get(0).getSendStatus());
+        } finally {
+            producer.stop();
+        }
+    }
+
+    /**
+     * 测试producer未运行时以PartialSendException失败，没有消息被发送。
+     */
+    @Test
+    public void testAsyncSendBatch_notRunning() {
+        final RocketMqProducer producer = new RocketMqProducer(GROUP, rocketMq.getNamesrvAddr(), null);
+        final CompletableFuture<List<SendResult>> future = producer.asyncSendBatch("batch-send", "batch",
+                Arrays.asList("a", "b"));
+        Assertions.assertTrue(future.isCompletedExceptionally());
+        final ExecutionException e = Assertions.assertThrows(ExecutionException.class, future::get);
+        Assertions.assertEquals(0, ((PartialSendException) e.getCause()).getSentCount());
+        Assertions.assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+    }
+
+    private static String body(int size) {
+        final char[] chars = new char[size];
+        Arrays.fill(chars, 'a');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,147 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 直接调用容器注册的监听器，不依赖RocketMQ服务。
+ */
+class RocketMqConsumerContainerTests {
+    private static final String TOPIC = "rocketmq-learning-spring";
+    private static final String GROUP = "learning-spring-container-test";
+    private static final String NAMESRV_ADDR = "localhost:9876";
+
+    private static AbstractMessageHandler<String> handler(String tags, List<String> received) {
+        return new AbstractMessageHandler<String>(AbstractMessageHandler.ListenerParams.builder()
+                .topic(TOPIC)
+                .tags(tags)
+                .consumeMessageBatchMaxSize(32)
+                .build()) {
+            @Override
+            public void onMessage(@NonNull String message) {
+                if (message.startsWith("fail")) {
+                    throw new IllegalStateException(message);
+                }
+                received.add(message);
+            }
+        };
+    }
+
+    private static MessageExt message(String tags, String body) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(TOPIC);
+        messageExt.setTags(tags);
+        messageExt.setMsgId("msg-" + body);
+        messageExt.setBody(body.getBytes(RocketMqProducer.DEFAULT_CHARSET));
+        return messageExt;
+    }
+
+    private static MessageListenerConcurrently listener(DefaultMQPushConsumer consumer) {
+        return (MessageListenerConcurrently) consumer.getMessageListener();
+    }
+
+    /**
+     * 测试同组同topic的处理器合并为一个订阅，所有消费组共用instanceName。
+     */
+    @Test
+    public void testSharedSubscription() {
+        RocketMqConsumerContainer container = new RocketMqConsumerContainer(NAMESRV_ADDR, "container-test")
+                .register(GROUP, handler("TAG_A", new ArrayList<>()))
+                .register(GROUP, handler("TAG_B || TAG_C", new ArrayList<>()))
+                .register(GROUP + "-other", handler("TAG_A", new ArrayList<>()));
+
+        Assertions.assertEquals(2, container.getConsumers().size());
+        Assertions.assertEquals(3, container.getMembers().size());
+        final DefaultMQPushConsumer consumer = container.getConsumers().get(0);
+        Assertions.assertEquals("TAG_A || TAG_B || TAG_C", consumer.getDefaultMQPushConsumerImpl()
+                .getSubscriptionInner().get(TOPIC).getSubString());
+        for (DefaultMQPushConsumer o : container.getConsumers()) {
+            Assertions.assertEquals("container-test", o.getInstanceName());
+        }
+    }
+
+    /**
+     * 测试一批消息按tag分发，各处理器内保持顺序。
+     */
+    @Test
+    public void testDispatchByTag() {
+        final List<String> receivedA = new ArrayList<>();
+        final List<String> receivedB = new ArrayList<>();
+        final List<String> receivedOther = new ArrayList<>();
+        RocketMqConsumerContainer container = new RocketMqConsumerContainer(NAMESRV_ADDR, null)
+                .register(GROUP, handler("TAG_A", receivedA))
+                .register(GROUP, handler("TAG_B", receivedB))
+                .register(GROUP, handler("*", receivedOther));
+
+        List<MessageExt> msgs = Arrays.asList(message("TAG_A", "a1"), message("TAG_B", "b1"),
+                message("TAG_A", "a2"), message("TAG_X", "x1"));
+        ConsumeConcurrentlyContext context = RocketMqConsumerTests.newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS,
+                listener(container.getConsumers().get(0)).consumeMessage(msgs, context));
+        Assertions.assertEquals(Arrays.asList("a1", "a2"), receivedA);
+        Assertions.assertEquals(Collections.singletonList("b1"), receivedB);
+        Assertions.assertEquals(Collections.singletonList("x1"), receivedOther);
+        Assertions.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+    }
+
+    /**
+     * 测试一个处理器失败时，从最早失败的消息开始重新投递，延时级别取失败的处理器。
+     */
+    @Test
+    public void testPartialFailure() {
+        final List<String> receivedA = new ArrayList<>();
+        final List<String> receivedB = new ArrayList<>();
+        final AbstractMessageHandler<String> handlerB = handler("TAG_B", receivedB);
+        handlerB.setDelayLevelWhenNextConsume(5);
+        RocketMqConsumerContainer container = new RocketMqConsumerContainer(NAMESRV_ADDR, null)
+                .register(GROUP, handler("TAG_A", receivedA))
+                .register(GROUP, handlerB);
+
+        List<MessageExt> msgs = Arrays.asList(message("TAG_A", "a1"), message("TAG_B", "b1"),
+                message("TAG_B", "fail-b2"), message("TAG_A", "a2"));
+        ConsumeConcurrentlyContext context = RocketMqConsumerTests.newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS,
+                listener(container.getConsumers().get(0)).consumeMessage(msgs, context));
+        Assertions.assertEquals(1, context.getAckIndex());
+        Assertions.assertEquals(5, context.getDelayLevelWhenNextConsume());
+        Assertions.assertEquals(Arrays.asList("a1", "a2"), receivedA);
+        Assertions.assertEquals(Collections.singletonList("b1"), receivedB);
+    }
+
+    /**
+     * 测试同组同topic重复的tag、不同的消费模式。
+     */
+    @Test
+    public void testConflicts() {
+        RocketMqConsumerContainer container = new RocketMqConsumerContainer(NAMESRV_ADDR, null)
+                .register(GROUP, handler("TAG_A", new ArrayList<>()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> container.register(GROUP, handler("TAG_B || TAG_A", new ArrayList<>())));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> container.register(GROUP, new AbstractMessageHandler<String>(AbstractMessageHandler.ListenerParams.builder()
+                        .topic(TOPIC)
+                        .tags("TAG_C")
+                        .consumeMode(ConsumeMode.ORDERLY)
+                        .build()) {
+                    @Override
+                    public void onMessage(@NonNull String message) {
+                    }
+                }));
+        // 冲突的注册不影响已有的订阅
+        Assertions.assertEquals("TAG_A", container.getConsumers().get(0).getDefaultMQPushConsumerImpl()
+                .getSubscriptionInner().get(TOPIC).getSubString());
+        Assertions.assertEquals(Arrays.asList("TAG_A", "TAG_B"), RocketMqConsumerContainer.parseTags(" TAG_A||TAG_B "));
+        Assertions.assertEquals(Collections.singletonList("*"), RocketMqConsumerContainer.parseTags(null));
+    }
+}
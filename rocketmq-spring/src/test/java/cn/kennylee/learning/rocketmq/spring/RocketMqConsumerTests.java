@@ -0,0 +1,923 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import com.alibaba.fastjson.JSON;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.lang.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 直接调用消费者注册的监听器，不依赖RocketMQ服务。
+ */
+class RocketMqConsumerTests {
+    private static final String TOPIC = "rocketmq-learning-spring";
+    private static final String GROUP = "learning-spring-consumer-test";
+    private static final String NAMESRV_ADDR = "localhost:9876";
+
+    /**
+     * 测试批量消费全部成功。
+     */
+    @Test
+    public void testConsumeConcurrently_batch() {
+        final List<List<RocketmqSpringApplication.OrderInfo>> received = new ArrayList<>();
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public void onMessages(@NonNull List<RocketmqSpringApplication.OrderInfo> messages) {
+                        received.add(messages);
+                    }
+                });
+
+        List<MessageExt> msgs = orderMessages(5);
+        ConsumeConcurrentlyContext context = newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener(consumer).consumeMessage(msgs, context));
+        Assertions.assertEquals(1, received.size());
+        Assertions.assertEquals(5, received.get(0).size());
+        Assertions.assertEquals("key-4", received.get(0).get(4).getKey());
+        Assertions.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+    }
+
+    /**
+     * 测试批量消费部分失败时，只有失败及之后的消息重新投递。
+     */
+    @Test
+    public void testConsumeConcurrently_partialFailure() {
+        final List<String> received = new ArrayList<>();
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        if ("key-3".equals(message.getKey())) {
+                            throw new IllegalStateException("poison message");
+                        }
+                        received.add(message.getKey());
+                    }
+                });
+
+        List<MessageExt> msgs = orderMessages(5);
+        ConsumeConcurrentlyContext context = newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener(consumer).consumeMessage(msgs, context));
+        Assertions.assertEquals(2, context.getAckIndex());
+        Assertions.assertEquals(3, received.size());
+    }
+
+    /**
+     * 测试第一条消息失败时整批重新投递。
+     */
+    @Test
+    public void testConsumeConcurrently_reconsumeLater() {
+        RocketMqConsumer<String> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<String>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull String message) {
+                        throw new IllegalStateException("always fail");
+                    }
+                });
+
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.RECONSUME_LATER,
+                listener(consumer).consumeMessage(orderMessages(3), newContext()));
+    }
+
+    /**
+     * 测试消费指标。
+     */
+    @Test
+    public void testConsumeConcurrently_metrics() {
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        if ("key-3".equals(message.getKey())) {
+                            throw new IllegalStateException("poison message");
+                        }
+                    }
+                });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        consumer.setMetrics(new MicrometerConsumerMetrics(registry, GROUP, TOPIC, RocketmqSpringApplication.TAGS_1));
+
+        listener(consumer).consumeMessage(orderMessages(5), newContext());
+        Assertions.assertEquals(5, registry.get("rocketmq.consumer.deserialize").timer().count());
+        Assertions.assertEquals(1, registry.get("rocketmq.consumer.handle").timer().count());
+        Assertions.assertEquals(5, registry.get("rocketmq.consumer.batch.size").summary().totalAmount());
+        Assertions.assertEquals(2, registry.get("rocketmq.consumer.reconsume.later").counter().count());
+    }
+
+    /**
+     * 测试生产者按阈值压缩，消费者透明解压。
+     */
+    @Test
+    public void testConvertMessage_compression() {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("Hello World@中文;");
+        }
+        final RocketmqSpringApplication.OrderInfo payload = RocketmqSpringApplication.OrderInfo.builder()
+                .key("key-1")
+                .content(content.toString())
+                .build();
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                    }
+                });
+
+        for (CompressionType type : CompressionType.values()) {
+            RocketMqProducer producer = new RocketMqProducer("producer-group", NAMESRV_ADDR, null,
+                    RocketMqProducer.ProducerParams.builder()
+                            .compression(CompressionConfig.builder().type(type).threshold(1024).build())
+                            .build());
+            Message message = producer.createMessage(TOPIC, RocketmqSpringApplication.TAGS_1, "key-1", payload);
+            Assertions.assertEquals(type.name(), message.getProperty(CompressionType.PROPERTY_COMPRESSION));
+            Assertions.assertTrue(message.getBody().length < Integer.parseInt(
+                    message.getProperty(CompressionType.PROPERTY_UNCOMPRESSED_SIZE)));
+
+            MessageExt messageExt = new MessageExt();
+            messageExt.setTopic(TOPIC);
+            messageExt.setBody(message.getBody());
+            MessageAccessor.setProperties(messageExt, message.getProperties());
+            Assertions.assertEquals(payload.getContent(), consumer.convertMessage(messageExt).getContent(), type.name());
+
+            Message small = producer.createMessage(TOPIC, RocketmqSpringApplication.TAGS_1, "key-2", "Hello World");
+            Assertions.assertNull(small.getProperty(CompressionType.PROPERTY_COMPRESSION));
+        }
+    }
+
+    /**
+     * 测试压缩属性不合法或压缩数据损坏时以MalformedMessageException失败，不按声明的大小申请内存，默认重试策略视为毒消息。
+     */
+    @Test
+    public void testConvertMessage_malformedCompression() {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("Hello World@中文;");
+        }
+        RocketMqConsumer<String> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<String>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull String message) {
+                    }
+                });
+        RocketMqProducer producer = new RocketMqProducer("producer-group", NAMESRV_ADDR, null,
+                RocketMqProducer.ProducerParams.builder()
+                        .compression(CompressionConfig.builder().type(CompressionType.LZ4).threshold(1024).build())
+                        .build());
+        final Message message = producer.createMessage(TOPIC, RocketmqSpringApplication.TAGS_1, "key-1", content.toString());
+        Assertions.assertEquals(content.toString(), consumer.convertMessage(toMessageExt(message)));
+
+        for (String size : new String[]{"2000000000", "-1", "1", "abc", null}) {
+            final MessageExt messageExt = toMessageExt(message);
+            if (size == null) {
+                MessageAccessor.clearProperty(messageExt, CompressionType.PROPERTY_UNCOMPRESSED_SIZE);
+            } else {
+                MessageAccessor.putProperty(messageExt, CompressionType.PROPERTY_UNCOMPRESSED_SIZE, size);
+            }
+            final MalformedMessageException e = Assertions.assertThrows(MalformedMessageException.class,
+                    () -> consumer.convertMessage(messageExt), size);
+            Assertions.assertEquals(FailureType.POISON, RetryPolicy.builder().build().classify(e));
+        }
+
+        final MessageExt unknown = toMessageExt(message);
+        MessageAccessor.putProperty(unknown, CompressionType.PROPERTY_COMPRESSION, "GZIP");
+        Assertions.assertThrows(MalformedMessageException.class, () -> consumer.convertMessage(unknown));
+
+        final MessageExt corrupted = toMessageExt(message);
+        corrupted.setBody(Arrays.copyOf(message.getBody(), message.getBody().length / 2));
+        Assertions.assertThrows(MalformedMessageException.class, () -> consumer.convertMessage(corrupted));
+    }
+
+    /**
+     * 测试解压的字节数与声明的大小不一致（消息体截断或大小被篡改）时失败，不会把缓冲区中上一条消息的内容交给转换器。
+     */
+    @Test
+    public void testConvertMessage_decompressedSizeMismatch() {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("Hello World@中文;");
+        }
+        RocketMqConsumer<String> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<String>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull String message) {
+                    }
+                });
+        for (CompressionType type : CompressionType.values()) {
+            RocketMqProducer producer = new RocketMqProducer("producer-group", NAMESRV_ADDR, null,
+                    RocketMqProducer.ProducerParams.builder()
+                            .compression(CompressionConfig.builder().type(type).threshold(1024).build())
+                            .build());
+            final Message message = producer.createMessage(TOPIC, RocketmqSpringApplication.TAGS_1, "key-1", content.toString());
+            final int size = MessageDecompressor.getUncompressedSize(message);
+            // 先解压一次，缓冲区中留下完整的内容
+            Assertions.assertEquals(content.toString(), consumer.convertMessage(toMessageExt(message)));
+
+            final MessageExt tampered = toMessageExt(message);
+            MessageAccessor.putProperty(tampered, CompressionType.PROPERTY_UNCOMPRESSED_SIZE, String.valueOf(size + 16));
+            Assertions.assertThrows(MalformedMessageException.class, () -> consumer.convertMessage(tampered), type.name());
+
+            final MessageExt shrunk = toMessageExt(message);
+            MessageAccessor.putProperty(shrunk, CompressionType.PROPERTY_UNCOMPRESSED_SIZE, String.valueOf(size - 16));
+            Assertions.assertThrows(MalformedMessageException.class, () -> consumer.convertMessage(shrunk), type.name());
+
+            final MessageExt truncated = toMessageExt(message);
+            truncated.setBody(Arrays.copyOf(message.getBody(), message.getBody().length - 1));
+            Assertions.assertThrows(MalformedMessageException.class, () -> consumer.convertMessage(truncated), type.name());
+        }
+    }
+
+    /**
+     * 测试超过阈值的消息体（压缩后）写入存储，消费者按引用读取；声明为LazyPayload的处理器读取消息体时才访问存储。
+     */
+    @Test
+    public void testConvertMessage_claimCheck(@TempDir Path directory) throws Exception {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("Hello World@中文;");
+        }
+        final RocketmqSpringApplication.OrderInfo payload = RocketmqSpringApplication.OrderInfo.builder()
+                .key("key-1")
+                .content(content.toString())
+                .build();
+        final AtomicInteger reads = new AtomicInteger();
+        final LocalFileBlobStore fileStore = new LocalFileBlobStore(directory);
+        final BlobStore blobStore = new BlobStore() {
+            @Override
+            public String put(String topic, byte[] body) throws IOException {
+                return fileStore.put(topic, body);
+            }
+
+            @Override
+            public byte[] get(String reference) throws IOException {
+                reads.incrementAndGet();
+                return fileStore.get(reference);
+            }
+        };
+        RocketMqProducer producer = new RocketMqProducer("producer-group", NAMESRV_ADDR, null,
+                RocketMqProducer.ProducerParams.builder()
+                        .compression(CompressionConfig.builder().type(CompressionType.LZ4).threshold(1024).build())
+                        .blobStore(blobStore)
+                        .claimCheckThreshold(64)
+                        .build());
+        Message message = producer.createMessage(TOPIC, RocketmqSpringApplication.TAGS_1, "key-1", payload);
+        final String reference = message.getProperty(BlobStore.PROPERTY_CLAIM_CHECK);
+        Assertions.assertNotNull(reference);
+        Assertions.assertEquals(reference, new String(message.getBody(), RocketMqProducer.DEFAULT_CHARSET));
+        Assertions.assertEquals(CompressionType.LZ4.name(), message.getProperty(CompressionType.PROPERTY_COMPRESSION));
+        Assertions.assertNull(producer.createMessage(TOPIC, RocketmqSpringApplication.TAGS_1, "key-2", "Hello World")
+                .getProperty(BlobStore.PROPERTY_CLAIM_CHECK));
+
+        AbstractMessageHandler.ListenerParams params = batchParams();
+        params.setBlobStore(blobStore);
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(params) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                    }
+                });
+        Assertions.assertEquals(payload.getContent(), consumer.convertMessage(toMessageExt(message)).getContent());
+        Assertions.assertEquals(1, reads.get());
+
+        RocketMqConsumer<LazyPayload<RocketmqSpringApplication.OrderInfo>> lazyConsumer = new RocketMqConsumer<>(GROUP,
+                NAMESRV_ADDR, new AbstractMessageHandler<LazyPayload<RocketmqSpringApplication.OrderInfo>>(params) {
+            @Override
+            public void onMessage(@NonNull LazyPayload<RocketmqSpringApplication.OrderInfo> message) {
+            }
+        });
+        LazyPayload<RocketmqSpringApplication.OrderInfo> lazy = lazyConsumer.convertMessage(toMessageExt(message));
+        Assertions.assertTrue(lazy.isClaimCheck());
+        Assertions.assertEquals("key-1", lazy.getMessage().getKeys());
+        Assertions.assertEquals(1, reads.get());
+        Assertions.assertEquals(payload.getContent(), lazy.get().getContent());
+        Assertions.assertSame(lazy.get(), lazy.get());
+        Assertions.assertEquals(2, reads.get());
+
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> noStore = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                    }
+                });
+        Assertions.assertThrows(IllegalStateException.class, () -> noStore.convertMessage(toMessageExt(message)));
+    }
+
+    private static MessageExt toMessageExt(Message message) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(message.getTopic());
+        messageExt.setBody(message.getBody());
+        MessageAccessor.setProperties(messageExt, new HashMap<>(message.getProperties()));
+        return messageExt;
+    }
+
+    /**
+     * 测试处理器的线程池和拉取参数设置到consumer。
+     */
+    @Test
+    public void testListenerParams_pullAndThreads() {
+        RocketMqConsumer<String> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<String>(AbstractMessageHandler.ListenerParams.builder()
+                        .topic(TOPIC)
+                        .consumeThreadMin(4)
+                        .consumeThreadMax(16)
+                        .pullBatchSize(64)
+                        .pullInterval(100L)
+                        .build()) {
+                    @Override
+                    public void onMessage(@NonNull String message) {
+                    }
+                });
+        Assertions.assertEquals(4, consumer.getConsumer().getConsumeThreadMin());
+        Assertions.assertEquals(16, consumer.getConsumer().getConsumeThreadMax());
+        Assertions.assertEquals(64, consumer.getConsumer().getPullBatchSize());
+        Assertions.assertEquals(100L, consumer.getConsumer().getPullInterval());
+
+        AbstractMessageHandler<String> adaptive = new AbstractMessageHandler<String>(AbstractMessageHandler.ListenerParams.builder()
+                .topic(TOPIC)
+                .adaptiveConsumeThreads(true)
+                .build()) {
+            @Override
+            public void onMessage(@NonNull String message) {
+            }
+        };
+        Assertions.assertEquals(Runtime.getRuntime().availableProcessors(), adaptive.getConsumeThreadMin());
+        Assertions.assertTrue(adaptive.getConsumeThreadMax() > adaptive.getConsumeThreadMin());
+    }
+
+    /**
+     * 测试异步处理器一个批次的消息同时处理。
+     */
+    @Test
+    public void testConsumeConcurrently_async() {
+        final ExecutorService executor = Executors.newFixedThreadPool(5);
+        final CountDownLatch started = new CountDownLatch(5);
+        try {
+            RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                    new AbstractAsyncMessageHandler<RocketmqSpringApplication.OrderInfo>(batchParams()) {
+                        @Override
+                        public CompletionStage<Void> onMessageAsync(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                            return CompletableFuture.runAsync(() -> awaitAllStarted(started), executor);
+                        }
+                    });
+
+            ConsumeConcurrentlyContext context = newContext();
+            Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS,
+                    listener(consumer).consumeMessage(orderMessages(5), context));
+            Assertions.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 测试异步处理器并发消费时默认的批次大小大于1，顺序消费和指定的批次大小不变。
+     */
+    @Test
+    public void testAsyncHandler_defaultBatchSize() {
+        AbstractAsyncMessageHandler<String> concurrently = asyncHandler(AbstractMessageHandler.ListenerParams.builder()
+                .topic(TOPIC)
+                .build());
+        Assertions.assertEquals(AbstractAsyncMessageHandler.DEFAULT_ASYNC_BATCH_SIZE, concurrently.getConsumeMessageBatchMaxSize());
+        Assertions.assertEquals(AbstractAsyncMessageHandler.DEFAULT_ASYNC_BATCH_SIZE,
+                new RocketMqConsumer<>(GROUP, NAMESRV_ADDR, concurrently).getConsumer().getConsumeMessageBatchMaxSize());
+
+        Assertions.assertEquals(1, asyncHandler(AbstractMessageHandler.ListenerParams.builder()
+                .topic(TOPIC)
+                .consumeMode(ConsumeMode.ORDERLY)
+                .build()).getConsumeMessageBatchMaxSize());
+        Assertions.assertEquals(8, asyncHandler(AbstractMessageHandler.ListenerParams.builder()
+                .topic(TOPIC)
+                .consumeMessageBatchMaxSize(8)
+                .build()).getConsumeMessageBatchMaxSize());
+    }
+
+    /**
+     * 测试异步处理部分失败，失败的消息不能单独发回broker时，从第一条失败的消息开始重新投递。
+     */
+    @Test
+    public void testConsumeConcurrently_asyncFailure() {
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractAsyncMessageHandler<RocketmqSpringApplication.OrderInfo>(batchParams()) {
+                    @Override
+                    public CompletionStage<Void> onMessageAsync(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        if ("key-1".equals(message.getKey()) || "key-3".equals(message.getKey())) {
+                            return AbstractMessageHandler.failedFuture(new IllegalStateException("remote failure"));
+                        }
+                        return CompletableFuture.completedFuture(null);
+                    }
+                });
+
+        ConsumeConcurrentlyContext context = newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS,
+                listener(consumer).consumeMessage(orderMessages(5), context));
+        // consumer未启动，发回broker失败
+        Assertions.assertEquals(0, context.getAckIndex());
+    }
+
+    /**
+     * 测试异步处理超时未完成的消息按失败处理，其future被取消。
+     */
+    @Test
+    public void testConsumeConcurrently_asyncTimeout() {
+        final CompletableFuture<Void> pending = new CompletableFuture<>();
+        AbstractMessageHandler.ListenerParams params = batchParams();
+        params.setAsyncTimeoutMillis(50L);
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractAsyncMessageHandler<RocketmqSpringApplication.OrderInfo>(params) {
+                    @Override
+                    public CompletionStage<Void> onMessageAsync(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        return "key-2".equals(message.getKey()) ? pending : CompletableFuture.completedFuture(null);
+                    }
+                });
+
+        ConsumeConcurrentlyContext context = newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS,
+                listener(consumer).consumeMessage(orderMessages(5), context));
+        // consumer未启动，发回broker失败
+        Assertions.assertEquals(1, context.getAckIndex());
+        Assertions.assertTrue(pending.isCancelled());
+    }
+
+    /**
+     * 测试顺序消费时逐条处理的异步消息同样超时失败并被取消，不会一直阻塞队列。
+     */
+    @Test
+    public void testConsumeOrderly_asyncTimeout() {
+        final CompletableFuture<Void> pending = new CompletableFuture<>();
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractAsyncMessageHandler<RocketmqSpringApplication.OrderInfo>(AbstractMessageHandler.ListenerParams.builder()
+                        .topic(TOPIC)
+                        .consumeMode(ConsumeMode.ORDERLY)
+                        .asyncTimeoutMillis(50L)
+                        .build()) {
+                    @Override
+                    public CompletionStage<Void> onMessageAsync(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        return pending;
+                    }
+                });
+
+        MessageListenerOrderly listener = (MessageListenerOrderly) consumer.getConsumer().getMessageListener();
+        Assertions.assertEquals(ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT, listener.consumeMessage(orderMessages(1),
+                new ConsumeOrderlyContext(new MessageQueue(TOPIC, "broker-a", 0))));
+        Assertions.assertTrue(pending.isCancelled());
+    }
+
+    /**
+     * 测试设置handlerExecutor后同步处理器的消息并发处理。
+     */
+    @Test
+    public void testConsumeConcurrently_handlerExecutor() {
+        final ExecutorService executor = HandlerExecutors.virtualThreadPerTask()
+                .orElseGet(() -> Executors.newFixedThreadPool(5));
+        final CountDownLatch started = new CountDownLatch(5);
+        try {
+            AbstractMessageHandler.ListenerParams params = batchParams();
+            params.setHandlerExecutor(executor);
+            RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                    new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(params) {
+                        @Override
+                        public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                            awaitAllStarted(started);
+                        }
+                    });
+
+            ConsumeConcurrentlyContext context = newContext();
+            Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS,
+                    listener(consumer).consumeMessage(orderMessages(5), context));
+            Assertions.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 测试按key顺序消费：失败时整批稍后重新消费，已成功的消息跳过，同一key的后续消息等待失败的消息。
+     */
+    @Test
+    public void testConsumeKeyOrderly() {
+        final Map<String, List<String>> handled = new ConcurrentHashMap<>();
+        final AtomicBoolean failOnce = new AtomicBoolean(true);
+        RocketMqConsumer<MessageExt> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<MessageExt>(AbstractMessageHandler.ListenerParams.builder()
+                        .topic(TOPIC)
+                        .consumeMode(ConsumeMode.KEY_ORDERLY)
+                        .consumeThreadMax(4)
+                        .build()) {
+                    @Override
+                    public void onMessage(@NonNull MessageExt message) {
+                        if ("msg-3".equals(message.getMsgId()) && failOnce.compareAndSet(true, false)) {
+                            throw new IllegalStateException("fail once");
+                        }
+                        handled.computeIfAbsent(message.getKeys(), k -> Collections.synchronizedList(new ArrayList<>()))
+                                .add(message.getMsgId());
+                    }
+                });
+        Assertions.assertEquals(32, consumer.getConsumer().getConsumeMessageBatchMaxSize());
+
+        List<MessageExt> msgs = orderMessages(6);
+        String[] keys = {"a", "b", "a", "b", "c", "b"};
+        for (int i = 0; i < msgs.size(); i++) {
+            msgs.get(i).setKeys(keys[i]);
+        }
+        MessageListenerOrderly listener = (MessageListenerOrderly) consumer.getConsumer().getMessageListener();
+        ConsumeOrderlyContext context = new ConsumeOrderlyContext(new MessageQueue(TOPIC, "broker-a", 0));
+        try {
+            Assertions.assertEquals(ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT, listener.consumeMessage(msgs, context));
+            Assertions.assertEquals(Arrays.asList("msg-1"), handled.get("b"));
+            Assertions.assertEquals(Arrays.asList("msg-0", "msg-2"), handled.get("a"));
+
+            Assertions.assertEquals(ConsumeOrderlyStatus.SUCCESS, listener.consumeMessage(msgs, context));
+            Assertions.assertEquals(Arrays.asList("msg-1", "msg-3", "msg-5"), handled.get("b"));
+            Assertions.assertEquals(Arrays.asList("msg-0", "msg-2"), handled.get("a"));
+            Assertions.assertEquals(Arrays.asList("msg-4"), handled.get("c"));
+        } finally {
+            consumer.destroy();
+        }
+    }
+
+    /**
+     * 测试按key顺序消费失败的队列被重平衡给其它实例后，清除该队列已成功消息的记录。
+     */
+    @Test
+    public void testConsumeKeyOrderly_rebalancedQueue() {
+        final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        final AtomicBoolean failOnce = new AtomicBoolean(true);
+        RocketMqConsumer<MessageExt> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<MessageExt>(AbstractMessageHandler.ListenerParams.builder()
+                        .topic(TOPIC)
+                        .consumeMode(ConsumeMode.KEY_ORDERLY)
+                        .build()) {
+                    @Override
+                    public void onMessage(@NonNull MessageExt message) {
+                        if ("msg-0".equals(message.getMsgId()) && failOnce.compareAndSet(true, false)) {
+                            throw new IllegalStateException("fail once");
+                        }
+                        handled.add(message.getMsgId());
+                    }
+                });
+        MessageListenerOrderly listener = (MessageListenerOrderly) consumer.getConsumer().getMessageListener();
+        List<MessageExt> msgs = orderMessages(2);
+        msgs.get(0).setKeys("a");
+        msgs.get(1).setKeys("b");
+        List<MessageExt> others = orderMessages(1);
+        others.get(0).setMsgId("other-0");
+        try {
+            Assertions.assertEquals(ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT, listener.consumeMessage(msgs,
+                    new ConsumeOrderlyContext(new MessageQueue(TOPIC, "broker-a", 0))));
+            Assertions.assertEquals(Collections.singletonList("msg-1"), handled);
+
+            // 队列0已不在本实例的重平衡结果中（未启动的consumer没有任何队列），处理其它队列时清除
+            Assertions.assertEquals(ConsumeOrderlyStatus.SUCCESS, listener.consumeMessage(others,
+                    new ConsumeOrderlyContext(new MessageQueue(TOPIC, "broker-a", 1))));
+
+            // 队列0再次分配回来时整批重新处理
+            Assertions.assertEquals(ConsumeOrderlyStatus.SUCCESS, listener.consumeMessage(msgs,
+                    new ConsumeOrderlyContext(new MessageQueue(TOPIC, "broker-a", 0))));
+            Assertions.assertEquals(4, handled.size());
+            Assertions.assertEquals(2, Collections.frequency(handled, "msg-1"));
+        } finally {
+            consumer.destroy();
+        }
+    }
+
+    /**
+     * 测试开启去重后，部分失败重新投递的整批消息中已处理的不再调用处理器。
+     */
+    @Test
+    public void testConsumeConcurrently_deduplication() {
+        final List<String> handled = new ArrayList<>();
+        final AtomicBoolean failOnce = new AtomicBoolean(true);
+        AbstractMessageHandler.ListenerParams params = batchParams();
+        params.setDeduplicationCache(new DeduplicationCache(1024, 1, TimeUnit.HOURS));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(params) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        if ("key-3".equals(message.getKey()) && failOnce.compareAndSet(true, false)) {
+                            throw new IllegalStateException("fail once");
+                        }
+                        handled.add(message.getKey());
+                    }
+                });
+        consumer.setMetrics(new MicrometerConsumerMetrics(registry, GROUP, TOPIC, RocketmqSpringApplication.TAGS_1));
+
+        List<MessageExt> msgs = orderMessages(5);
+        ConsumeConcurrentlyContext context = newContext();
+        listener(consumer).consumeMessage(msgs, context);
+        Assertions.assertEquals(2, context.getAckIndex());
+
+        context = newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener(consumer).consumeMessage(msgs, context));
+        Assertions.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+        Assertions.assertEquals(Arrays.asList("key-0", "key-1", "key-2", "key-3", "key-4"), handled);
+        Assertions.assertEquals(3, registry.get("rocketmq.consumer.duplicate").counter().count());
+    }
+
+    /**
+     * 测试处理器直接读取消息体的流式视图，以及泛型参数化类型的转换。
+     */
+    @Test
+    public void testConvertMessage_streaming() throws Exception {
+        List<RocketmqSpringApplication.OrderInfo> orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            orders.add(RocketmqSpringApplication.OrderInfo.builder().key("key-" + i).content("Hello World@" + i).build());
+        }
+        MessageExt messageExt = orderMessages(1).get(0);
+        messageExt.setBody(JSON.toJSONString(orders).getBytes(RocketMqProducer.DEFAULT_CHARSET));
+
+        RocketMqConsumer<JsonReader> readerConsumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<JsonReader>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull JsonReader message) {
+                    }
+                });
+        final Gson gson = new Gson();
+        int count = 0;
+        try (JsonReader reader = readerConsumer.convertMessage(messageExt)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                RocketmqSpringApplication.OrderInfo order = gson.fromJson(reader, RocketmqSpringApplication.OrderInfo.class);
+                Assertions.assertEquals("key-" + count++, order.getKey());
+            }
+            reader.endArray();
+        }
+        Assertions.assertEquals(100, count);
+
+        RocketMqConsumer<InputStream> streamConsumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<InputStream>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull InputStream message) {
+                    }
+                });
+        Assertions.assertEquals(messageExt.getBody().length, streamConsumer.convertMessage(messageExt).available());
+
+        RocketMqConsumer<List<RocketmqSpringApplication.OrderInfo>> listConsumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<List<RocketmqSpringApplication.OrderInfo>>(batchParams()) {
+                    @Override
+                    public void onMessage(@NonNull List<RocketmqSpringApplication.OrderInfo> message) {
+                    }
+                });
+        List<RocketmqSpringApplication.OrderInfo> converted = listConsumer.convertMessage(messageExt);
+        Assertions.assertEquals(100, converted.size());
+        Assertions.assertEquals("key-99", converted.get(99).getKey());
+    }
+
+    /**
+     * 测试可重试的失败在本地重试成功，不发回broker。
+     */
+    @Test
+    public void testRetryPolicy_localRetry() {
+        final AtomicInteger calls = new AtomicInteger();
+        final RecordingPushConsumer pushConsumer = new RecordingPushConsumer();
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(pushConsumer,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(retryParams(RetryPolicy.builder()
+                        .initialBackoffMillis(1)
+                        .build())) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        if ("key-1".equals(message.getKey()) && calls.incrementAndGet() <= 2) {
+                            throw new IllegalStateException("downstream unavailable");
+                        }
+                    }
+                }, null, true);
+
+        ConsumeConcurrentlyContext context = newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS,
+                listener(consumer).consumeMessage(orderMessages(3), context));
+        Assertions.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertTrue(pushConsumer.sentBack.isEmpty());
+    }
+
+    /**
+     * 测试本地重试用完后逐条发回broker，延时级别随重新消费次数递增；毒消息直接进入死信队列。
+     */
+    @Test
+    public void testRetryPolicy_sendBackAndDeadLetter() {
+        final List<String> handled = new ArrayList<>();
+        final RecordingPushConsumer pushConsumer = new RecordingPushConsumer();
+        final Map<Class<? extends Throwable>, FailureType> types = new LinkedHashMap<>();
+        types.put(IllegalArgumentException.class, FailureType.POISON);
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(pushConsumer,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(retryParams(RetryPolicy.builder()
+                        .maxLocalRetries(1)
+                        .initialBackoffMillis(1)
+                        .initialDelayLevel(2)
+                        .classifier(RetryPolicy.byExceptionType(types))
+                        .build())) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        if ("key-1".equals(message.getKey())) {
+                            throw new IllegalArgumentException("invalid order");
+                        }
+                        if ("key-3".equals(message.getKey())) {
+                            throw new IllegalStateException("downstream unavailable");
+                        }
+                        handled.add(message.getKey());
+                    }
+                }, null, true);
+
+        List<MessageExt> msgs = orderMessages(5);
+        msgs.get(3).setReconsumeTimes(2);
+        ConsumeConcurrentlyContext context = newContext();
+        Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener(consumer).consumeMessage(msgs, context));
+        Assertions.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+        // key-2在key-1进入死信队列后处理；key-3本地重试用完，它和其后未处理的key-4发回broker
+        Assertions.assertEquals(Arrays.asList("key-0", "key-2"), handled);
+        Assertions.assertEquals(Arrays.asList("msg-1@-1", "msg-3@4", "msg-4@2"), pushConsumer.sentBack);
+    }
+
+    /**
+     * 测试顺序消费时毒消息进入死信队列，不挂起队列。
+     */
+    @Test
+    public void testRetryPolicy_orderlyPoison() {
+        final RecordingPushConsumer pushConsumer = new RecordingPushConsumer();
+        AbstractMessageHandler.ListenerParams params = retryParams(RetryPolicy.builder()
+                .classifier(e -> FailureType.POISON)
+                .build());
+        params.setConsumeMode(ConsumeMode.ORDERLY);
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(pushConsumer,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(params) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        if ("key-0".equals(message.getKey())) {
+                            throw new IllegalArgumentException("invalid order");
+                        }
+                    }
+                }, null, true);
+
+        ConsumeOrderlyContext context = new ConsumeOrderlyContext(new MessageQueue(TOPIC, "broker-a", 0));
+        Assertions.assertEquals(ConsumeOrderlyStatus.SUCCESS,
+                ((MessageListenerOrderly) pushConsumer.getMessageListener()).consumeMessage(orderMessages(2), context));
+        Assertions.assertEquals(Collections.singletonList("msg-0@-1"), pushConsumer.sentBack);
+    }
+
+    /**
+     * 测试限流时消费线程等待而不是失败，同时调用处理器的线程数不超过并发上限。
+     */
+    @Test
+    public void testThrottle() throws Exception {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final AtomicInteger handled = new AtomicInteger();
+        final AbstractMessageHandler.ListenerParams params = AbstractMessageHandler.ListenerParams.builder()
+                .topic(TOPIC)
+                .rateLimiter(new TokenBucketRateLimiter(200, 1))
+                .concurrencyLimiter(new AdaptiveConcurrencyLimiter(2, 2))
+                .build();
+        RocketMqConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqConsumer<>(GROUP, NAMESRV_ADDR,
+                new AbstractMessageHandler<RocketmqSpringApplication.OrderInfo>(params) {
+                    @Override
+                    public void onMessage(@NonNull RocketmqSpringApplication.OrderInfo message) {
+                        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(10);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            active.decrementAndGet();
+                        }
+                        handled.incrementAndGet();
+                    }
+                });
+
+        final int threads = 6;
+        final List<MessageExt> msgs = orderMessages(threads * 5);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start = System.nanoTime();
+        try {
+            final List<CompletableFuture<ConsumeConcurrentlyStatus>> futures = new ArrayList<>();
+            for (MessageExt msg : msgs) {
+                futures.add(CompletableFuture.supplyAsync(() -> listener(consumer)
+                        .consumeMessage(Collections.singletonList(msg), newContext()), executor));
+            }
+            for (CompletableFuture<ConsumeConcurrentlyStatus> future : futures) {
+                Assertions.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(msgs.size(), handled.get());
+        Assertions.assertTrue(maxActive.get() <= 2, "max active " + maxActive.get());
+        // 200条/秒，30条至少需要约145毫秒
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(140));
+    }
+
+    private static AbstractMessageHandler.ListenerParams retryParams(RetryPolicy retryPolicy) {
+        AbstractMessageHandler.ListenerParams params = batchParams();
+        params.setRetryPolicy(retryPolicy);
+        return params;
+    }
+
+    /**
+     * 记录发回broker的消息（msgId@delayLevel），不需要RocketMQ服务
+     */
+    private static final class RecordingPushConsumer extends DefaultMQPushConsumer {
+        private final List<String> sentBack = new ArrayList<>();
+
+        private RecordingPushConsumer() {
+            super(GROUP);
+        }
+
+        @Override
+        public void sendMessageBack(MessageExt msg, int delayLevel, String brokerName) {
+            sentBack.add(msg.getMsgId() + "@" + delayLevel);
+        }
+    }
+
+    private static void awaitAllStarted(CountDownLatch started) {
+        started.countDown();
+        try {
+            if (!started.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("messages not handled concurrently");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static AbstractMessageHandler.ListenerParams batchParams() {
+        return AbstractMessageHandler.ListenerParams.builder()
+                .topic(TOPIC)
+                .tags(RocketmqSpringApplication.TAGS_1)
+                .consumeMessageBatchMaxSize(32)
+                .build();
+    }
+
+    private static AbstractAsyncMessageHandler<String> asyncHandler(AbstractMessageHandler.ListenerParams params) {
+        return new AbstractAsyncMessageHandler<String>(params) {
+            @Override
+            public CompletionStage<Void> onMessageAsync(@NonNull String message) {
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+    }
+
+    static MessageListenerConcurrently listener(RocketMqConsumer<?> consumer) {
+        return (MessageListenerConcurrently) consumer.getConsumer().getMessageListener();
+    }
+
+    static ConsumeConcurrentlyContext newContext() {
+        return new ConsumeConcurrentlyContext(new MessageQueue(TOPIC, "broker-a", 0));
+    }
+
+    static List<MessageExt> orderMessages(int count) {
+        List<MessageExt> msgs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String key = "key-" + i;
+            RocketmqSpringApplication.OrderInfo payload = RocketmqSpringApplication.OrderInfo.builder()
+                    .key(key)
+                    .content("Hello World@" + i)
+                    .build();
+            MessageExt messageExt = new MessageExt();
+            messageExt.setTopic(TOPIC);
+            messageExt.setTags(RocketmqSpringApplication.TAGS_1);
+            messageExt.setKeys(key);
+            messageExt.setMsgId("msg-" + i);
+            messageExt.setQueueOffset(i);
+            messageExt.setBody(JSON.toJSONString(payload).getBytes(RocketMqProducer.DEFAULT_CHARSET));
+            msgs.add(messageExt);
+        }
+        return msgs;
+    }
+}
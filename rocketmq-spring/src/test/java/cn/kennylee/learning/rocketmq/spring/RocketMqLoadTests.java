@@ -0,0 +1,166 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 使用进程内RocketMQ的压测，输出吞吐（条/秒）和端到端延迟（发送前到处理时）的分位数。
+ * <p>
+ * 消息数量由系统属性 <code>rocketmq.load.messages</code> 指定，默认10000，前10%作为预热不计入延迟。
+ * 运行：./gradlew loadTest
+ */
+@Slf4j
+@Tag("load")
+class RocketMqLoadTests {
+    private static final String GROUP = "learning-spring-load";
+    private static final int MESSAGES = Integer.getInteger("rocketmq.load.messages", 10_000);
+    private static final int SENDERS = 4;
+    /**
+     * 异步发送未完成的上限，避免broker的发送队列积压
+     */
+    private static final int MAX_IN_FLIGHT = 256;
+    private static final long MAX_WAIT_SECONDS = 120;
+
+    private static EmbeddedRocketMq rocketMq;
+
+    @BeforeAll
+    static void startRocketMq() throws Exception {
+        rocketMq = EmbeddedRocketMq.start();
+    }
+
+    @AfterAll
+    static void stopRocketMq() {
+        if (rocketMq != null) {
+            rocketMq.close();
+        }
+    }
+
+    @Test
+    public void testSyncSend() throws Exception {
+        final String topic = "load-sync";
+        run(topic, producer -> {
+            final ExecutorService senders = Executors.newFixedThreadPool(SENDERS);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int s = 0; s < SENDERS; s++) {
+                    final int sender = s;
+                    futures.add(senders.submit(() -> {
+                        for (int i = sender; i < MESSAGES; i += SENDERS) {
+                            final SendResult result = producer.syncSend(topic, "load", "key-" + i, body(i));
+                            Assertions.assertEquals(SendStatus.SEND_OK, result.getSendStatus());
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                senders.shutdown();
+            }
+        });
+    }
+
+    @Test
+    public void testAsyncSend() throws Exception {
+        final String topic = "load-async";
+        run(topic, producer -> {
+            final CompletableFuture<?>[] futures = new CompletableFuture<?>[MESSAGES];
+            for (int i = 0; i < MESSAGES; i++) {
+                futures[i] = producer.sendAsync(topic, "load", "key-" + i, body(i));
+            }
+            CompletableFuture.allOf(futures).get(MAX_WAIT_SECONDS, TimeUnit.SECONDS);
+        });
+    }
+
+    private static String body(int i) {
+        return i + ":" + System.nanoTime();
+    }
+
+    private void run(String topic, Sender sender) throws Exception {
+        rocketMq.createTopic(topic, 8);
+        final CountDownLatch received = new CountDownLatch(MESSAGES);
+        final AtomicLongArray latencies = new AtomicLongArray(MESSAGES);
+        final RocketMqConsumer<MessageExt> consumer = new RocketMqConsumer<>(GROUP + "-" + topic,
+                rocketMq.getNamesrvAddr(), new AbstractMessageHandler<MessageExt>(
+                AbstractMessageHandler.ListenerParams.builder().topic(topic).tags("load").build()) {
+            @Override
+            public void onMessage(@NonNull MessageExt message) {
+                final long now = System.nanoTime();
+                final String[] body = new String(message.getBody(), RocketMqProducer.DEFAULT_CHARSET).split(":");
+                // 重复投递只记录第一次
+                if (latencies.compareAndSet(Integer.parseInt(body[0]), 0, now - Long.parseLong(body[1]))) {
+                    received.countDown();
+                }
+            }
+        });
+        // 消费者重平衡完成前发送的消息也要消费到
+        consumer.getConsumer().setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
+        final RocketMqProducer producer = new RocketMqProducer(GROUP, rocketMq.getNamesrvAddr(), null,
+                RocketMqProducer.ProducerParams.builder()
+                        .maxInFlightMessages(MAX_IN_FLIGHT)
+                        .backpressurePolicy(BackpressurePolicy.BLOCK)
+                        .build());
+        try {
+            consumer.start();
+            producer.start();
+
+            final long start = System.nanoTime();
+            sender.send(producer);
+            final long sent = System.nanoTime();
+            Assertions.assertTrue(received.await(MAX_WAIT_SECONDS, TimeUnit.SECONDS),
+                    "received " + (MESSAGES - received.getCount()) + " of " + MESSAGES);
+            final long end = System.nanoTime();
+
+            final long[] measured = new long[MESSAGES - MESSAGES / 10];
+            for (int i = 0; i < measured.length; i++) {
+                measured[i] = latencies.get(MESSAGES / 10 + i);
+            }
+            Arrays.sort(measured);
+            log.info("{}: {} messages, send {} msgs/s, end-to-end {} msgs/s, latency ms p50 {} p95 {} p99 {} max {}",
+                    topic, MESSAGES, rate(MESSAGES, sent - start), rate(MESSAGES, end - start),
+                    millis(percentile(measured, 0.50)), millis(percentile(measured, 0.95)),
+                    millis(percentile(measured, 0.99)), millis(measured[measured.length - 1]));
+        } finally {
+            producer.destroy();
+            consumer.destroy();
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static long rate(int messages, long nanos) {
+        return messages * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    @FunctionalInterface
+    private interface Sender {
+        void send(RocketMqProducer producer) throws Exception;
+    }
+}
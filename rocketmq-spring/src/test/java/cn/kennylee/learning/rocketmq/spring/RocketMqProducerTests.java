@@ -0,0 +1,78 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 多producer（stripe）配置测试，producer不启动，不依赖RocketMQ服务。
+ */
+class RocketMqProducerTests {
+    private static final String GROUP = "learning-spring-producer-test";
+    private static final String NAMESRV_ADDR = "localhost:9876";
+
+    private static RocketMqProducer producer(int stripes, StripeStrategy strategy) {
+        return new RocketMqProducer(GROUP, NAMESRV_ADDR, "stripe-test", RocketMqProducer.ProducerParams.builder()
+                .stripes(stripes)
+                .stripeStrategy(strategy)
+                .build());
+    }
+
+    @Test
+    public void testSingleProducer() throws Exception {
+        RocketMqProducer producer = new RocketMqProducer(GROUP, NAMESRV_ADDR, "stripe-test",
+                RocketMqProducer.ProducerParams.builder().build());
+        Assertions.assertEquals(1, producer.getProducers().size());
+        Assertions.assertSame(producer.getProducer(), producer.getProducers().get(0));
+        // 未开启时保持原instanceName
+        Assertions.assertEquals("stripe-test", producer.getProducer().getInstanceName());
+        Assertions.assertEquals(0, producer.selectStripe("key-1"));
+        Assertions.assertEquals(0, producer.selectStripe(null));
+    }
+
+    @Test
+    public void testDistinctInstanceNames() throws Exception {
+        RocketMqProducer producer = producer(4, null);
+        Set<String> instanceNames = producer.getProducers().stream()
+                .map(DefaultMQProducer::getInstanceName).collect(Collectors.toSet());
+        Assertions.assertEquals(4, instanceNames.size());
+        Assertions.assertSame(producer.getProducer(), producer.getProducers().get(0));
+    }
+
+    @Test
+    public void testKeyHash() throws Exception {
+        RocketMqProducer producer = producer(4, StripeStrategy.KEY_HASH);
+        Set<Integer> stripes = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            final int stripe = producer.selectStripe("key-" + i);
+            // 同一key总是选择同一个producer
+            Assertions.assertEquals(stripe, producer.selectStripe("key-" + i));
+            stripes.add(stripe);
+        }
+        Assertions.assertEquals(4, stripes.size());
+
+        // 没有key时轮流
+        Set<Integer> keyless = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            keyless.add(producer.selectStripe(null));
+        }
+        Assertions.assertEquals(4, keyless.size());
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        RocketMqProducer producer = producer(3, StripeStrategy.ROUND_ROBIN);
+        final int first = producer.selectStripe("key-1");
+        Assertions.assertEquals((first + 1) % 3, producer.selectStripe("key-1"));
+        Assertions.assertEquals((first + 2) % 3, producer.selectStripe("key-1"));
+    }
+
+    @Test
+    public void testInvalidStripes() throws Exception {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> producer(0, null));
+    }
+}
@@ -0,0 +1,243 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.consumer.MessageQueueListener;
+import org.apache.rocketmq.client.consumer.store.ReadOffsetType;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 拉模式消费者的测试，订阅规则不依赖RocketMQ服务，位点提交使用进程内RocketMQ。
+ */
+class RocketMqPullConsumerTests {
+    private static final String TOPIC = "pull-commit";
+    private static final int MESSAGES = 10;
+
+    private static EmbeddedRocketMq rocketMq;
+
+    @BeforeAll
+    static void startRocketMq() throws Exception {
+        rocketMq = EmbeddedRocketMq.start();
+    }
+
+    @AfterAll
+    static void stopRocketMq() {
+        if (rocketMq != null) {
+            rocketMq.close();
+        }
+    }
+
+    /**
+     * 测试只允许一个订阅者，拉取参数设置到客户端。
+     */
+    @Test
+    public void testSubscribe_singleSubscriber() {
+        RocketMqPullConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqPullConsumer<>(
+                "learning-spring-pull-test", "localhost:9876", null,
+                RocketMqPullConsumer.PullParams.builder()
+                        .topic("rocketmq-learning-spring")
+                        .pullBatchSize(16)
+                        .build(),
+                RocketmqSpringApplication.OrderInfo.class);
+        Assertions.assertFalse(consumer.getConsumer().isAutoCommit());
+        Assertions.assertEquals(16, consumer.getConsumer().getPullBatchSize());
+        Assertions.assertEquals(64, consumer.getConsumer().getPullThresholdForQueue());
+
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+        consumer.subscribe(first);
+        consumer.subscribe(second);
+        Assertions.assertNotNull(first.subscription);
+        Assertions.assertTrue(first.errors.isEmpty());
+        Assertions.assertEquals(1, second.errors.size());
+        Assertions.assertTrue(second.errors.get(0) instanceof IllegalStateException);
+    }
+
+    /**
+     * 测试异步乱序确认时只提交连续确认的位点，转换失败的消息跳过，不阻塞之后的消息。
+     */
+    @Test
+    public void testCommit_contiguousAcked() throws Exception {
+        rocketMq.createTopic(TOPIC, 1);
+        final RocketMqProducer producer = new RocketMqProducer("learning-spring-pull-producer", rocketMq.getNamesrvAddr(), null);
+        try {
+            producer.start();
+            for (int i = 0; i < MESSAGES; i++) {
+                if (i == MESSAGES / 2) {
+                    Assertions.assertEquals(SendStatus.SEND_OK,
+                            producer.syncSend(TOPIC, "pull", "malformed", "not a json").getSendStatus());
+                }
+                Assertions.assertEquals(SendStatus.SEND_OK, producer.syncSend(TOPIC, "pull", "key-" + i,
+                        "{\"key\":\"key-" + i + "\",\"content\":\"content-" + i + "\"}").getSendStatus());
+            }
+        } finally {
+            producer.stop();
+        }
+
+        final RocketMqPullConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqPullConsumer<>(
+                "learning-spring-pull-commit", rocketMq.getNamesrvAddr(), null,
+                RocketMqPullConsumer.PullParams.builder()
+                        .topic(TOPIC)
+                        .pollTimeoutMillis(100L)
+                        .build(),
+                RocketmqSpringApplication.OrderInfo.class);
+        final HoldingSubscriber subscriber = new HoldingSubscriber();
+        try {
+            consumer.afterPropertiesSet();
+            consumer.subscribe(subscriber);
+            subscriber.subscription.request(Long.MAX_VALUE);
+            Assertions.assertTrue(await(() -> subscriber.deliveries.size() == MESSAGES));
+            Assertions.assertTrue(subscriber.errors.isEmpty());
+
+            final MessageQueue mq = consumer.getConsumer().fetchMessageQueues(TOPIC).iterator().next();
+            final long first = subscriber.deliveries.get(0).getMessageExt().getQueueOffset();
+            // 第一条之后的消息都确认，第一条未确认时不能提交
+            for (int i = MESSAGES - 1; i > 0; i--) {
+                subscriber.deliveries.get(i).ack();
+            }
+            Assertions.assertEquals(1, consumer.getUnackedCount());
+            TimeUnit.MILLISECONDS.sleep(500);
+            Assertions.assertTrue(consumer.getConsumer().committed(mq) <= first);
+
+            subscriber.deliveries.get(0).ack();
+            final long end = subscriber.deliveries.get(MESSAGES - 1).getMessageExt().getQueueOffset() + 1;
+            Assertions.assertTrue(await(() -> committed(consumer, mq) == end));
+        } finally {
+            consumer.destroy();
+        }
+    }
+
+    /**
+     * 测试队列重平衡到其它实例后，迟到的确认不再提交该队列的位点，也不会把位点写回offsetStore。
+     */
+    @Test
+    public void testCommit_rebalanced() throws Exception {
+        final String topic = "pull-rebalance";
+        rocketMq.createTopic(topic, 1);
+        final RocketMqProducer producer = new RocketMqProducer("learning-spring-pull-producer", rocketMq.getNamesrvAddr(), null);
+        try {
+            producer.start();
+            for (int i = 0; i < 4; i++) {
+                Assertions.assertEquals(SendStatus.SEND_OK, producer.syncSend(topic, "pull", "key-" + i,
+                        "{\"key\":\"key-" + i + "\",\"content\":\"content-" + i + "\"}").getSendStatus());
+            }
+        } finally {
+            producer.stop();
+        }
+
+        final RocketMqPullConsumer<RocketmqSpringApplication.OrderInfo> consumer = new RocketMqPullConsumer<>(
+                "learning-spring-pull-rebalance", rocketMq.getNamesrvAddr(), null,
+                RocketMqPullConsumer.PullParams.builder()
+                        .topic(topic)
+                        .pollTimeoutMillis(100L)
+                        .build(),
+                RocketmqSpringApplication.OrderInfo.class);
+        final HoldingSubscriber subscriber = new HoldingSubscriber();
+        try {
+            consumer.afterPropertiesSet();
+            consumer.subscribe(subscriber);
+            subscriber.subscription.request(Long.MAX_VALUE);
+            Assertions.assertTrue(await(() -> subscriber.deliveries.size() == 4));
+            final MessageQueue mq = consumer.getConsumer().fetchMessageQueues(topic).iterator().next();
+            final long second = subscriber.deliveries.get(1).getMessageExt().getQueueOffset();
+            subscriber.deliveries.get(0).ack();
+            Assertions.assertTrue(await(() -> committed(consumer, mq) == second));
+
+            // 模拟重平衡：队列分配给了其它实例
+            final MessageQueueListener listener = consumer.getConsumer().getMessageQueueListener();
+            listener.messageQueueChanged(topic, Collections.singleton(mq), Collections.emptySet());
+            for (int i = 1; i < 4; i++) {
+                subscriber.deliveries.get(i).ack();
+            }
+            TimeUnit.MILLISECONDS.sleep(500);
+            // committed()从broker读取时会写回内存，先检查内存中没有该队列的位点
+            Assertions.assertEquals(-1, consumer.getConsumer().getOffsetStore().readOffset(mq, ReadOffsetType.READ_FROM_MEMORY));
+            Assertions.assertEquals(second, committed(consumer, mq));
+
+        } finally {
+            consumer.destroy();
+        }
+    }
+
+    private static long committed(RocketMqPullConsumer<?> consumer, MessageQueue mq) {
+        try {
+            return consumer.getConsumer().committed(mq);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return condition.getAsBoolean();
+    }
+
+    /**
+     * 保存收到的消息，由测试决定确认的顺序
+     */
+    private static class HoldingSubscriber implements Subscriber<RocketMqPullConsumer.Delivery<RocketmqSpringApplication.OrderInfo>> {
+        private volatile Subscription subscription;
+        private final List<RocketMqPullConsumer.Delivery<RocketmqSpringApplication.OrderInfo>> deliveries = new CopyOnWriteArrayList<>();
+        private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            this.subscription = s;
+        }
+
+        @Override
+        public void onNext(RocketMqPullConsumer.Delivery<RocketmqSpringApplication.OrderInfo> delivery) {
+            deliveries.add(delivery);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            errors.add(t);
+        }
+
+        @Override
+        public void onComplete() {
+            // do nothing
+        }
+    }
+
+    private static class RecordingSubscriber implements Subscriber<RocketMqPullConsumer.Delivery<RocketmqSpringApplication.OrderInfo>> {
+        private Subscription subscription;
+        private final List<Throwable> errors = new ArrayList<>();
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            this.subscription = s;
+        }
+
+        @Override
+        public void onNext(RocketMqPullConsumer.Delivery<RocketmqSpringApplication.OrderInfo> delivery) {
+            delivery.ack();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            errors.add(t);
+        }
+
+        @Override
+        public void onComplete() {
+            // do nothing
+        }
+    }
+}
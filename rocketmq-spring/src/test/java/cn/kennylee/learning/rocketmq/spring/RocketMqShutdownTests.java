@@ -0,0 +1,238 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 使用进程内RocketMQ测试关闭时的排空。
+ */
+class RocketMqShutdownTests {
+    private static final String GROUP = "learning-spring-shutdown";
+    private static final int MESSAGES = 10;
+
+    private static EmbeddedRocketMq rocketMq;
+
+    @BeforeAll
+    static void startRocketMq() throws Exception {
+        rocketMq = EmbeddedRocketMq.start();
+    }
+
+    @AfterAll
+    static void stopRocketMq() {
+        if (rocketMq != null) {
+            rocketMq.close();
+        }
+    }
+
+    /**
+     * 测试关闭时等待已拉取的消息处理完成。
+     */
+    @Test
+    public void testConsumerDrain() throws Exception {
+        final DrainMetrics metrics = new DrainMetrics();
+        final AtomicInteger handled = new AtomicInteger();
+        final RocketMqConsumer<String> consumer = slowConsumer("shutdown-drain", 50, 30_000, handled);
+        consumer.setMetrics(metrics);
+        try {
+            sendAndStart("shutdown-drain", consumer, handled);
+        } finally {
+            consumer.stop();
+            consumer.destroy();
+        }
+        Assertions.assertEquals(MESSAGES, handled.get());
+        Assertions.assertEquals(0, metrics.abandoned.get());
+        Assertions.assertEquals(1, metrics.drains.get());
+    }
+
+    /**
+     * 测试超过排空时间时放弃剩余消息并记录数量。
+     */
+    @Test
+    public void testConsumerDrainTimeout() throws Exception {
+        final DrainMetrics metrics = new DrainMetrics();
+        final AtomicInteger handled = new AtomicInteger();
+        final RocketMqConsumer<String> consumer = slowConsumer("shutdown-timeout", 500, 100, handled);
+        consumer.setMetrics(metrics);
+        try {
+            sendAndStart("shutdown-timeout", consumer, handled);
+        } finally {
+            consumer.stop();
+            consumer.destroy();
+        }
+        Assertions.assertTrue(handled.get() < MESSAGES);
+        Assertions.assertTrue(metrics.abandoned.get() > 0);
+    }
+
+    /**
+     * 测试关闭时发送累积的消息，并等待异步发送完成。
+     */
+    @Test
+    public void testProducerDrain() throws Exception {
+        rocketMq.createTopic("shutdown-producer", 4);
+        final DrainProducerMetrics metrics = new DrainProducerMetrics();
+        final RocketMqProducer producer = new RocketMqProducer(GROUP, rocketMq.getNamesrvAddr(), null,
+                RocketMqProducer.ProducerParams.builder()
+                        .lingerMs(60_000L)
+                        .build());
+        producer.setMetrics(metrics);
+        final List<CompletableFuture<SendResult>> futures = new ArrayList<>();
+        try {
+            producer.start();
+            for (int i = 0; i < MESSAGES; i++) {
+                futures.add(producer.sendAsync("shutdown-producer", "drain", "key-" + i, "message-" + i));
+            }
+            // 累积时间很长，关闭前不会发送
+            Assertions.assertFalse(futures.get(0).isDone());
+        } finally {
+            producer.stop();
+        }
+        for (CompletableFuture<SendResult> future : futures) {
+            Assertions.assertTrue(future.isDone());
+            Assertions.assertEquals(SendStatus.SEND_OK, future.get().getSendStatus());
+        }
+        Assertions.assertEquals(0, metrics.abandoned.get());
+        Assertions.assertEquals(1, metrics.drains.get());
+
+        // 停止后的异步发送立即失败，不会留在累积器中
+        final CompletableFuture<SendResult> rejected = producer.sendAsync("shutdown-producer", "drain", "key", "message");
+        Assertions.assertTrue(rejected.isCompletedExceptionally());
+    }
+
+    private static RocketMqConsumer<String> slowConsumer(String topic, long handleMillis, long drainTimeoutMillis,
+                                                       AtomicInteger handled) {
+        final RocketMqConsumer<String> consumer = new RocketMqConsumer<>(GROUP + "-" + topic, rocketMq.getNamesrvAddr(),
+                new AbstractMessageHandler<String>(AbstractMessageHandler.ListenerParams.builder()
+                        .topic(topic)
+                        .consumeThreadMin(1)
+                        .consumeThreadMax(1)
+                        .drainTimeoutMillis(drainTimeoutMillis)
+                        .build()) {
+                    @Override
+                    public void onMessage(@NonNull String message) {
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(handleMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException(e);
+                        }
+                        handled.incrementAndGet();
+                    }
+                });
+        consumer.getConsumer().setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
+        return consumer;
+    }
+
+    /**
+     * 发送后启动消费者，等到第一条消息处理完成，此时消息都已拉取到本地
+     */
+    private static void sendAndStart(String topic, RocketMqConsumer<String> consumer, AtomicInteger handled)
+            throws Exception {
+        rocketMq.createTopic(topic, 1);
+        final RocketMqProducer producer = new RocketMqProducer(GROUP, rocketMq.getNamesrvAddr(), null);
+        try {
+            producer.start();
+            for (int i = 0; i < MESSAGES; i++) {
+                Assertions.assertEquals(SendStatus.SEND_OK,
+                        producer.syncSend(topic, "drain", "key-" + i, "message-" + i).getSendStatus());
+            }
+        } finally {
+            producer.stop();
+        }
+        consumer.start();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (handled.get() == 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        Assertions.assertTrue(handled.get() > 0);
+    }
+
+    private static final class DrainMetrics implements ConsumerMetrics {
+        private final AtomicInteger drains = new AtomicInteger();
+        private final AtomicLong abandoned = new AtomicLong();
+
+        @Override
+        public void recordDeserialize(long durationNanos) {
+            // do nothing
+        }
+
+        @Override
+        public void recordHandle(long durationNanos) {
+            // do nothing
+        }
+
+        @Override
+        public void recordBatch(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordReconsumeLater(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordSuspend(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordDuplicate(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordLocalRetry(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordDeadLetter(int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordThrottle(long durationNanos) {
+            // do nothing
+        }
+
+        @Override
+        public void recordDrain(long durationNanos, long abandoned) {
+            this.drains.incrementAndGet();
+            this.abandoned.addAndGet(abandoned);
+        }
+    }
+
+    private static final class DrainProducerMetrics implements ProducerMetrics {
+        private final AtomicInteger drains = new AtomicInteger();
+        private final AtomicLong abandoned = new AtomicLong();
+
+        @Override
+        public void recordSend(@NonNull String topic, String tags, long durationNanos, SendStatus status) {
+            // do nothing
+        }
+
+        @Override
+        public void recordBatch(@NonNull String topic, int size) {
+            // do nothing
+        }
+
+        @Override
+        public void recordDrain(long durationNanos, long abandoned) {
+            this.drains.incrementAndGet();
+            this.abandoned.addAndGet(abandoned);
+        }
+    }
+}
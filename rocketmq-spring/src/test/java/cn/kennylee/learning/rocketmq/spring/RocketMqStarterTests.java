@@ -0,0 +1,59 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行启动的测试，不依赖RocketMQ服务。
+ */
+class RocketMqStarterTests {
+
+    /**
+     * 测试任务同时执行：每个任务都要等其它任务到达屏障才能完成。
+     */
+    @Test
+    public void testRunAllInParallel() {
+        final int n = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(n);
+        final AtomicInteger completed = new AtomicInteger();
+        final List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            tasks.add(() -> {
+                try {
+                    barrier.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                    throw new IllegalStateException(e);
+                }
+                completed.incrementAndGet();
+            });
+        }
+        RocketMqStarter.runAll(tasks, n, "test_");
+        Assertions.assertEquals(n, completed.get());
+    }
+
+    /**
+     * 测试一个任务失败时等待其它任务完成后抛出该失败。
+     */
+    @Test
+    public void testRunAllFailure() {
+        final AtomicInteger completed = new AtomicInteger();
+        final List<Runnable> tasks = new ArrayList<>();
+        tasks.add(completed::incrementAndGet);
+        tasks.add(() -> {
+            throw new IllegalArgumentException("boom");
+        });
+        tasks.add(completed::incrementAndGet);
+        final IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> RocketMqStarter.runAll(tasks, 2, "test_"));
+        Assertions.assertEquals("boom", e.getMessage());
+        Assertions.assertEquals(2, completed.get());
+    }
+}
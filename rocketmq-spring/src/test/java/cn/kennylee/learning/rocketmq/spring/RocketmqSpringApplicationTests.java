@@ -12,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
+import org.springframework.test.context.ContextConfiguration;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
@@ -22,6 +23,7 @@ import java.util.UUID;
 
 @Slf4j
 @SpringBootTest
+@ContextConfiguration(initializers = EmbeddedRocketMq.Initializer.class)
 class RocketmqSpringApplicationTests {
     private static final long MAX_WAIT = 5000;
 
@@ -29,11 +31,23 @@ class RocketmqSpringApplicationTests {
     private RocketMqClientProperties rocketMqClientProperties;
     @Resource
     private RocketMqProducer rocketMqProducer;
+    @Resource
+    private RocketMqConsumerContainer rocketMqConsumerContainer;
 
     @Test
     void contextLoads() {
     }
 
+    /**
+     * 测试上下文启动后客户端已在运行，生产者已有配置topic的路由。
+     */
+    @Test
+    public void testStartup() {
+        Assertions.assertTrue(rocketMqProducer.isRunning());
+        Assertions.assertTrue(rocketMqConsumerContainer.isRunning());
+        Assertions.assertTrue(rocketMqProducer.hasRoute(rocketMqClientProperties.getRocketmq().getTopic()));
+    }
+
     /**
      * 测试发送（不管结果）和接收，信息体Bean。
      */
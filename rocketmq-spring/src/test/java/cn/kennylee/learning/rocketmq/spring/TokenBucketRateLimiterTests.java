@@ -0,0 +1,45 @@
+package cn.kennylee.learning.rocketmq.spring;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限速的测试。
+ */
+class TokenBucketRateLimiterTests {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 测试积累的令牌用完后按速率等待，预支的令牌由后来的调用等待。
+     */
+    @Test
+    public void testReserve() {
+        final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 5);
+        final long now = System.nanoTime();
+        Assertions.assertEquals(0, limiter.reserve(5, now));
+        Assertions.assertEquals(SECOND / 10, limiter.reserve(1, now), SECOND / 1000);
+        // 超过burst的批次也能通过，需要等待前面预支的令牌
+        Assertions.assertEquals(SECOND, limiter.reserve(9, now), SECOND / 1000);
+        // 令牌按速率补充
+        Assertions.assertEquals(0, limiter.reserve(1, now + 2 * SECOND));
+        // 空闲后最多积累burst个
+        Assertions.assertEquals(0, limiter.reserve(5, now + 100 * SECOND));
+        Assertions.assertTrue(limiter.reserve(1, now + 100 * SECOND) > 0);
+    }
+
+    /**
+     * 测试等待到令牌补足。
+     */
+    @Test
+    public void testAcquire() throws InterruptedException {
+        final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(100, 1);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire(1);
+        }
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(45));
+        Assertions.assertEquals(100, limiter.getPermitsPerSecond(), 0.001);
+    }
+}